@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.roxa.vertx.http.AsyncHttpAgent;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The comparison of the AsyncHttpAgent built by newBuilder, which holds a
+ * worker thread per call, with the one built by newEnqueueBuilder, which enqueues
+ * the calls to OkHttp, at 500 concurrent calls.
+ * </p>
+ * The fake server responds after 10ms, so the calls overlap. The worker pool of
+ * 20 is the default of Vert.x, and the pool of 500 gives each call its own
+ * worker:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar AsyncHttpAgentBenchmark -t 500 -p workerPoolSize=20
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(500)
+@Fork(1)
+public class AsyncHttpAgentBenchmark {
+
+	private static final int MAX_CONNECTIONS = 500;
+
+	@Param({ "20", "500" })
+	public int workerPoolSize;
+
+	@Param({ "10" })
+	public long latencyMillis;
+
+	private Vertx vertx;
+	private FakeHttpServer server;
+	private AsyncHttpAgent blockingAgent;
+	private AsyncHttpAgent enqueueAgent;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		vertx = Vertx.vertx(new VertxOptions().setWorkerPoolSize(workerPoolSize));
+		server = FakeHttpServer.create(vertx, new JsonObject().put("latency_millis", latencyMillis));
+		int port = HttpClientBenchmark.await(server.start());
+		URI uri = URI.create("http://localhost:" + port + "/items");
+		blockingAgent = AsyncHttpAgent.newBuilder(vertx).uri(uri).dispatcher(MAX_CONNECTIONS, MAX_CONNECTIONS)
+				.connectionPool(MAX_CONNECTIONS, 60).build();
+		enqueueAgent = AsyncHttpAgent.newEnqueueBuilder(vertx).uri(uri).dispatcher(MAX_CONNECTIONS, MAX_CONNECTIONS)
+				.connectionPool(MAX_CONNECTIONS, 60).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		HttpClientBenchmark.await(server.stop());
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		vertx.close(ar -> closed.complete(null));
+		closed.get(30, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void newBuilder(Blackhole bh) {
+		bh.consume(HttpClientBenchmark.join(blockingAgent.get()));
+	}
+
+	@Benchmark
+	public void newEnqueueBuilder(Blackhole bh) {
+		bh.consume(HttpClientBenchmark.join(enqueueAgent.get()));
+	}
+}
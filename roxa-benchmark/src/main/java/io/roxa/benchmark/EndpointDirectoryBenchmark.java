@@ -0,0 +1,112 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.roxa.vertx.rx.http.EndpointDirectory;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+
+/**
+ * <p>
+ * The load test of the {@link EndpointDirectory} balancing the calls over three
+ * instances of {@link FakeHttpServer}, one of which is slow.
+ * </p>
+ * It reports the throughput and the latency percentiles of each policy, the
+ * better policy sends less calls to the slow instance:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar EndpointDirectoryBenchmark -t 16 -p slowMillis=50
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+@Fork(1)
+public class EndpointDirectoryBenchmark {
+
+	private static final String NAME = "roxa-benchmark-fake";
+
+	@Param({ "round_robin", "power_of_two", "latency_weighted" })
+	public String policy;
+
+	@Param({ "1" })
+	public long latencyMillis;
+
+	@Param({ "20" })
+	public long slowMillis;
+
+	private Vertx vertx;
+	private ServiceDiscovery discovery;
+	private EndpointDirectory directory;
+	private final List<FakeHttpServer> servers = new ArrayList<>();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		vertx = Vertx.vertx();
+		io.vertx.reactivex.core.Vertx rxVertx = io.vertx.reactivex.core.Vertx.newInstance(vertx);
+		discovery = ServiceDiscovery.create(rxVertx);
+		long[] latencies = { latencyMillis, latencyMillis, slowMillis };
+		for (long latency : latencies) {
+			FakeHttpServer server = FakeHttpServer.create(vertx, new JsonObject().put("latency_millis", latency));
+			servers.add(server);
+			int port = HttpClientBenchmark.await(server.start());
+			discovery.rxPublish(HttpEndpoint.createRecord(NAME, "localhost", port, "/")).blockingGet();
+		}
+		directory = EndpointDirectory.create(rxVertx, discovery, new JsonObject().put("policy", policy)
+				.put("client", new JsonObject().put("max_pool_size", 64)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		directory.close();
+		discovery.close();
+		for (FakeHttpServer server : servers)
+			HttpClientBenchmark.await(server.stop());
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		vertx.close(ar -> closed.complete(null));
+		closed.get(30, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void execute(Blackhole bh) {
+		bh.consume(directory.execute(NAME, client -> client.get("/items").rxSend()).map(Object.class::cast)
+				.onErrorReturn(e -> e).blockingGet());
+	}
+}
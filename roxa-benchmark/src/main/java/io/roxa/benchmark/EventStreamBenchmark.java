@@ -0,0 +1,170 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.roxa.vertx.rx.http.EventStreamBridge;
+import io.roxa.vertx.rx.http.RequestTracker;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.reactivex.ext.web.Router;
+
+/**
+ * <p>
+ * The load test of the {@link EventStreamBridge} fanning out to many
+ * Server-Sent Events subscribers.
+ * </p>
+ * Each operation publishes one event and waits until every subscriber has
+ * received it, so the time is the fan-out latency to the last subscriber. The
+ * router tracks the requests as AbstractHttpVerticle does, and the benchmark
+ * fails if the streams are left in flight. 10000 subscribers need as many
+ * client and server sockets, so raise the open files limit first:
+ * 
+ * <pre>
+ * ulimit -n 65536
+ * java -jar roxa-benchmark/target/benchmarks.jar EventStreamBenchmark -t 1
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(1)
+@Fork(1)
+public class EventStreamBenchmark {
+
+	private static final String ADDRESS = "roxa.benchmark::events";
+
+	@Param({ "1000", "10000" })
+	public int subscribers;
+
+	@Param({ "10" })
+	public int payloadItems;
+
+	private Vertx vertx;
+	private HttpClient client;
+	private RequestTracker tracker;
+	private JsonObject event;
+	private final AtomicInteger received = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile CompletableFuture<Void> delivered;
+
+	private class StreamVerticle extends AbstractVerticle {
+		private final Promise<Integer> listening;
+
+		StreamVerticle(Promise<Integer> listening) {
+			this.listening = listening;
+		}
+
+		@Override
+		public void start() {
+			io.vertx.reactivex.core.Vertx rxVertx = io.vertx.reactivex.core.Vertx.newInstance(vertx);
+			EventStreamBridge bridge = EventStreamBridge.create(rxVertx,
+					new JsonObject().put("heartbeat_seconds", 0));
+			Router router = Router.router(rxVertx);
+			router.route().handler(tracker);
+			router.get("/events").handler(bridge.sse(ADDRESS));
+			rxVertx.createHttpServer().requestHandler(router).listen(0, "localhost", ar -> {
+				if (ar.succeeded())
+					listening.complete(ar.result().actualPort());
+				else
+					listening.fail(ar.cause());
+			});
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		vertx = Vertx.vertx();
+		tracker = RequestTracker.create();
+		JsonArray items = new JsonArray();
+		for (int i = 0; i < payloadItems; i++)
+			items.add(new JsonObject().put("id", i).put("name", "item-" + i).put("price", i * 1.5));
+		event = new JsonObject().put("action", "changed").put("payload", items);
+		Promise<Integer> listening = Promise.promise();
+		vertx.deployVerticle(new StreamVerticle(listening));
+		int port = HttpClientBenchmark.await(listening.future());
+		client = vertx.createHttpClient(new HttpClientOptions().setMaxPoolSize(subscribers).setKeepAlive(true));
+		CountDownLatch connected = new CountDownLatch(subscribers);
+		for (int i = 0; i < subscribers; i++)
+			subscribe(port, connected);
+		if (!connected.await(120, TimeUnit.SECONDS) || failed.get() > 0)
+			throw new IllegalStateException(String.format("Subscribed %d streams only, failed: %d",
+					subscribers - connected.getCount() - failed.get(), failed.get()));
+		if (tracker.getInFlight() != 0)
+			throw new IllegalStateException("The event streams are still in flight: " + tracker.getInFlight());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		vertx.close(ar -> closed.complete(null));
+		closed.get(60, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void fanOut() throws Exception {
+		received.set(0);
+		delivered = new CompletableFuture<>();
+		vertx.eventBus().publish(ADDRESS, event);
+		delivered.get(60, TimeUnit.SECONDS);
+	}
+
+	@SuppressWarnings("deprecation")
+	private void subscribe(int port, CountDownLatch connected) {
+		HttpClientRequest request = client.get(port, "localhost", "/events");
+		request.handler(resp -> resp.handler(RecordParser.newDelimited("\n\n", frame -> {
+			// the heartbeat is written once subscribed
+			if (frame.length() > 0 && frame.getByte(0) == ':') {
+				connected.countDown();
+				return;
+			}
+			if (received.incrementAndGet() == subscribers)
+				delivered.complete(null);
+		})));
+		request.exceptionHandler(e -> {
+			failed.incrementAndGet();
+			connected.countDown();
+		});
+		request.end();
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The in-process HTTP server for the clients under benchmark, which needs no
+ * network access.
+ * </p>
+ * <p>
+ * Options:
+ * </p>
+ * 
+ * <pre>
+ * {
+ *   "port": 0,              // the random port by default
+ *   "latency_millis": 0,    // the delay before responding
+ *   "jitter_millis": 0,     // the random delay added to latency
+ *   "error_rate": 0.0,      // the ratio of 503 responses
+ *   "payload_items": 10     // the items of response by default
+ * }
+ * </pre>
+ * 
+ * GET /items?size=n responds {"sc":200,"payload":[...]} of n items, and any
+ * other request responds its body back. The bodies of items are encoded once
+ * per size, so the server costs little of the CPU shared with clients.
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class FakeHttpServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(FakeHttpServer.class);
+
+	private final Vertx vertx;
+	private final int port;
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private final double errorRate;
+	private final int payloadItems;
+	private final Map<Integer, Buffer> bodies = new ConcurrentHashMap<>();
+	private final Buffer errorBody = new JsonObject().put("sc", 503).put("error", "Injected failure").toBuffer();
+	private HttpServer server;
+
+	public static FakeHttpServer create(Vertx vertx, JsonObject options) {
+		return new FakeHttpServer(vertx, options == null ? new JsonObject() : options);
+	}
+
+	private FakeHttpServer(Vertx vertx, JsonObject options) {
+		this.vertx = vertx;
+		this.port = options.getInteger("port", 0);
+		this.latencyMillis = options.getLong("latency_millis", 0L);
+		this.jitterMillis = options.getLong("jitter_millis", 0L);
+		this.errorRate = options.getDouble("error_rate", 0d);
+		this.payloadItems = options.getInteger("payload_items", 10);
+	}
+
+	/**
+	 * 
+	 * @return the actual port listening
+	 */
+	public Future<Integer> start() {
+		Promise<Integer> promise = Promise.promise();
+		server = vertx.createHttpServer(new HttpServerOptions().setTcpNoDelay(true)).requestHandler(this::handle);
+		server.listen(port, "localhost", ar -> {
+			if (ar.succeeded()) {
+				logger.info("The fake HTTP server listening on port {}", ar.result().actualPort());
+				promise.complete(ar.result().actualPort());
+			} else {
+				promise.fail(ar.cause());
+			}
+		});
+		return promise.future();
+	}
+
+	public Future<Void> stop() {
+		Promise<Void> promise = Promise.promise();
+		if (server == null)
+			promise.complete();
+		else
+			server.close(promise);
+		return promise.future();
+	}
+
+	private void handle(HttpServerRequest req) {
+		req.bodyHandler(body -> {
+			long delay = latencyMillis;
+			if (jitterMillis > 0)
+				delay += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+			if (delay > 0)
+				vertx.setTimer(delay, id -> respond(req, body));
+			else
+				respond(req, body);
+		});
+	}
+
+	private void respond(HttpServerRequest req, Buffer body) {
+		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			req.response().setStatusCode(503).putHeader("Content-Type", "application/json").end(errorBody);
+			return;
+		}
+		Buffer content;
+		if ("/items".equals(req.path())) {
+			String size = req.getParam("size");
+			content = items(size == null ? payloadItems : Integer.parseInt(size));
+		} else {
+			content = body.length() == 0 ? items(payloadItems) : body;
+		}
+		req.response().putHeader("Content-Type", "application/json").end(content);
+	}
+
+	private Buffer items(int size) {
+		return bodies.computeIfAbsent(size, s -> {
+			JsonArray items = new JsonArray();
+			for (int i = 0; i < s; i++)
+				items.add(new JsonObject().put("id", i).put("name", "item-" + i).put("price", i * 1.5)
+						.put("tags", new JsonArray().add("fake").add("benchmark")));
+			return new JsonObject().put("sc", 200).put("payload", items).toBuffer();
+		});
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.roxa.Result;
+import io.roxa.http.HttpAgent;
+import io.roxa.vertx.http.AsyncHttpAgent;
+import io.roxa.vertx.rx.http.HttpEndpoints;
+import io.roxa.vertx.rx.http.HttpRequestSpec;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The benchmarks of outbound HTTP clients against the {@link FakeHttpServer},
+ * which report the throughput and the latency percentiles of sampled calls.
+ * </p>
+ * Each benchmark waits for its call, so the concurrency is the threads of JMH,
+ * see {@link HttpClientBenchmarks}. The failed calls, such as the injected 503,
+ * are consumed as the results, so they are measured rather than aborting the
+ * run. The defaults take about 3 minutes per level of concurrency, the other
+ * values of parameters are given by -p, such as the grid of latency, errors and
+ * payloads:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar -p latencyMillis=0,10 -p errorRate=0,0.01 -p payloadItems=10,1000
+ * </pre>
+ * 
+ * Each combination of values multiplies the run, the grid above takes about 8
+ * times of the defaults.
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class HttpClientBenchmark {
+
+	private static final int MAX_CONNECTIONS = 256;
+
+	@Param({ "10" })
+	public long latencyMillis;
+
+	@Param({ "0" })
+	public long jitterMillis;
+
+	@Param({ "0" })
+	public double errorRate;
+
+	@Param({ "10" })
+	public int payloadItems;
+
+	private Vertx vertx;
+	private FakeHttpServer server;
+	private HttpAgent httpAgent;
+	private AsyncHttpAgent blockingAgent;
+	private AsyncHttpAgent enqueueAgent;
+	private HttpEndpoints endpoints;
+	private HttpRequestSpec spec;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		vertx = Vertx.vertx(new VertxOptions().setWorkerPoolSize(MAX_CONNECTIONS));
+		server = FakeHttpServer.create(vertx, new JsonObject().put("latency_millis", latencyMillis)
+				.put("jitter_millis", jitterMillis).put("error_rate", errorRate).put("payload_items", payloadItems));
+		int port = await(server.start());
+		URI uri = URI.create("http://localhost:" + port + "/items");
+		httpAgent = HttpAgent.newBuilder().uri(uri).dispatcher(MAX_CONNECTIONS, MAX_CONNECTIONS)
+				.connectionPool(MAX_CONNECTIONS, 60).build();
+		blockingAgent = AsyncHttpAgent.newBuilder(vertx).uri(uri).dispatcher(MAX_CONNECTIONS, MAX_CONNECTIONS)
+				.connectionPool(MAX_CONNECTIONS, 60).build();
+		enqueueAgent = AsyncHttpAgent.newEnqueueBuilder(vertx).uri(uri).dispatcher(MAX_CONNECTIONS, MAX_CONNECTIONS)
+				.connectionPool(MAX_CONNECTIONS, 60).build();
+		endpoints = HttpEndpoints.create(vertx).discovery("localhost", port)
+				.clientOptions(new JsonObject().put("max_pool_size", MAX_CONNECTIONS));
+		spec = HttpRequestSpec.newBuilder("GET", "/items").build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		endpoints.close();
+		await(server.stop());
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		vertx.close(ar -> closed.complete(null));
+		closed.get(30, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public void httpAgentOkHttp(Blackhole bh) {
+		Result<javax.json.JsonObject> result = httpAgent.get();
+		bh.consume(result.succeeded() ? result.result() : result.cause());
+	}
+
+	@Benchmark
+	public void asyncHttpAgentOkHttp(Blackhole bh) {
+		bh.consume(join(blockingAgent.get()));
+	}
+
+	@Benchmark
+	public void asyncHttpAgentOkHttpEnqueue(Blackhole bh) {
+		bh.consume(join(enqueueAgent.get()));
+	}
+
+	@Benchmark
+	public void httpEndpoints(Blackhole bh) {
+		bh.consume(endpoints.send(spec).map(Object.class::cast).onErrorReturn(e -> e).blockingGet());
+	}
+
+	/**
+	 * 
+	 * @return the result, or the cause if failed
+	 */
+	static Object join(Future<?> future) {
+		CompletableFuture<Object> done = new CompletableFuture<>();
+		future.onComplete(ar -> done.complete(ar.succeeded() ? ar.result() : ar.cause()));
+		return done.join();
+	}
+
+	static <T> T await(Future<T> future) throws Exception {
+		CompletableFuture<T> done = new CompletableFuture<>();
+		future.onComplete(ar -> {
+			if (ar.succeeded())
+				done.complete(ar.result());
+			else
+				done.completeExceptionally(ar.cause());
+		});
+		return done.get(30, TimeUnit.SECONDS);
+	}
+}
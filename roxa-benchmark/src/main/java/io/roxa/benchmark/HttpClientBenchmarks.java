@@ -0,0 +1,64 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Run the {@link HttpClientBenchmark} at each level of concurrency, the levels
+ * are the threads of JMH, 1,16,64 by default.
+ * </p>
+ * 
+ * <pre>
+ * java -Droxa.benchmark.threads=1,16,64 -jar roxa-benchmark/target/benchmarks.jar [JMH options]
+ * </pre>
+ * 
+ * The JMH options, such as -p errorRate=0.05 or -f 3, apply to every level. The
+ * defaults take about 10 minutes for the three levels, each value added by -p
+ * multiplies it, see {@link HttpClientBenchmark}. The results are written as
+ * JSON to target/jmh-threads-N.json. The benchmarks are run once as usual if
+ * the threads are given by -t.
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class HttpClientBenchmarks {
+
+	private HttpClientBenchmarks() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		new File("target").mkdirs();
+		if (commandLine.getThreads().hasValue()) {
+			new Runner(commandLine).run();
+			return;
+		}
+		String levels = System.getProperty("roxa.benchmark.threads", "1,16,64");
+		for (String level : levels.split(",")) {
+			int threads = Integer.parseInt(level.trim());
+			ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(threads)
+					.result("target/jmh-threads-" + threads + ".json").resultFormat(ResultFormatType.JSON);
+			if (commandLine.getIncludes().isEmpty())
+				options.include(HttpClientBenchmark.class.getSimpleName());
+			new Runner(options.build()).run();
+		}
+	}
+}
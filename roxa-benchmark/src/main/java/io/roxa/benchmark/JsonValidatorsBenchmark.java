@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.roxa.vertx.JsonValidator;
+import io.roxa.vertx.JsonValidators;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The benchmark of the compiled {@link JsonValidator} against interpreting the
+ * rules of {@link JsonValidators} on every call.
+ * </p>
+ * The invalid body fails every rule, so it measures the error messages as well:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar JsonValidatorsBenchmark -t 1 -p valid=false
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonValidatorsBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean valid;
+
+	private JsonValidators validators;
+	private JsonValidator validator;
+	private JsonObject body;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		validators = JsonValidators.create().required("order_id").len("order_id", 8, 32)
+				.pattern("email", "^[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+$").range("quantity", 1, 1000)
+				.range("amount", "0.01", "99999.99").check("currency", "AUD", "USD", "CNY")
+				.datePattern("delivery_date", "yyyy-MM-dd");
+		validator = validators.compile();
+		body = valid
+				? new JsonObject().put("order_id", "ORD-20220101").put("email", "buyer@example.com")
+						.put("quantity", 12).put("amount", 129.95).put("currency", "AUD")
+						.put("delivery_date", "2022-03-01")
+				: new JsonObject().put("order_id", "ORD").put("email", "buyer").put("quantity", 0)
+						.put("amount", -1).put("currency", "EUR").put("delivery_date", "03/01/2022");
+	}
+
+	@SuppressWarnings("deprecation")
+	@Benchmark
+	public JsonObject interpret() {
+		return validators.interpret(body);
+	}
+
+	@Benchmark
+	public JsonObject compiled() {
+		return validator.validate(body);
+	}
+
+	@Benchmark
+	public JsonObject compiledFailFast() {
+		return validator.validate(body, true);
+	}
+}
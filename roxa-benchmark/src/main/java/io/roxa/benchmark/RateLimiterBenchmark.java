@@ -0,0 +1,86 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.roxa.vertx.rx.http.RateLimiter;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+
+/**
+ * <p>
+ * The benchmark of the RateLimiter permits, such as the event loops acquiring
+ * concurrently.
+ * </p>
+ * The keys beyond max_keys, 100000, measure the eviction of new keys:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar RateLimiterBenchmark -t 8 -p keys=200000
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+	@Param({ "1", "10000", "200000" })
+	public int keys;
+
+	private Vertx vertx;
+	private RateLimiter rateLimiter;
+	private JsonObject quota;
+	private String[] names;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		vertx = Vertx.vertx();
+		rateLimiter = RateLimiter.create(vertx, new JsonObject().put("max_keys", 100000));
+		quota = new JsonObject().put("rate", 1000000).put("burst", 1000000);
+		names = new String[keys];
+		for (int i = 0; i < keys; i++)
+			names[i] = "client:" + i;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		rateLimiter.close();
+		vertx.close();
+	}
+
+	@Benchmark
+	public long tryAcquire() {
+		return rateLimiter.tryAcquire(names[ThreadLocalRandom.current().nextInt(keys)], quota);
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.roxa.Result;
+import io.roxa.http.HttpResult;
+import io.roxa.vertx.http.AsyncHttpAgentAbstract;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>
+ * The benchmark of decoding the JSON response body of the async agents, from
+ * the bytes of body by the cached ObjectReader, against reading the body as a
+ * String before parsing.
+ * </p>
+ * The bodies are in memory, so it measures the decoding only:
+ * 
+ * <pre>
+ * java -jar roxa-benchmark/target/benchmarks.jar ResponseDecodeBenchmark -t 1 -p payloadItems=10000
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+
+	private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+
+	@Param({ "10", "1000" })
+	public int payloadItems;
+
+	private Request request;
+	private byte[] body;
+	private Function<Result<Response>, Result<JsonObject>> decoder;
+
+	/**
+	 * Expose the decoding of the async agents
+	 */
+	private static final class Decoder extends AsyncHttpAgentAbstract {
+		Function<Result<Response>, Result<JsonObject>> decoder() {
+			return after(JsonObject.class);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		request = new Request.Builder().url("http://localhost/items").build();
+		JsonArray items = new JsonArray();
+		for (int i = 0; i < payloadItems; i++)
+			items.add(new JsonObject().put("id", i).put("name", "item-" + i).put("price", i * 1.5)
+					.put("tags", new JsonArray().add("fake").add("benchmark")));
+		body = new JsonObject().put("sc", 200).put("payload", items).toBuffer().getBytes();
+		decoder = new Decoder().decoder();
+	}
+
+	@Benchmark
+	public JsonObject bytes() {
+		return decoder.apply(HttpResult.succeeful(response())).result();
+	}
+
+	@Benchmark
+	public JsonObject string() throws Exception {
+		try (Response response = response()) {
+			return new JsonObject(response.body().string());
+		}
+	}
+
+	private Response response() {
+		return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+				.body(ResponseBody.create(body, MEDIA_TYPE_JSON)).build();
+	}
+}
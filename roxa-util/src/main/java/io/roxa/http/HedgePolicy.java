@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.roxa.util.Histogram;
+
+/**
+ * <p>
+ * The policy of hedged requests for the idempotent calls of one endpoint.
+ * </p>
+ * The second request is sent after the delay of observed latency at quantile,
+ * 0.95 by default, and the first response wins. The latency is observed in a
+ * window of the recent samples, which is replaced once the next window is full,
+ * so the delay follows the changes of endpoint. The extra requests are limited
+ * by a retry budget of token bucket, which earns the tokens of percent for each
+ * base request, so the hedged requests are no more than the percent of base
+ * traffic.
+ * 
+ * <pre>
+ * HedgePolicy.newBuilder().quantile(0.95).budgetPercent(10).build()
+ * </pre>
+ * 
+ * One policy should be shared by the calls to the same endpoint, it is thread
+ * safe.
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class HedgePolicy {
+
+	private final double quantile;
+	private final long minDelayNanos;
+	private final long initialDelayNanos;
+	private final long minSamples;
+	private final long windowSamples;
+	private final double tokensPerRequest;
+	private final double maxTokens;
+	private final AtomicLong windowCount = new AtomicLong();
+	private volatile Histogram latency = new Histogram();
+	private volatile Histogram previous;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder hedged = new LongAdder();
+	private final LongAdder wins = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+	private double tokens;
+
+	public static class Builder {
+		private double quantile = 0.95;
+		private long minDelayMillis = 5;
+		private long initialDelayMillis = 100;
+		private long minSamples = 100;
+		private long windowSamples = 1000;
+		private double budgetPercent = 10;
+		private double maxTokens = 10;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param quantile - The quantile of observed latency as the delay, 0.95 by
+		 *                 default
+		 * @return
+		 */
+		public Builder quantile(double quantile) {
+			this.quantile = quantile;
+			return this;
+		}
+
+		public Builder minDelayMillis(long minDelayMillis) {
+			this.minDelayMillis = minDelayMillis;
+			return this;
+		}
+
+		/**
+		 * @param initialDelayMillis - The delay before the minSamples observed
+		 * @return
+		 */
+		public Builder initialDelayMillis(long initialDelayMillis) {
+			this.initialDelayMillis = initialDelayMillis;
+			return this;
+		}
+
+		public Builder minSamples(long minSamples) {
+			this.minSamples = minSamples;
+			return this;
+		}
+
+		/**
+		 * @param windowSamples - The samples of latency window, 1000 by default
+		 * @return
+		 */
+		public Builder windowSamples(long windowSamples) {
+			this.windowSamples = windowSamples;
+			return this;
+		}
+
+		/**
+		 * @param budgetPercent - The percent of hedged requests to the base ones,
+		 *                      10 by default
+		 * @return
+		 */
+		public Builder budgetPercent(double budgetPercent) {
+			this.budgetPercent = budgetPercent;
+			return this;
+		}
+
+		/**
+		 * @param maxTokens - The burst of hedged requests, 10 by default
+		 * @return
+		 */
+		public Builder maxTokens(double maxTokens) {
+			this.maxTokens = maxTokens;
+			return this;
+		}
+
+		public HedgePolicy build() {
+			return new HedgePolicy(this);
+		}
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private HedgePolicy(Builder builder) {
+		this.quantile = builder.quantile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(builder.minDelayMillis);
+		this.initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(builder.initialDelayMillis);
+		this.minSamples = builder.minSamples;
+		this.windowSamples = Math.max(builder.minSamples, builder.windowSamples);
+		this.tokensPerRequest = Math.max(0, builder.budgetPercent) / 100;
+		this.maxTokens = Math.max(1, builder.maxTokens);
+	}
+
+	/**
+	 * 
+	 * @return the delay in milliseconds before sending the hedged request
+	 */
+	public long delayMillis() {
+		Histogram window = getLatency();
+		long nanos = window.count() < minSamples ? initialDelayNanos : window.valueAt(quantile);
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.max(minDelayNanos, nanos)));
+	}
+
+	/**
+	 * Account a base request, which earns the tokens of budget
+	 */
+	public synchronized void requested() {
+		requests.increment();
+		tokens = Math.min(maxTokens, tokens + tokensPerRequest);
+	}
+
+	/**
+	 * Take a token of budget for the hedged request
+	 * 
+	 * @return false if the budget is exhausted
+	 */
+	public synchronized boolean tryHedge() {
+		if (tokens < 1) {
+			exhausted.increment();
+			return false;
+		}
+		tokens -= 1;
+		hedged.increment();
+		return true;
+	}
+
+	/**
+	 * Record the latency of succeeded request
+	 * 
+	 * @param nanos - The latency from the start of the base request, even if the
+	 *              hedged one won
+	 * @param hedge - true if the response of hedged request won
+	 */
+	public void completed(long nanos, boolean hedge) {
+		latency.record(nanos);
+		if (windowCount.incrementAndGet() == windowSamples)
+			rotate();
+		if (hedge)
+			wins.increment();
+	}
+
+	/**
+	 * 
+	 * @return the latency of the last full window, or of the current one before
+	 *         the first window is full
+	 */
+	public Histogram getLatency() {
+		Histogram _previous = previous;
+		return _previous == null ? latency : _previous;
+	}
+
+	private synchronized void rotate() {
+		previous = latency;
+		latency = new Histogram();
+		windowCount.set(0);
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getHedged() {
+		return hedged.sum();
+	}
+
+	public long getWins() {
+		return wins.sum();
+	}
+
+	public long getExhausted() {
+		return exhausted.sum();
+	}
+}
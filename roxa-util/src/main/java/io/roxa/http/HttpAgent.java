@@ -12,6 +12,7 @@ package io.roxa.http;
 
 import java.io.File;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.List;
 
 import javax.json.JsonObject;
@@ -50,6 +51,8 @@ public interface HttpAgent {
 
 	<T> Result<T> postMultipart(File file, HttpForm httForm, Class<T> resultClass);
 
+	Result<Path> download(Path target);
+
 	static HttpAgentBuilder<HttpAgent> newBuilder() {
 		return new HttpAgentOkHttp.HttpAgentOkHttpBuilder();
 	}
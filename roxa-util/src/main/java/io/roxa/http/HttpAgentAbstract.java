@@ -10,26 +10,36 @@
  */
 package io.roxa.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import io.roxa.Result;
 import io.roxa.util.Jsons;
@@ -43,6 +53,9 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
 
 /**
  * @author Steven Chen
@@ -57,6 +70,13 @@ public abstract class HttpAgentAbstract {
 		protected HttpUrl.Builder urlBuilder = new HttpUrl.Builder();
 		protected Map<String, String> headers = new HashMap<>();
 		protected URI uri;
+		protected HedgePolicy hedgePolicy;
+		protected boolean idempotent;
+		protected HttpClientCache cache;
+		protected int maxRequests;
+		protected int maxRequestsPerHost;
+		protected int maxIdleConnections;
+		protected long keepAliveSeconds;
 
 		public HttpAgentBuilder<T> host(String host) {
 			urlBuilder.host(host);
@@ -98,6 +118,44 @@ public abstract class HttpAgentAbstract {
 			return this;
 		}
 
+		public HttpAgentBuilder<T> hedge(HedgePolicy hedgePolicy) {
+			this.hedgePolicy = hedgePolicy;
+			return this;
+		}
+
+		public HttpAgentBuilder<T> idempotent() {
+			this.idempotent = true;
+			return this;
+		}
+
+		public HttpAgentBuilder<T> cache(HttpClientCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		public HttpAgentBuilder<T> dispatcher(int maxRequests, int maxRequestsPerHost) {
+			this.maxRequests = maxRequests;
+			this.maxRequestsPerHost = maxRequestsPerHost;
+			return this;
+		}
+
+		public HttpAgentBuilder<T> connectionPool(int maxIdleConnections, long keepAliveSeconds) {
+			this.maxIdleConnections = maxIdleConnections;
+			this.keepAliveSeconds = keepAliveSeconds;
+			return this;
+		}
+
+		/**
+		 * 
+		 * @param client - The shared client
+		 * @return the client with the limits and the cache if set
+		 */
+		protected OkHttpClient connector(OkHttpClient client) {
+			OkHttpClient tuned = OkHttpClients.tunedClient(client, maxRequests, maxRequestsPerHost, maxIdleConnections,
+					keepAliveSeconds);
+			return cache == null ? tuned : cache.apply(tuned);
+		}
+
 	}
 
 	protected static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
@@ -107,6 +165,7 @@ public abstract class HttpAgentAbstract {
 	protected URL url;
 	protected Map<String, String> headerParams;
 	protected static Map<String, MediaType> mimeTypeMapping = new HashMap<>();
+	private static final Map<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
 	static {
 		mimeTypeMapping.put("png", MediaType.parse("image/png"));
 		mimeTypeMapping.put("jpg", MediaType.parse("image/jpeg"));
@@ -198,6 +257,8 @@ public abstract class HttpAgentAbstract {
 	protected <R> Function<Result<Response>, Result<R>> after(Class<R> resultClass) {
 		return rs -> {
 			if (rs.succeeded()) {
+				if (resultClass == InputStream.class)
+					return (Result<R>) HttpResult.succeeful(streamOf(rs.result()));
 				try (Response resp = rs.result()) {
 					ResponseBody body = resp.body();
 					if (body == null) {
@@ -206,13 +267,13 @@ public abstract class HttpAgentAbstract {
 						return trs;
 					}
 					if (resultClass == JsonObject.class) {
-						Reader reader = body.charStream();
+						JsonReader reader = jsonReaderOf(body);
 						if (reader == null) {
-							logger.warn("The response body char stream is null!");
+							logger.warn("The response body is empty!");
 							Result<R> trs = (Result<R>) HttpResult.succeeful((R) null);
 							return trs;
 						}
-						JsonObject json = Json.createReader(reader).readObject();
+						JsonObject json = reader.readObject();
 						Result<R> trs = (Result<R>) HttpResult.succeeful(json);
 						return trs;
 					} else if (resultClass == Void.class) {
@@ -229,13 +290,10 @@ public abstract class HttpAgentAbstract {
 						Result<R> trs = (Result<R>) HttpResult.succeeful(new StringReader(stringBody));
 						return trs;
 					} else {
-						Reader reader = body.charStream();
-						if (reader == null) {
-							logger.warn("The response body char stream is null before json mapper reading value!");
-							Result<R> trs = (Result<R>) HttpResult.succeeful((R) null);
-							return trs;
-						}
-						return HttpResult.succeeful(Jsons.getMapper().readValue(reader, resultClass));
+						R value = readValue(body, readerFor(resultClass));
+						if (value == null)
+							logger.warn("The response body is empty before json mapper reading value!");
+						return HttpResult.succeeful(value);
 					}
 				} catch (Exception e) {
 					return HttpResult.failure(e);
@@ -262,9 +320,11 @@ public abstract class HttpAgentAbstract {
 		return rs -> {
 			if (rs.succeeded()) {
 				try (Response resp = rs.result()) {
-
+					ResponseBody body = resp.body();
 					JavaType type = Jsons.getMapper().getTypeFactory().constructCollectionType(List.class, resultClass);
-					List<R> list = Jsons.getMapper().readValue(rs.result().body().charStream(), type);
+					List<R> list = body == null ? null : readValue(body, readerFor(type));
+					if (list == null)
+						logger.warn("The response body is empty before json mapper reading list!");
 					return HttpResult.succeeful(list);
 				} catch (Exception e) {
 					return HttpResult.failure(e);
@@ -275,6 +335,137 @@ public abstract class HttpAgentAbstract {
 		};
 	}
 
+	/**
+	 * Write the response body to the file as it arrives, the partial file is
+	 * deleted if the transfer failed
+	 * 
+	 * @param target - The file to write, replaced if exists
+	 * @return
+	 */
+	protected Function<Result<Response>, Result<Path>> afterDownload(Path target) {
+		return rs -> {
+			if (rs.failed())
+				return HttpResult.failure(rs.cause());
+			try (Response resp = rs.result()) {
+				ResponseBody body = resp.body();
+				try (Sink sink = Okio.sink(target)) {
+					if (body != null)
+						body.source().readAll(sink);
+					else
+						logger.warn("The response body is null, the file is empty: {}", target);
+				}
+				return HttpResult.succeeful(target);
+			} catch (Exception e) {
+				try {
+					Files.deleteIfExists(target);
+				} catch (IOException ex) {
+					logger.warn("Cannot delete the partial file: {}", target, ex);
+				}
+				return HttpResult.failure(e);
+			}
+		};
+	}
+
+	/**
+	 * The stream of response body, the connection is released when the stream is
+	 * closed, so the caller must close it
+	 * 
+	 * @param resp
+	 * @return the stream, or an empty stream if no body
+	 */
+	protected static InputStream streamOf(Response resp) {
+		ResponseBody body = resp.body();
+		if (body == null) {
+			resp.close();
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		return body.byteStream();
+	}
+
+	/**
+	 * Skip the leading whitespaces of body without decoding it
+	 * 
+	 * @param body
+	 * @return the source positioned at the content, or null if the body is blank
+	 * @throws IOException
+	 */
+	protected static BufferedSource contentOf(ResponseBody body) throws IOException {
+		BufferedSource source = body.source();
+		while (source.request(1)) {
+			byte b = source.getBuffer().getByte(0);
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n')
+				return source;
+			source.skip(1);
+		}
+		return null;
+	}
+
+	/**
+	 * 
+	 * @param body
+	 * @return the charset of body if it is not UTF-8, which must be decoded as
+	 *         chars, or null to read the bytes
+	 */
+	protected static Charset charsetOf(ResponseBody body) {
+		MediaType type = body.contentType();
+		Charset charset = type == null ? null : type.charset(null);
+		return charset == null || StandardCharsets.UTF_8.equals(charset) ? null : charset;
+	}
+
+	/**
+	 * Decode the body by its charset, such as GBK or ISO-8859-1
+	 * 
+	 * @param body
+	 * @return the reader of content, or null if the body is blank
+	 * @throws IOException
+	 */
+	protected static Reader charsOf(ResponseBody body) throws IOException {
+		String content = Strings.emptyAsNull(body.string());
+		return content == null ? null : new StringReader(content);
+	}
+
+	/**
+	 * Read the value from the bytes of body, or from the chars if the charset of
+	 * body is not UTF-8
+	 * 
+	 * @param body
+	 * @param reader
+	 * @return the value, or null if the body is blank
+	 * @throws IOException
+	 */
+	protected static <T> T readValue(ResponseBody body, ObjectReader reader) throws IOException {
+		if (charsetOf(body) != null) {
+			Reader chars = charsOf(body);
+			return chars == null ? null : reader.readValue(chars);
+		}
+		BufferedSource content = contentOf(body);
+		return content == null ? null : reader.readValue(content.inputStream());
+	}
+
+	private static JsonReader jsonReaderOf(ResponseBody body) throws IOException {
+		if (charsetOf(body) != null) {
+			Reader chars = charsOf(body);
+			return chars == null ? null : Json.createReader(chars);
+		}
+		BufferedSource content = contentOf(body);
+		return content == null ? null : Json.createReader(content.inputStream());
+	}
+
+	/**
+	 * The readers are cached by the type, which is cheaper than looking up the
+	 * deserializer of mapper for each response
+	 * 
+	 * @param type
+	 * @return
+	 */
+	protected static ObjectReader readerFor(JavaType type) {
+		return readers.computeIfAbsent(type, t -> Jsons.getMapper().readerFor(t));
+	}
+
+	protected static ObjectReader readerFor(Class<?> type) {
+		return readerFor(Jsons.getMapper().constructType(type));
+	}
+
 	protected RequestBody composeMultipartBody(File payload, HttpForm form) {
 		MultipartBody.Builder b = new MultipartBody.Builder().setType(MultipartBody.FORM);
 		form.stream().forEach(entry -> {
@@ -36,4 +36,51 @@ public interface HttpAgentBuilder<T> {
 
 	HttpAgentBuilder<T> host(String host);
 
+	/**
+	 * Hedge the GET calls, and the other calls if idempotent, by the policy. Only
+	 * the non-blocking agents of Vert.x hedge the calls.
+	 * 
+	 * @param hedgePolicy - The policy shared by the calls to the same endpoint
+	 * @return
+	 */
+	HttpAgentBuilder<T> hedge(HedgePolicy hedgePolicy);
+
+	/**
+	 * Mark the calls of agent idempotent, so that they could be hedged
+	 * 
+	 * @return
+	 */
+	HttpAgentBuilder<T> idempotent();
+
+	/**
+	 * Cache the GET responses by the client side cache
+	 * 
+	 * @param cache - The cache shared by the agents
+	 * @return
+	 */
+	HttpAgentBuilder<T> cache(HttpClientCache cache);
+
+	/**
+	 * Limit the calls of agent by its own dispatcher, the agents of same limits
+	 * share the dispatcher. The dispatcher limits the enqueued calls only, so it
+	 * has no effect on the agents executing the calls on the calling threads,
+	 * such as HttpAgent and the worker thread AsyncHttpAgent, which are bounded by
+	 * their calling threads
+	 * 
+	 * @param maxRequests
+	 * @param maxRequestsPerHost
+	 * @return
+	 */
+	HttpAgentBuilder<T> dispatcher(int maxRequests, int maxRequestsPerHost);
+
+	/**
+	 * Keep the connections of agent by its own pool, the agents of same limits
+	 * share the pool
+	 * 
+	 * @param maxIdleConnections
+	 * @param keepAliveSeconds
+	 * @return
+	 */
+	HttpAgentBuilder<T> connectionPool(int maxIdleConnections, long keepAliveSeconds);
+
 }
@@ -11,6 +11,7 @@
 package io.roxa.http;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 
@@ -30,7 +31,7 @@ public class HttpAgentOkHttp extends HttpAgentAbstract implements HttpAgent {
 		@Override
 		public HttpAgent build() {
 			HttpAgentOkHttp agent = new HttpAgentOkHttp();
-			agent.connector = OkHttpClients.sharedClient();
+			agent.connector = connector(OkHttpClients.sharedClient());
 			if (uri != null)
 				agent.url = HttpUrl.get(uri).url();
 			else
@@ -107,4 +108,9 @@ public class HttpAgentOkHttp extends HttpAgentAbstract implements HttpAgent {
 		return post(file, httForm, after(JsonObject.class));
 	}
 
+	@Override
+	public Result<Path> download(Path target) {
+		return get(afterDownload(target));
+	}
+
 }
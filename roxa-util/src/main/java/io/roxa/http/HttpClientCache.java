@@ -0,0 +1,608 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.roxa.util.Histogram;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>
+ * The client side cache of the small GET responses honoring Cache-Control.
+ * </p>
+ * The responses with max-age are served from memory until expired, then
+ * revalidated by If-None-Match or If-Modified-Since, the responses with
+ * validators only are revalidated every time. With stale-while-revalidate, the
+ * stale response within the window is served at once and revalidated in
+ * background. The responses of no-store, or larger than maxEntryBytes, are not
+ * cached. The entries are keyed by URL and Authorization, as well as the
+ * request headers named by Vary of the response, and evicted by least recently
+ * used. The responses of Vary: * are not cached. The conditional request of
+ * caller, by If-None-Match or If-Modified-Since, gets 304 if the validators
+ * match the cached response.
+ * 
+ * <pre>
+ * HttpClientCache.newBuilder().maxEntries(1000).staleWhileRevalidate().directory(dir, 50 * 1024 * 1024).build()
+ * </pre>
+ * 
+ * The OkHttp clients apply it by {@link #apply(OkHttpClient)}, which also
+ * enables the OkHttp disk cache if the directory is set.
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class HttpClientCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientCache.class);
+
+	private static final String REVALIDATE_HEADER = "X-Roxa-Cache-Revalidate";
+
+	/**
+	 * The cached response
+	 */
+	public static final class Entry {
+		private final byte[] body;
+		private final String contentType;
+		private final String etag;
+		private final String lastModified;
+		private final String cacheControl;
+		private volatile long freshUntil;
+		private volatile long staleUntil;
+		private final AtomicBoolean revalidating = new AtomicBoolean();
+
+		private Entry(byte[] body, String contentType, String etag, String lastModified, String cacheControl) {
+			this.body = body;
+			this.contentType = contentType;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.cacheControl = cacheControl;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public boolean isFresh() {
+			return System.currentTimeMillis() < freshUntil;
+		}
+
+		/**
+		 * 
+		 * @return true if stale but within the window of stale-while-revalidate
+		 */
+		public boolean isUsableStale() {
+			return System.currentTimeMillis() < staleUntil;
+		}
+
+		/**
+		 * Claim the revalidation in background, only one caller gets true
+		 * 
+		 * @return
+		 */
+		public boolean tryRevalidate() {
+			return revalidating.compareAndSet(false, true);
+		}
+
+		/**
+		 * Release the claim of revalidation, such as the revalidation failed
+		 */
+		public void cancelRevalidate() {
+			revalidating.set(false);
+		}
+
+		/**
+		 * 
+		 * @param ifNoneMatch     - The If-None-Match of request, could be null
+		 * @param ifModifiedSince - The If-Modified-Since of request, could be null
+		 * @return true if the validators of request match the response, the
+		 *         If-Modified-Since is ignored if If-None-Match is present
+		 */
+		public boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+			if (ifNoneMatch != null) {
+				if (etag == null)
+					return false;
+				String _etag = weakless(etag);
+				for (String tag : ifNoneMatch.split(",")) {
+					String _tag = tag.trim();
+					if ("*".equals(_tag) || weakless(_tag).equals(_etag))
+						return true;
+				}
+				return false;
+			}
+			if (ifModifiedSince == null || lastModified == null)
+				return false;
+			try {
+				return !ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME)
+						.isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME));
+			} catch (DateTimeParseException e) {
+				return false;
+			}
+		}
+
+		private static String weakless(String tag) {
+			return tag.startsWith("W/") ? tag.substring(2) : tag;
+		}
+
+		private void expire(String cacheControl, long now) {
+			long maxAge = directive(cacheControl, "max-age");
+			boolean noCache = cacheControl != null && cacheControl.contains("no-cache");
+			freshUntil = noCache || maxAge <= 0 ? now : now + TimeUnit.SECONDS.toMillis(maxAge);
+			long swr = directive(cacheControl, "stale-while-revalidate");
+			staleUntil = noCache || swr <= 0 ? freshUntil : freshUntil + TimeUnit.SECONDS.toMillis(swr);
+			revalidating.set(false);
+		}
+	}
+
+	private static final class HostMetrics {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder revalidated = new LongAdder();
+		final LongAdder stale = new LongAdder();
+	}
+
+	public static class Builder {
+		private int maxEntries = 1000;
+		private long maxBytes = 16 * 1024 * 1024;
+		private int maxEntryBytes = 256 * 1024;
+		private boolean staleWhileRevalidate;
+		private File directory;
+		private long maxDiskBytes;
+
+		private Builder() {
+		}
+
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		public Builder maxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		public Builder maxEntryBytes(int maxEntryBytes) {
+			this.maxEntryBytes = maxEntryBytes;
+			return this;
+		}
+
+		/**
+		 * Serve the stale response within the window of stale-while-revalidate,
+		 * and revalidate it in background
+		 * 
+		 * @return
+		 */
+		public Builder staleWhileRevalidate() {
+			this.staleWhileRevalidate = true;
+			return this;
+		}
+
+		/**
+		 * The directory of OkHttp disk cache, for the OkHttp clients only
+		 * 
+		 * @param directory
+		 * @param maxDiskBytes
+		 * @return
+		 */
+		public Builder directory(File directory, long maxDiskBytes) {
+			this.directory = directory;
+			this.maxDiskBytes = maxDiskBytes;
+			return this;
+		}
+
+		public HttpClientCache build() {
+			return new HttpClientCache(this);
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final int maxEntryBytes;
+	private final boolean staleWhileRevalidate;
+	private final Cache diskCache;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<String, String[]> varies = new LinkedHashMap<String, String[]>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	private final Map<String, HostMetrics> metrics = new ConcurrentHashMap<>();
+	private long bytes;
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private HttpClientCache(Builder builder) {
+		this.maxEntries = Math.max(1, builder.maxEntries);
+		this.maxBytes = builder.maxBytes;
+		this.maxEntryBytes = builder.maxEntryBytes;
+		this.staleWhileRevalidate = builder.staleWhileRevalidate;
+		this.diskCache = builder.directory == null ? null : new Cache(builder.directory, builder.maxDiskBytes);
+	}
+
+	/**
+	 * 
+	 * @param client
+	 * @return the client derived from client, which caches the responses, and
+	 *         revalidates the stale ones in background by itself
+	 */
+	public OkHttpClient apply(OkHttpClient client) {
+		AtomicReference<OkHttpClient> self = new AtomicReference<>();
+		OkHttpClient.Builder builder = client.newBuilder().addInterceptor(chain -> intercept(chain, self.get()));
+		if (diskCache != null)
+			builder.cache(diskCache);
+		OkHttpClient cachingClient = builder.build();
+		self.set(cachingClient);
+		return cachingClient;
+	}
+
+	public boolean isStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	/**
+	 * 
+	 * @param url
+	 * @param authorization - The Authorization header, could be null
+	 * @return the key of cached response
+	 */
+	public static String keyOf(String url, String authorization) {
+		return authorization == null ? url : url + "\n" + authorization;
+	}
+
+	/**
+	 * 
+	 * @param key    - The key of {@link #keyOf(String, String)}
+	 * @param header - The value of request header by name, which is
+	 *               case-insensitive
+	 * @return the key of cached response, appended by the values of the request
+	 *         headers named by Vary of the response last stored with key
+	 */
+	public String variantOf(String key, Function<String, String> header) {
+		String[] names;
+		synchronized (this) {
+			names = varies.get(key);
+		}
+		if (names == null)
+			return key;
+		StringBuilder variant = new StringBuilder(key);
+		for (String name : names) {
+			String value = header.apply(name);
+			variant.append('\n').append(name).append('=').append(value == null ? "" : value);
+		}
+		return variant.toString();
+	}
+
+	/**
+	 * Record the Vary of response, which names the request headers keying the
+	 * variants by {@link #variantOf(String, Function)}
+	 * 
+	 * @param key  - The key of {@link #keyOf(String, String)}
+	 * @param vary - The Vary header of response, could be null
+	 * @return false if varied by *, which is not cacheable
+	 */
+	public boolean vary(String key, String vary) {
+		if (vary == null || vary.trim().isEmpty()) {
+			synchronized (this) {
+				varies.remove(key);
+			}
+			return true;
+		}
+		String[] names = vary.split(",");
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].trim().toLowerCase();
+			if ("*".equals(names[i]))
+				return false;
+		}
+		synchronized (this) {
+			varies.put(key, names);
+		}
+		return true;
+	}
+
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Store the response if cacheable
+	 * 
+	 * @param key
+	 * @param cacheControl
+	 * @param etag
+	 * @param lastModified
+	 * @param contentType
+	 * @param body
+	 * @return the entry, or null if not cacheable
+	 */
+	public Entry store(String key, String cacheControl, String etag, String lastModified, String contentType,
+			byte[] body) {
+		if (!isCacheable(cacheControl, etag, lastModified) || body.length > maxEntryBytes)
+			return null;
+		Entry entry = new Entry(body, contentType, etag, lastModified, cacheControl);
+		entry.expire(cacheControl, System.currentTimeMillis());
+		synchronized (this) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null)
+				bytes -= previous.body.length;
+			bytes += body.length;
+			Iterator<Entry> eldest = entries.values().iterator();
+			while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+				bytes -= eldest.next().body.length;
+				eldest.remove();
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Refresh the entry by the response of 304
+	 * 
+	 * @param entry
+	 * @param cacheControl - The Cache-Control of 304, or null to keep the one
+	 *                     cached
+	 */
+	public void revalidated(Entry entry, String cacheControl) {
+		entry.expire(cacheControl == null ? entry.cacheControl : cacheControl, System.currentTimeMillis());
+	}
+
+	public synchronized void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			bytes -= entry.body.length;
+	}
+
+	public static boolean isCacheable(String cacheControl, String etag, String lastModified) {
+		if (cacheControl != null && cacheControl.contains("no-store"))
+			return false;
+		return directive(cacheControl, "max-age") > 0 || etag != null || lastModified != null;
+	}
+
+	public void hit(String host) {
+		metricsOf(host).hits.increment();
+	}
+
+	public void miss(String host) {
+		metricsOf(host).misses.increment();
+	}
+
+	public void notModified(String host) {
+		metricsOf(host).revalidated.increment();
+	}
+
+	public void stale(String host) {
+		metricsOf(host).stale.increment();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Append the metrics per host in Prometheus text format
+	 * 
+	 * @param out
+	 */
+	public void writePrometheus(StringBuilder out) {
+		write(out, "roxa_http_client_cache_hits_total", "The responses served from cache", m -> m.hits.sum());
+		write(out, "roxa_http_client_cache_misses_total", "The responses not served from cache",
+				m -> m.misses.sum());
+		write(out, "roxa_http_client_cache_revalidated_total", "The cached responses revalidated by 304",
+				m -> m.revalidated.sum());
+		write(out, "roxa_http_client_cache_stale_total", "The stale responses served while revalidating",
+				m -> m.stale.sum());
+	}
+
+	private void write(StringBuilder out, String name, String help, ToLongFunction<HostMetrics> value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		metrics.forEach((host, m) -> out.append(name).append("{host=\"").append(Histogram.escapeLabel(host))
+				.append("\"} ").append(value.applyAsLong(m)).append('\n'));
+	}
+
+	private HostMetrics metricsOf(String host) {
+		HostMetrics m = metrics.get(host);
+		if (m != null)
+			return m;
+		return metrics.computeIfAbsent(host, h -> new HostMetrics());
+	}
+
+	private Response intercept(Interceptor.Chain chain, OkHttpClient client) throws IOException {
+		Request request = chain.request();
+		if (!"GET".equals(request.method()))
+			return chain.proceed(request);
+		boolean background = request.header(REVALIDATE_HEADER) != null;
+		if (background)
+			request = request.newBuilder().removeHeader(REVALIDATE_HEADER).build();
+		String host = request.url().host();
+		Request _request = request;
+		String baseKey = keyOf(request.url().toString(), request.header("Authorization"));
+		String key = variantOf(baseKey, _request::header);
+		Entry entry = get(key);
+		if (entry != null && !background) {
+			if (entry.isFresh()) {
+				hit(host);
+				return replyOf(request, entry);
+			}
+			if (staleWhileRevalidate && entry.isUsableStale()) {
+				stale(host);
+				if (entry.tryRevalidate())
+					revalidate(client, request, entry);
+				return replyOf(request, entry);
+			}
+		}
+		Request.Builder conditional = request.newBuilder();
+		if (entry != null && entry.etag != null && request.header("If-None-Match") == null)
+			conditional.header("If-None-Match", entry.etag);
+		if (entry != null && entry.lastModified != null && request.header("If-Modified-Since") == null)
+			conditional.header("If-Modified-Since", entry.lastModified);
+		Response response = chain.proceed(conditional.build());
+		if (entry != null)
+			entry.cancelRevalidate();
+		if (entry != null && response.code() == 304) {
+			// the 304 of the validators of caller tells nothing of the cached one
+			if (isConditional(request) && !isNotModified(request, entry))
+				return response;
+			notModified(host);
+			revalidated(entry, response.header("Cache-Control"));
+			response.close();
+			return replyOf(request, entry);
+		}
+		miss(host);
+		if (response.code() != 200) {
+			if (entry != null && response.code() >= 400 && response.code() < 500)
+				remove(key);
+			return response;
+		}
+		String cacheControl = response.header("Cache-Control");
+		String etag = response.header("ETag");
+		String lastModified = response.header("Last-Modified");
+		if (!isCacheable(cacheControl, etag, lastModified) || !vary(baseKey, response.header("Vary"))) {
+			if (entry != null)
+				remove(key);
+			return response;
+		}
+		ResponseBody peeked = response.peekBody(maxEntryBytes + 1L);
+		byte[] body = peeked.bytes();
+		if (body.length <= maxEntryBytes)
+			store(variantOf(baseKey, _request::header), cacheControl, etag, lastModified,
+					response.header("Content-Type"), body);
+		return response;
+	}
+
+	private void revalidate(OkHttpClient client, Request request, Entry entry) {
+		if (client == null) {
+			entry.cancelRevalidate();
+			return;
+		}
+		client.newCall(request.newBuilder().header(REVALIDATE_HEADER, "1").build()).enqueue(new Callback() {
+
+			@Override
+			public void onFailure(Call call, IOException e) {
+				entry.cancelRevalidate();
+				logger.debug("Could not revalidate the cached response of {}", request.url(), e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+			}
+		});
+	}
+
+	private static boolean isConditional(Request request) {
+		return request.header("If-None-Match") != null || request.header("If-Modified-Since") != null;
+	}
+
+	private static boolean isNotModified(Request request, Entry entry) {
+		return entry.isNotModified(request.header("If-None-Match"), request.header("If-Modified-Since"));
+	}
+
+	/**
+	 * 
+	 * @return 304 if the validators of request match the entry, otherwise the
+	 *         entry
+	 */
+	private static Response replyOf(Request request, Entry entry) {
+		if (!isConditional(request) || !isNotModified(request, entry))
+			return responseOf(request, entry);
+		Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(304)
+				.message("Not Modified").body(ResponseBody.create(new byte[0], null));
+		if (entry.etag != null)
+			builder.header("ETag", entry.etag);
+		if (entry.lastModified != null)
+			builder.header("Last-Modified", entry.lastModified);
+		long now = System.currentTimeMillis();
+		return builder.sentRequestAtMillis(now).receivedResponseAtMillis(now).build();
+	}
+
+	private static Response responseOf(Request request, Entry entry) {
+		Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200)
+				.message("OK").body(ResponseBody.create(entry.body,
+						entry.contentType == null ? null : MediaType.parse(entry.contentType)));
+		if (entry.contentType != null)
+			builder.header("Content-Type", entry.contentType);
+		if (entry.etag != null)
+			builder.header("ETag", entry.etag);
+		if (entry.lastModified != null)
+			builder.header("Last-Modified", entry.lastModified);
+		long now = System.currentTimeMillis();
+		return builder.sentRequestAtMillis(now).receivedResponseAtMillis(now).build();
+	}
+
+	private static long directive(String cacheControl, String name) {
+		if (cacheControl == null)
+			return -1;
+		int i = cacheControl.indexOf(name + "=");
+		if (i < 0)
+			return -1;
+		int start = i + name.length() + 1;
+		int end = start;
+		while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end)))
+			end++;
+		try {
+			return Long.parseLong(cacheControl.substring(start, end));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -12,6 +12,8 @@ package io.roxa.http;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
@@ -22,6 +24,8 @@ import javax.net.ssl.TrustManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -35,6 +39,10 @@ public class OkHttpClients {
 
 	private static final long TIMEOUT_CONNECTION = 10;
 	private static final long TIMEOUT_READ = 60;
+	private static final int ASYNC_MAX_REQUESTS = 256;
+	private static final int ASYNC_MAX_REQUESTS_PER_HOST = 64;
+	private static final OkHttpMetrics METRICS = new OkHttpMetrics();
+	private static final Map<String, OkHttpClient> tunedClients = new ConcurrentHashMap<>();
 
 	public static void main(String[] args) {
 		OkHttpClients.sharedClient();
@@ -67,7 +75,8 @@ public class OkHttpClients {
 				instance = new OkHttpClient.Builder().addInterceptor(new LoggingInterceptor())
 						.sslSocketFactory(sslSocketFactory, trustManager).hostnameVerifier(hostnameVerifier)
 						.connectTimeout(TIMEOUT_CONNECTION, TimeUnit.SECONDS)
-						.readTimeout(TIMEOUT_READ, TimeUnit.SECONDS).build();
+						.readTimeout(TIMEOUT_READ, TimeUnit.SECONDS).eventListenerFactory(METRICS).build();
+				METRICS.register("shared", instance.connectionPool(), instance.dispatcher());
 			} catch (Exception e) {
 				e.printStackTrace();
 				throw new RuntimeException(e);
@@ -75,10 +84,78 @@ public class OkHttpClients {
 		}
 	}
 
+	private static class AsyncOkHttpClientInitializer {
+		private static final OkHttpClient instance;
+		static {
+			Dispatcher dispatcher = new Dispatcher();
+			dispatcher.setMaxRequests(ASYNC_MAX_REQUESTS);
+			dispatcher.setMaxRequestsPerHost(ASYNC_MAX_REQUESTS_PER_HOST);
+			instance = OkHttpClientInitializer.instance.newBuilder().dispatcher(dispatcher).build();
+			METRICS.register("async", null, dispatcher);
+		}
+	}
+
 	public static OkHttpClient sharedClient() {
 		return OkHttpClientInitializer.instance;
 	}
 
+	/**
+	 * The client shares the connection pool of shared client, but has its own
+	 * dispatcher for the enqueued calls, so that the asynchronous calls are not
+	 * limited by the default 5 requests per host
+	 * 
+	 * @return
+	 */
+	public static OkHttpClient sharedAsyncClient() {
+		return AsyncOkHttpClientInitializer.instance;
+	}
+
+	/**
+	 * The client derived from client with its own limits, the clients of same
+	 * limits are shared, so are their dispatcher and connection pool
+	 * 
+	 * @param client             - The shared client
+	 * @param maxRequests        - The max requests of dispatcher, 0 to keep the
+	 *                           dispatcher of client
+	 * @param maxRequestsPerHost
+	 * @param maxIdleConnections - The max idle connections of pool, 0 to keep
+	 *                           the connection pool of client
+	 * @param keepAliveSeconds
+	 * @return
+	 */
+	public static OkHttpClient tunedClient(OkHttpClient client, int maxRequests, int maxRequestsPerHost,
+			int maxIdleConnections, long keepAliveSeconds) {
+		if (maxRequests <= 0 && maxIdleConnections <= 0)
+			return client;
+		String name = String.format("%d-%d-%d-%d-%d", System.identityHashCode(client), maxRequests,
+				maxRequestsPerHost, maxIdleConnections, keepAliveSeconds);
+		return tunedClients.computeIfAbsent(name, k -> {
+			OkHttpClient.Builder builder = client.newBuilder();
+			Dispatcher dispatcher = null;
+			ConnectionPool pool = null;
+			if (maxRequests > 0) {
+				dispatcher = new Dispatcher();
+				dispatcher.setMaxRequests(maxRequests);
+				dispatcher.setMaxRequestsPerHost(Math.max(1, maxRequestsPerHost));
+				builder.dispatcher(dispatcher);
+			}
+			if (maxIdleConnections > 0) {
+				pool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+				builder.connectionPool(pool);
+			}
+			METRICS.register("tuned-" + k.substring(k.indexOf('-') + 1), pool, dispatcher);
+			return builder.build();
+		});
+	}
+
+	/**
+	 * 
+	 * @return the metrics of the shared clients and the clients derived from them
+	 */
+	public static OkHttpMetrics metrics() {
+		return METRICS;
+	}
+
 	public static OkHttpClient perCallClient(long connTimeoutInSecond, long readTimeoutInSecond) {
 		return OkHttpClientInitializer.instance.newBuilder().connectTimeout(connTimeoutInSecond, TimeUnit.SECONDS)
 				.readTimeout(readTimeoutInSecond, TimeUnit.SECONDS).build();
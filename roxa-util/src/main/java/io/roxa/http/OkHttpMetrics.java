@@ -0,0 +1,255 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+import io.roxa.util.Histogram;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * <p>
+ * The metrics of OkHttp clients, which records the timings of DNS, connect,
+ * TLS, request, wait, response phases and the whole call per host, by the
+ * EventListener of each call.
+ * </p>
+ * The connection pools and dispatchers registered are exposed as gauges. The
+ * hosts beyond {@link #MAX_HOSTS} are recorded as "other".
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class OkHttpMetrics implements EventListener.Factory {
+
+	public static final int MAX_HOSTS = 256;
+
+	private static final String OTHER_HOST = "other";
+
+	private static final String[] PHASES = { "dns", "connect", "tls", "request", "wait", "response", "call" };
+
+	private static final int DNS = 0;
+	private static final int CONNECT = 1;
+	private static final int TLS = 2;
+	private static final int REQUEST = 3;
+	private static final int WAIT = 4;
+	private static final int RESPONSE = 5;
+	private static final int CALL = 6;
+
+	private final Map<String, Histogram[]> hosts = new ConcurrentHashMap<>();
+	private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+	private final Map<String, Dispatcher> dispatchers = new ConcurrentHashMap<>();
+
+	private final class PhaseListener extends EventListener {
+		private final String host;
+		private long callStart;
+		private long dnsStart;
+		private long connectStart;
+		private long tlsStart;
+		private long requestStart;
+		private long requestEnd;
+		private long responseStart;
+
+		PhaseListener(Call call) {
+			this.host = call.request().url().host();
+		}
+
+		@Override
+		public void callStart(Call call) {
+			callStart = System.nanoTime();
+		}
+
+		@Override
+		public void dnsStart(Call call, String domainName) {
+			dnsStart = System.nanoTime();
+		}
+
+		@Override
+		public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+			record(DNS, dnsStart);
+		}
+
+		@Override
+		public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+			connectStart = System.nanoTime();
+		}
+
+		@Override
+		public void secureConnectStart(Call call) {
+			tlsStart = System.nanoTime();
+		}
+
+		@Override
+		public void secureConnectEnd(Call call, Handshake handshake) {
+			record(TLS, tlsStart);
+		}
+
+		@Override
+		public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+			record(CONNECT, connectStart);
+		}
+
+		@Override
+		public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+				IOException ioe) {
+			record(CONNECT, connectStart);
+		}
+
+		@Override
+		public void requestHeadersStart(Call call) {
+			requestStart = System.nanoTime();
+		}
+
+		@Override
+		public void requestHeadersEnd(Call call, Request request) {
+			requestEnd = System.nanoTime();
+		}
+
+		@Override
+		public void requestBodyEnd(Call call, long byteCount) {
+			requestEnd = System.nanoTime();
+		}
+
+		@Override
+		public void responseHeadersStart(Call call) {
+			responseStart = System.nanoTime();
+			if (requestStart != 0) {
+				histogramsOf(host)[REQUEST].record(requestEnd - requestStart);
+				histogramsOf(host)[WAIT].record(responseStart - requestEnd);
+			}
+		}
+
+		@Override
+		public void responseHeadersEnd(Call call, Response response) {
+		}
+
+		@Override
+		public void responseBodyEnd(Call call, long byteCount) {
+			record(RESPONSE, responseStart);
+		}
+
+		@Override
+		public void callEnd(Call call) {
+			record(CALL, callStart);
+		}
+
+		@Override
+		public void callFailed(Call call, IOException ioe) {
+			record(CALL, callStart);
+		}
+
+		private void record(int phase, long start) {
+			if (start != 0)
+				histogramsOf(host)[phase].record(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public EventListener create(Call call) {
+		return new PhaseListener(call);
+	}
+
+	/**
+	 * Expose the connection pool and dispatcher of client as gauges
+	 * 
+	 * @param name       - The name of client
+	 * @param pool
+	 * @param dispatcher
+	 * @return
+	 */
+	public OkHttpMetrics register(String name, ConnectionPool pool, Dispatcher dispatcher) {
+		if (pool != null)
+			pools.put(name, pool);
+		if (dispatcher != null)
+			dispatchers.put(name, dispatcher);
+		return this;
+	}
+
+	/**
+	 * 
+	 * @param host
+	 * @param phase - dns, connect, tls, request, wait, response or call
+	 * @return the histogram, or null if nothing recorded
+	 */
+	public Histogram getHistogram(String host, String phase) {
+		Histogram[] histograms = hosts.get(host);
+		if (histograms == null)
+			return null;
+		for (int i = 0; i < PHASES.length; i++)
+			if (PHASES[i].equals(phase))
+				return histograms[i];
+		return null;
+	}
+
+	/**
+	 * Append the metrics in Prometheus text format
+	 * 
+	 * @param out
+	 */
+	public void writePrometheus(StringBuilder out) {
+		if (!hosts.isEmpty()) {
+			out.append("# HELP roxa_okhttp_phase_duration_seconds The duration of phases of OkHttp calls\n");
+			out.append("# TYPE roxa_okhttp_phase_duration_seconds histogram\n");
+			hosts.forEach((host, histograms) -> {
+				for (int i = 0; i < PHASES.length; i++)
+					if (histograms[i].count() > 0)
+						histograms[i].writePrometheus(out, "roxa_okhttp_phase_duration_seconds",
+								"host=\"" + Histogram.escapeLabel(host) + "\",phase=\"" + PHASES[i] + "\"");
+			});
+		}
+		if (!pools.isEmpty()) {
+			gauges(out, "roxa_okhttp_pool_connections", "The connections of pool", "pool", pools,
+					ConnectionPool::connectionCount);
+			gauges(out, "roxa_okhttp_pool_idle_connections", "The idle connections of pool", "pool", pools,
+					ConnectionPool::idleConnectionCount);
+		}
+		if (!dispatchers.isEmpty()) {
+			gauges(out, "roxa_okhttp_dispatcher_queued_calls", "The calls waiting in dispatcher", "dispatcher",
+					dispatchers, Dispatcher::queuedCallsCount);
+			gauges(out, "roxa_okhttp_dispatcher_running_calls", "The calls running in dispatcher", "dispatcher",
+					dispatchers, Dispatcher::runningCallsCount);
+		}
+	}
+
+	private static <T> void gauges(StringBuilder out, String name, String help, String label, Map<String, T> sources,
+			ToIntFunction<T> value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" gauge\n");
+		sources.forEach((key, source) -> out.append(name).append('{').append(label).append("=\"")
+				.append(Histogram.escapeLabel(key)).append("\"} ").append(value.applyAsInt(source)).append('\n'));
+	}
+
+	private Histogram[] histogramsOf(String host) {
+		Histogram[] histograms = hosts.get(host);
+		if (histograms != null)
+			return histograms;
+		String _host = hosts.size() >= MAX_HOSTS ? OTHER_HOST : host;
+		return hosts.computeIfAbsent(_host, h -> {
+			Histogram[] created = new Histogram[PHASES.length];
+			for (int i = 0; i < created.length; i++)
+				created[i] = new Histogram();
+			return created;
+		});
+	}
+}
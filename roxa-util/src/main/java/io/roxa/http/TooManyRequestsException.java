@@ -0,0 +1,56 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2016-2018 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.http;
+
+/**
+ * @author Steven Chen
+ *
+ */
+public class TooManyRequestsException extends ClientSideException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -4163254719367212093L;
+
+	private final long retryAfterSeconds;
+
+	/**
+	 * 
+	 */
+	public TooManyRequestsException() {
+		this("Too many requests", 1);
+	}
+
+	/**
+	 * @param retryAfterSeconds
+	 */
+	public TooManyRequestsException(long retryAfterSeconds) {
+		this("Too many requests", retryAfterSeconds);
+	}
+
+	/**
+	 * @param message
+	 * @param retryAfterSeconds
+	 */
+	public TooManyRequestsException(String message, long retryAfterSeconds) {
+		super(429, message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @return the seconds of Retry-After
+	 */
+	public long getRetryAfterSeconds() {
+		return this.retryAfterSeconds;
+	}
+
+}
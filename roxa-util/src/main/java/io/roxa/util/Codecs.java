@@ -33,6 +33,15 @@ public abstract class Codecs {
 		return Hex.decode(hexStr);
 	}
 
+	/**
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	public static String asHexString(byte[] bytes) {
+		return Hex.toHexString(bytes);
+	}
+
 	public static String asBase64URLSafeString(byte[] original) {
 
 		return Base64.getUrlEncoder().encodeToString(original);
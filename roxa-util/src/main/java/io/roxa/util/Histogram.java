@@ -0,0 +1,135 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * The fixed buckets latency histogram, which records without allocation and
+ * could be written in Prometheus text format.
+ * </p>
+ * The buckets are upper bounds in nanoseconds, the default ones are from 1ms to
+ * 10s.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class Histogram {
+
+	private static final long[] DEFAULT_BOUNDS = { ms(1), ms(2.5), ms(5), ms(10), ms(25), ms(50), ms(100), ms(250),
+			ms(500), ms(1000), ms(2500), ms(5000), ms(10000) };
+
+	private final long[] bounds;
+	private final LongAdder[] counts;
+	private final LongAdder sum = new LongAdder();
+
+	public Histogram() {
+		this(DEFAULT_BOUNDS);
+	}
+
+	/**
+	 * @param bounds - The upper bounds of buckets in nanoseconds, ascending
+	 */
+	public Histogram(long[] bounds) {
+		this.bounds = Arrays.copyOf(bounds, bounds.length);
+		this.counts = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+	}
+
+	/**
+	 * Record a latency
+	 * 
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		int i = Arrays.binarySearch(bounds, nanos);
+		counts[i < 0 ? -i - 1 : i].increment();
+		sum.add(nanos);
+	}
+
+	public long count() {
+		long total = 0;
+		for (LongAdder c : counts)
+			total += c.sum();
+		return total;
+	}
+
+	/**
+	 * Estimate the value at quantile by the linear interpolation in bucket
+	 * 
+	 * @param quantile - between 0 and 1
+	 * @return the estimated nanoseconds, 0 if nothing recorded
+	 */
+	public long valueAt(double quantile) {
+		long[] snapshot = new long[counts.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			snapshot[i] = counts[i].sum();
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+		double rank = quantile * total;
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			if (seen + snapshot[i] >= rank && snapshot[i] > 0) {
+				long lower = i == 0 ? 0 : bounds[i - 1];
+				long upper = i < bounds.length ? bounds[i] : bounds[bounds.length - 1] * 2;
+				return lower + (long) ((upper - lower) * ((rank - seen) / snapshot[i]));
+			}
+			seen += snapshot[i];
+		}
+		return bounds[bounds.length - 1];
+	}
+
+	/**
+	 * Write as Prometheus histogram samples in seconds
+	 * 
+	 * @param out    - The output
+	 * @param name   - The metric name without _bucket, _sum, _count suffix
+	 * @param labels - The labels without braces, could be empty
+	 */
+	public void writePrometheus(StringBuilder out, String name, String labels) {
+		String sep = labels == null || labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			cumulative += counts[i].sum();
+			out.append(name).append("_bucket{").append(sep).append("le=\"").append(seconds(bounds[i])).append("\"} ")
+					.append(cumulative).append('\n');
+		}
+		cumulative += counts[bounds.length].sum();
+		out.append(name).append("_bucket{").append(sep).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+		String braces = labels == null || labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(braces).append(' ').append(seconds(sum.sum())).append('\n');
+		out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @return the escaped value of Prometheus label
+	 */
+	public static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static long ms(double millis) {
+		return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
@@ -44,8 +44,25 @@ public class SysInfo {
 	private Map<String, String> memoryInfo = new LinkedHashMap<>();
 	private Map<String, String> classesInfo = new LinkedHashMap<>();
 	private Map<String, String> osInfo = new LinkedHashMap<>();
+	private Map<String, Number> metrics = new LinkedHashMap<>();
+
+	private long sampledAtNanos;
+	private long gcCount;
+	private long gcTimeMillis;
+	private long allocatedBytes = -1;
 
 	public SysInfo collect() {
+		return collect(null);
+	}
+
+	/**
+	 * Collect the system information, and the deltas of GC pause and allocation
+	 * rate since the previous sample
+	 * 
+	 * @param previous - The previous sample, could be null
+	 * @return
+	 */
+	public SysInfo collect(SysInfo previous) {
 		RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
 		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
 		MemoryMXBean mem = ManagementFactory.getMemoryMXBean();
@@ -83,10 +100,26 @@ public class SysInfo {
 		memoryInfo.put("Maximum heap size", printSizeInKb(mem.getHeapMemoryUsage().getMax()));
 		memoryInfo.put("Committed heap size", printSizeInKb(mem.getHeapMemoryUsage().getCommitted()));
 		memoryInfo.put("Pending objects", Integer.toString(mem.getObjectPendingFinalizationCount()));
+		sampledAtNanos = System.nanoTime();
 		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
 			String val = "Name = '" + gc.getName() + "', Collections = " + gc.getCollectionCount() + ", Time = "
 					+ durationText(gc.getCollectionTime());
 			memoryInfo.put("Garbage collector", val);
+			gcCount += Math.max(gc.getCollectionCount(), 0);
+			gcTimeMillis += Math.max(gc.getCollectionTime(), 0);
+		}
+		allocatedBytes = totalAllocatedBytes(threads);
+		if (previous != null) {
+			double elapsedSeconds = (sampledAtNanos - previous.sampledAtNanos) / 1e9;
+			long gcPauseMillis = gcTimeMillis - previous.gcTimeMillis;
+			memoryInfo.put("GC collections since last sample", longText(gcCount - previous.gcCount));
+			memoryInfo.put("GC pause since last sample", durationText(gcPauseMillis));
+			metrics.put("jvm_gc_pause_seconds_delta", gcPauseMillis / 1000d);
+			if (allocatedBytes >= 0 && previous.allocatedBytes >= 0 && elapsedSeconds > 0) {
+				double rate = Math.max(allocatedBytes - previous.allocatedBytes, 0) / elapsedSeconds;
+				memoryInfo.put("Allocation rate", printSizeInKb(rate) + "/s");
+				metrics.put("jvm_memory_allocation_rate_bytes", rate);
+			}
 		}
 
 		classesInfo.put("Current classes loaded", longText(cl.getLoadedClassCount()));
@@ -105,6 +138,22 @@ public class SysInfo {
 			osInfo.put("Free swap space", printSizeInKb(getSunOsValueAsLong(os, "getFreeSwapSpaceSize")));
 		} catch (Throwable t) {
 		}
+
+		metrics.put("jvm_uptime_seconds", runtime.getUptime() / 1000d);
+		metrics.put("jvm_threads_live", threads.getThreadCount());
+		metrics.put("jvm_threads_daemon", threads.getDaemonThreadCount());
+		metrics.put("jvm_threads_peak", threads.getPeakThreadCount());
+		metrics.put("jvm_memory_heap_used_bytes", mem.getHeapMemoryUsage().getUsed());
+		metrics.put("jvm_memory_heap_committed_bytes", mem.getHeapMemoryUsage().getCommitted());
+		metrics.put("jvm_memory_heap_max_bytes", mem.getHeapMemoryUsage().getMax());
+		metrics.put("jvm_memory_nonheap_used_bytes", mem.getNonHeapMemoryUsage().getUsed());
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			String label = "{gc=\"" + gc.getName() + "\"}";
+			metrics.put("jvm_gc_collections_total" + label, gc.getCollectionCount());
+			metrics.put("jvm_gc_collection_seconds_total" + label, gc.getCollectionTime() / 1000d);
+		}
+		metrics.put("jvm_classes_loaded", cl.getLoadedClassCount());
+		metrics.put("jvm_os_processors", os.getAvailableProcessors());
 		return this;
 	}
 
@@ -143,6 +192,31 @@ public class SysInfo {
 		return this.classesInfo;
 	}
 
+	/**
+	 * The numeric values of JVM, named as Prometheus metrics
+	 * 
+	 * @return
+	 */
+	public Map<String, Number> getMetrics() {
+		return this.metrics;
+	}
+
+	private long totalAllocatedBytes(ThreadMXBean threads) {
+		try {
+			Class<?> sunThreads = Class.forName("com.sun.management.ThreadMXBean");
+			if (!sunThreads.isInstance(threads))
+				return -1;
+			Method mth = sunThreads.getMethod("getThreadAllocatedBytes", long[].class);
+			long[] bytes = (long[]) mth.invoke(threads, threads.getAllThreadIds());
+			long total = 0;
+			for (long b : bytes)
+				total += Math.max(b, 0);
+			return total;
+		} catch (Throwable t) {
+			return -1;
+		}
+	}
+
 	private String getPid() {
 		// In Java 9 the new process API can be used:
 		// long pid = ProcessHandle.current().getPid();
@@ -0,0 +1,260 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.roxa.util.Strings;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The immutable validator compiled from {@link JsonValidators}.
+ * </p>
+ * The patterns, formatters, ranges and check values are compiled once, and the
+ * fields are validated synchronously in one pass. It could be shared by all
+ * threads.
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class JsonValidator {
+
+	private final FieldRule[] rules;
+
+	private static final class FieldRule {
+		final String key;
+		final String required;
+		final Set<Object> checkValues;
+		final String checkText;
+		final BigDecimal min;
+		final BigDecimal max;
+		final int minLen;
+		final int maxLen;
+		final String regExp;
+		final Pattern pattern;
+		final String temporalPattern;
+		final DateTimeFormatter formatter;
+		final long offset;
+
+		FieldRule(String key, JsonObject validator) {
+			this.key = key;
+			this.required = validator.getString("required", "");
+			JsonArray checkRule = validator.getJsonArray("check");
+			if (checkRule != null && !checkRule.isEmpty()) {
+				this.checkValues = new HashSet<>(checkRule.getList());
+				this.checkText = checkRule.encode();
+			} else {
+				this.checkValues = null;
+				this.checkText = null;
+			}
+			JsonObject rangeRule = validator.getJsonObject("range");
+			if (rangeRule != null && !rangeRule.isEmpty()) {
+				this.min = new BigDecimal(String.valueOf(rangeRule.getValue("min")));
+				this.max = new BigDecimal(String.valueOf(rangeRule.getValue("max")));
+			} else {
+				this.min = null;
+				this.max = null;
+			}
+			JsonObject lenRule = validator.getJsonObject("len");
+			if (lenRule != null && !lenRule.isEmpty()) {
+				this.minLen = lenRule.getInteger("min");
+				this.maxLen = lenRule.getInteger("max");
+			} else {
+				this.minLen = -1;
+				this.maxLen = -1;
+			}
+			String regExpRule = validator.getString("pattern");
+			this.regExp = regExpRule == null || regExpRule.isEmpty() ? null : regExpRule;
+			this.pattern = regExp == null ? null : Pattern.compile(regExp);
+			JsonObject scheme = validator.getJsonObject("scheme");
+			this.temporalPattern = scheme == null ? null : scheme.getString("pattern");
+			this.formatter = temporalPattern == null ? null : formatterOf(temporalPattern);
+			this.offset = scheme == null ? -1 : scheme.getLong("offset", -1L);
+		}
+	}
+
+	private static DateTimeFormatter formatterOf(String pattern) {
+		try {
+			return DateTimeFormatter.ofPattern(pattern);
+		} catch (IllegalArgumentException e) {
+			// reported as mismatched pattern while validating
+			return null;
+		}
+	}
+
+	JsonValidator(JsonObject validators) {
+		List<FieldRule> _rules = new ArrayList<>();
+		validators.fieldNames().forEach(key -> {
+			JsonObject validator = validators.getJsonObject(key);
+			_rules.add(new FieldRule(key, validator == null ? new JsonObject() : validator));
+		});
+		this.rules = _rules.toArray(new FieldRule[0]);
+	}
+
+	/**
+	 * Validate all of the fields
+	 * 
+	 * @param json
+	 * @return the errors keyed by field, empty if the json is valid
+	 */
+	public JsonObject validate(JsonObject json) {
+		return validate(json, false);
+	}
+
+	/**
+	 * 
+	 * @param json
+	 * @param failFast - Stop at the first invalid field
+	 * @return the errors keyed by field, empty if the json is valid
+	 */
+	public JsonObject validate(JsonObject json, boolean failFast) {
+		JsonObject validationErrors = new JsonObject();
+		if (rules.length == 0)
+			return validationErrors;
+		if (json == null || json.isEmpty())
+			return validationErrors.put("global", "The json is null or empty!");
+		for (FieldRule rule : rules) {
+			String error = validate(rule, json.getValue(rule.key));
+			if (error != null) {
+				validationErrors.put(rule.key, error);
+				if (failFast)
+					break;
+			}
+		}
+		return validationErrors;
+	}
+
+	/**
+	 * 
+	 * @param json
+	 * @return true if the json is valid
+	 */
+	public boolean isValid(JsonObject json) {
+		return validate(json, true).isEmpty();
+	}
+
+	private static String validate(FieldRule rule, Object value) {
+		if (value == null)
+			return String.format("Missing field [%s]", rule.key);
+		String error;
+		switch (rule.required) {
+		case "string":
+			return validateString(rule, value);
+		case "number":
+			return validateNumber(rule, value);
+		case "date_chars":
+			error = validateString(rule, value);
+			return error != null ? error : validateDateChars(rule, (String) value);
+		case "datetime_chars":
+			error = validateString(rule, value);
+			return error != null ? error : validateDatetimeChars(rule, (String) value);
+		case "millis":
+			error = validateNumber(rule, value);
+			return error != null ? error : validateMillis(rule, value);
+		default:
+			return null;
+		}
+	}
+
+	private static String validateMillis(FieldRule rule, Object value) {
+		if (!(value instanceof Long))
+			return String.format("The field [%s] must be time millisecond", rule.key);
+		long timeMillis = (Long) value;
+		try {
+			Instant instant = Instant.ofEpochMilli(timeMillis);
+			if (rule.offset != -1) {
+				Instant now = Instant.now();
+				if (instant.isBefore(now.minusMillis(rule.offset)) || instant.isAfter(now.plusMillis(rule.offset)))
+					return String.format("The [%s] of field [%s] is out of datetime offset [%s] in millisecond",
+							timeMillis, rule.key, rule.offset);
+			}
+		} catch (Throwable e) {
+			return String.format("The field [%s] must be a millisecond", rule.key);
+		}
+		return null;
+	}
+
+	private static String validateDateChars(FieldRule rule, String dateChars) {
+		try {
+			LocalDate ld = LocalDate.parse(dateChars, rule.formatter);
+			if (rule.offset != -1) {
+				LocalDate today = LocalDate.now();
+				if (ld.isBefore(today.minusDays(rule.offset)) || ld.isAfter(today))
+					return String.format("The [%s] of field [%s] is out of date offset [%s] in day", dateChars,
+							rule.key, rule.offset);
+			}
+		} catch (Throwable e) {
+			return String.format("The field [%s] must match pattern [%s]", rule.key, rule.temporalPattern);
+		}
+		return null;
+	}
+
+	private static String validateDatetimeChars(FieldRule rule, String datetimeChars) {
+		try {
+			LocalDateTime ldt = LocalDateTime.parse(datetimeChars, rule.formatter);
+			if (rule.offset != -1) {
+				LocalDateTime now = LocalDateTime.now();
+				if (ldt.isBefore(now.minusSeconds(rule.offset)) || ldt.isAfter(now.plusSeconds(rule.offset)))
+					return String.format("The [%s] of field [%s] is out of datetime offset [%s] in second",
+							datetimeChars, rule.key, rule.offset);
+			}
+		} catch (Throwable e) {
+			return String.format("The field [%s] must match pattern [%s]", rule.key, rule.temporalPattern);
+		}
+		return null;
+	}
+
+	private static String validateNumber(FieldRule rule, Object value) {
+		if (!(value instanceof Number))
+			return String.format("The field [%s] value must be a number", rule.key);
+		if (rule.checkValues != null && !rule.checkValues.contains(value))
+			return String.format("The field [%s] value must be one of %s", rule.key, rule.checkText);
+		if (rule.min != null) {
+			BigDecimal input = new BigDecimal(String.valueOf(value));
+			if (input.compareTo(rule.min) <= 0 || input.compareTo(rule.max) >= 0)
+				return String.format("The value of field [%s] must be gt [%s] and lt [%s]", rule.key, rule.min,
+						rule.max);
+		}
+		return null;
+	}
+
+	private static String validateString(FieldRule rule, Object value) {
+		if (!(value instanceof String))
+			return String.format("The field [%s] value must be a string", rule.key);
+		String s = (String) value;
+		if (Strings.emptyAsNull(s) == null)
+			return String.format("The field [%s] value must not be empty", rule.key);
+		if (rule.checkValues != null && !rule.checkValues.contains(value))
+			return String.format("The field [%s] value must be one of %s", rule.key, rule.checkText);
+		if (rule.minLen >= 0) {
+			int len = s.length();
+			if (rule.maxLen == rule.minLen && len != rule.maxLen)
+				return String.format("The length of field [%s] must be [%s]", rule.key, rule.minLen);
+			if (len < rule.minLen || len > rule.maxLen)
+				return String.format("The length of field [%s] must be between [%s] and [%s]", rule.key,
+						rule.minLen, rule.maxLen);
+		}
+		if (rule.pattern != null && !rule.pattern.matcher(s).matches())
+			return String.format("The length of field [%s] must match pattern [%s]", rule.key, rule.regExp);
+		return null;
+	}
+}
@@ -29,6 +29,7 @@ import io.vertx.core.json.JsonObject;
 public class JsonValidators {
 
 	private JsonObject validators;
+	private volatile JsonValidator compiled;
 
 	/**
 	 * Create a validators instance
@@ -165,11 +166,38 @@ public class JsonValidators {
 	}
 
 	/**
+	 * Compile the rules into an immutable validator, which should be kept and
+	 * reused
+	 * 
+	 * @return
+	 */
+	public JsonValidator compile() {
+		return new JsonValidator(validators.copy());
+	}
+
+	/**
+	 * Validate by the compiled rules, which are compiled again once the rules
+	 * changed
 	 * 
 	 * @param json
 	 * @return
 	 */
 	public JsonObject validate(JsonObject json) {
+		JsonValidator validator = compiled;
+		if (validator == null)
+			compiled = validator = compile();
+		return validator.validate(json);
+	}
+
+	/**
+	 * Validate by interpreting the rules on every call
+	 * 
+	 * @param json
+	 * @return
+	 * @deprecated use {@link #compile()} or {@link #validate(JsonObject)}
+	 */
+	@Deprecated
+	public JsonObject interpret(JsonObject json) {
 		JsonObject validationErrors = new JsonObject();
 		if (validators.isEmpty())
 			return validationErrors;
@@ -355,6 +383,7 @@ public class JsonValidators {
 	}
 
 	private JsonObject validator(String fieldName) {
+		compiled = null;
 		return Optional.ofNullable(validators.getJsonObject(fieldName)).orElseGet(() -> {
 			JsonObject validator = new JsonObject();
 			validators.put(fieldName, validator);
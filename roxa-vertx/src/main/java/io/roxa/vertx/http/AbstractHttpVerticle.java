@@ -16,7 +16,6 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +37,6 @@ import io.roxa.util.Strings;
 import io.roxa.util.SysInfo;
 import io.roxa.vertx.BaseVerticle;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
@@ -495,24 +493,34 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	}
 
 	protected Future<JsonObject> checkParameters(JsonObject params) {
+		try {
+			return Future.succeededFuture(requireParameters(params));
+		} catch (IllegalParametersException e) {
+			return Future.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Check the parameters synchronously in one pass, none of them could be null
+	 * or empty string
+	 * 
+	 * @param params
+	 * @return the parameters with trimmed string values
+	 * @throws IllegalParametersException
+	 */
+	protected JsonObject requireParameters(JsonObject params) throws IllegalParametersException {
 		if (params == null || params.isEmpty())
-			return Future.failedFuture(new IllegalParametersException("Missing all parameter!"));
-		return CompositeFuture.all(params.fieldNames().stream().map(k -> {
+			throw new IllegalParametersException("Missing all parameter!");
+		JsonObject checked = new JsonObject();
+		for (String k : params.fieldNames()) {
 			Object objValue = params.getValue(k, null);
+			if (objValue instanceof String)
+				objValue = Strings.emptyAsNull((String) objValue);
 			if (objValue == null)
-				return Future.failedFuture(new IllegalParametersException("Missing " + k + " parameter!"));
-			if (objValue instanceof String) {
-				String _v = Strings.emptyAsNull((String) objValue);
-				if (_v == null)
-					return Future.failedFuture(new IllegalParametersException("Missing " + k + " parameter!"));
-				return Future.succeededFuture(new Tuple2<String, Object>(k, _v));
-			}
-			return Future.succeededFuture(new Tuple2<String, Object>(k, objValue));
-		}).collect(Collectors.toList())).map(fs -> {
-			List<Tuple2<String, Object>> list = fs.list();
-			return new JsonObject(list.stream().collect(Collectors.toMap(t -> t.$0(), t -> t.$1())));
-		});
-
+				throw new IllegalParametersException("Missing " + k + " parameter!");
+			checked.put(k, objValue);
+		}
+		return checked;
 	}
 
 	protected static String resolveBaseUrl(RoutingContext rc) {
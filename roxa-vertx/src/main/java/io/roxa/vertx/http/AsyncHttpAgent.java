@@ -12,6 +12,7 @@ package io.roxa.vertx.http;
 
 import java.io.File;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.List;
 
 import io.roxa.http.HttpAgentBuilder;
@@ -94,7 +95,9 @@ public interface AsyncHttpAgent {
 
 	/**
 	 * Send a HTTP GET request with a JSON body response. The JSON body response
-	 * will be mapped to POJO class by using Jackson object mapper
+	 * will be mapped to POJO class by using Jackson object mapper. The
+	 * resultClass of InputStream is not supported, which fails the result, the
+	 * large body should be downloaded by {@link #download(Path)}
 	 * 
 	 * @param resultClass
 	 * @return
@@ -170,7 +173,17 @@ public interface AsyncHttpAgent {
 	<T> Future<T> postMultipart(File file, HttpForm httForm, Class<T> resultClass);
 
 	/**
-	 * The factory method for HttpAgentBuilder
+	 * Send a HTTP GET request and write the response body to the file as it
+	 * arrives, without buffering the body in memory. The call is never hedged.
+	 * 
+	 * @param target - The file to write, replaced if exists
+	 * @return
+	 */
+	Future<Path> download(Path target);
+
+	/**
+	 * The factory method for HttpAgentBuilder, the agent executes the calls on
+	 * the worker threads of Vert.x
 	 * 
 	 * @param vertx
 	 * @return
@@ -179,4 +192,16 @@ public interface AsyncHttpAgent {
 		return new AsyncHttpAgentOkHttp.HttpAgentOkHttpAsyncBuilder(vertx);
 	}
 
+	/**
+	 * The factory method for HttpAgentBuilder, the agent enqueues the calls
+	 * without blocking any thread of Vert.x, and completes the results on the
+	 * context of caller
+	 * 
+	 * @param vertx
+	 * @return
+	 */
+	static HttpAgentBuilder<AsyncHttpAgent> newEnqueueBuilder(Vertx vertx) {
+		return new AsyncHttpAgentOkHttpEnqueue.HttpAgentOkHttpEnqueueBuilder(vertx);
+	}
+
 }
@@ -11,8 +11,10 @@
 package io.roxa.vertx.http;
 
 import java.io.File;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -44,6 +46,12 @@ public class AsyncHttpAgentAbstract extends HttpAgentAbstract {
 	protected <R> Function<Result<Response>, Result<R>> after(Class<R> resultClass) {
 		return rs -> {
 			if (rs.succeeded()) {
+				// the live body is not completed on the event loop, see download
+				if (resultClass == InputStream.class) {
+					rs.result().close();
+					return HttpResult.failure(new IllegalArgumentException(
+							"The InputStream result is not supported by the async agents, download instead"));
+				}
 				try (Response resp = rs.result()) {
 					ResponseBody body = resp.body();
 					if (body == null) {
@@ -52,14 +60,13 @@ public class AsyncHttpAgentAbstract extends HttpAgentAbstract {
 						return trs;
 					}
 					if (resultClass == JsonObject.class) {
-						String stringBody = body.string();
-						stringBody = Strings.emptyAsNull(stringBody);
-						if (stringBody == null) {
-							logger.warn("The response string body is null!");
+						Map<String, Object> content = readValue(body, readerFor(Map.class));
+						if (content == null) {
+							logger.warn("The response body is empty!");
 							Result<R> trs = (Result<R>) HttpResult.succeeful((R) null);
 							return trs;
 						}
-						JsonObject json = new JsonObject(stringBody);
+						JsonObject json = new JsonObject(content);
 						Result<R> trs = (Result<R>) HttpResult.succeeful(json);
 						return trs;
 					} else if (resultClass == Void.class) {
@@ -76,13 +83,10 @@ public class AsyncHttpAgentAbstract extends HttpAgentAbstract {
 						Result<R> trs = (Result<R>) HttpResult.succeeful(new StringReader(stringBody));
 						return trs;
 					} else {
-						Reader reader = body.charStream();
-						if (reader == null) {
-							logger.warn("The response body char stream is null before json mapper reading value!");
-							Result<R> trs = (Result<R>) HttpResult.succeeful((R) null);
-							return trs;
-						}
-						return HttpResult.succeeful(Jsons.getMapper().readValue(body.charStream(), resultClass));
+						R value = readValue(body, readerFor(resultClass));
+						if (value == null)
+							logger.warn("The response body is empty before json mapper reading value!");
+						return HttpResult.succeeful(value);
 					}
 				} catch (Exception e) {
 					return HttpResult.failure(e);
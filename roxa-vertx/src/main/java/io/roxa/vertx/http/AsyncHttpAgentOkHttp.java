@@ -11,6 +11,7 @@
 package io.roxa.vertx.http;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
@@ -48,7 +49,7 @@ public class AsyncHttpAgentOkHttp extends AsyncHttpAgentAbstract implements Asyn
 		@Override
 		public AsyncHttpAgent build() {
 			AsyncHttpAgentOkHttp agent = new AsyncHttpAgentOkHttp();
-			agent.connector = OkHttpClients.sharedClient();
+			agent.connector = connector(OkHttpClients.sharedClient());
 			if (uri != null)
 				agent.url = HttpUrl.get(uri).url();
 			else
@@ -97,7 +98,7 @@ public class AsyncHttpAgentOkHttp extends AsyncHttpAgentAbstract implements Asyn
 
 	@Override
 	public <T> Future<T> patch(Object payload, Class<T> resultClass) {
-		return executeBlocking(() -> put(payload, null, after(resultClass)));
+		return executeBlocking(() -> patch(payload, null, after(resultClass)));
 	}
 
 	@Override
@@ -130,6 +131,11 @@ public class AsyncHttpAgentOkHttp extends AsyncHttpAgentAbstract implements Asyn
 		return executeBlocking(() -> post(file, httForm, after(JsonObject.class)));
 	}
 
+	@Override
+	public Future<Path> download(Path target) {
+		return executeBlocking(() -> get(afterDownload(target)));
+	}
+
 	protected <R> Future<R> executeBlocking(Supplier<Result<R>> fn) {
 		Objects.requireNonNull(vertx);
 		Promise<R> pendingPromise = Promise.promise();
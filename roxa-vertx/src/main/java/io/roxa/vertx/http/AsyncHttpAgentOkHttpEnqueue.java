@@ -0,0 +1,320 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2018-2020 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.roxa.Result;
+import io.roxa.http.HedgePolicy;
+import io.roxa.http.HttpAgentAbstract;
+import io.roxa.http.HttpForm;
+import io.roxa.http.HttpResult;
+import io.roxa.http.OkHttpClients;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * <p>
+ * The non-blocking AsyncHttpAgent, which enqueues the calls to the dispatcher
+ * of OkHttp rather than holding a worker thread of Vert.x for each call.
+ * </p>
+ * The responses are converted on the thread of dispatcher, and the results are
+ * completed on the context of caller, so the handlers of returned Future run on
+ * the same event loop as the caller.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class AsyncHttpAgentOkHttpEnqueue extends AsyncHttpAgentAbstract implements AsyncHttpAgent {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncHttpAgentOkHttpEnqueue.class);
+
+	private static final RequestBody EMPTY_BODY = RequestBody.create(new byte[0], null);
+
+	public static class HttpAgentOkHttpEnqueueBuilder extends HttpAgentAbstract.HttpAgentBuilderAbstract<AsyncHttpAgent> {
+
+		private Vertx vertx;
+
+		public HttpAgentOkHttpEnqueueBuilder(Vertx vertx) {
+			this.vertx = vertx;
+		}
+
+		@Override
+		public AsyncHttpAgent build() {
+			AsyncHttpAgentOkHttpEnqueue agent = new AsyncHttpAgentOkHttpEnqueue();
+			agent.connector = connector(OkHttpClients.sharedAsyncClient());
+			if (uri != null)
+				agent.url = HttpUrl.get(uri).url();
+			else
+				agent.url = urlBuilder.build().url();
+			agent.headerParams = new HashMap<>(this.headers);
+			agent.vertx = vertx;
+			agent.hedgePolicy = hedgePolicy;
+			agent.idempotent = idempotent;
+			return agent;
+		}
+
+	}
+
+	/**
+	 * The call sent again after the delay of policy, the first succeeded response
+	 * wins and the other call is cancelled
+	 */
+	private final class HedgedCall<R> {
+		final Context context;
+		final Promise<R> promise = Promise.promise();
+		final Function<Result<Response>, Result<R>> after;
+		final Call primary;
+		Call hedge;
+		int inFlight = 1;
+		boolean done;
+		long timerId;
+		long start;
+
+		HedgedCall(Context context, Call primary, Function<Result<Response>, Result<R>> after) {
+			this.context = context;
+			this.primary = primary;
+			this.after = after;
+		}
+
+		Future<R> start() {
+			hedgePolicy.requested();
+			start = System.nanoTime();
+			timerId = vertx.setTimer(hedgePolicy.delayMillis(), id -> sendHedge());
+			primary.enqueue(callback(false));
+			return promise.future();
+		}
+
+		void sendHedge() {
+			synchronized (this) {
+				if (done || !hedgePolicy.tryHedge())
+					return;
+				hedge = primary.clone();
+				inFlight++;
+			}
+			logger.debug("Hedge the Http call: {}", primary.request().url());
+			hedge.enqueue(callback(true));
+		}
+
+		Callback callback(boolean isHedge) {
+			return new Callback() {
+
+				@Override
+				public void onFailure(Call call, IOException e) {
+					failed(HttpResult.failure(e));
+				}
+
+				@Override
+				public void onResponse(Call call, Response resp) {
+					Result<R> result = convert(resp, after);
+					if (result.succeeded())
+						// measured from the start of primary call, even if the hedge won
+						won(result, isHedge, System.nanoTime() - start);
+					else
+						failed(result);
+				}
+			};
+		}
+
+		void won(Result<R> result, boolean isHedge, long elapsedNanos) {
+			Call loser;
+			synchronized (this) {
+				if (done)
+					return;
+				done = true;
+				loser = isHedge ? primary : hedge;
+			}
+			vertx.cancelTimer(timerId);
+			if (loser != null)
+				loser.cancel();
+			hedgePolicy.completed(elapsedNanos, isHedge);
+			complete(context, promise, result);
+		}
+
+		void failed(Result<R> result) {
+			synchronized (this) {
+				// wait for the other call in flight
+				if (done || --inFlight > 0)
+					return;
+				done = true;
+			}
+			vertx.cancelTimer(timerId);
+			complete(context, promise, result);
+		}
+	}
+
+	private Vertx vertx;
+	private HedgePolicy hedgePolicy;
+	private boolean idempotent;
+
+	private AsyncHttpAgentOkHttpEnqueue() {
+	}
+
+	@Override
+	public Future<JsonObject> get() {
+		return enqueue("GET", null, null, after(JsonObject.class));
+	}
+
+	@Override
+	public <T> Future<T> get(Class<T> resultClass) {
+		return enqueue("GET", null, null, after(resultClass));
+	}
+
+	@Override
+	public <T> Future<List<T>> get2(Class<T> resultClass) {
+		return enqueue("GET", null, null, afterList(resultClass));
+	}
+
+	@Override
+	public <T> Future<T> post(Object payload, Class<T> resultClass) {
+		return enqueue("POST", payload, null, after(resultClass));
+	}
+
+	@Override
+	public <T> Future<T> put(Object payload, Class<T> resultClass) {
+		return enqueue("PUT", payload, null, after(resultClass));
+	}
+
+	@Override
+	public <T> Future<T> patch(Object payload, Class<T> resultClass) {
+		return enqueue("PATCH", payload, null, after(resultClass));
+	}
+
+	@Override
+	public <T> Future<List<T>> post2(Object payload, Class<T> resultClass) {
+		return enqueue("POST", payload, null, afterList(resultClass));
+	}
+
+	@Override
+	public Future<JsonObject> post(Object payload) {
+		return enqueue("POST", payload, null, after(JsonObject.class));
+	}
+
+	@Override
+	public Future<JsonObject> put(Object payload) {
+		return enqueue("PUT", payload, null, after(JsonObject.class));
+	}
+
+	@Override
+	public Future<JsonObject> patch(Object payload) {
+		return enqueue("PATCH", payload, null, after(JsonObject.class));
+	}
+
+	@Override
+	public <T> Future<T> postMultipart(File file, HttpForm httForm, Class<T> resultClass) {
+		return enqueue("POST", file, httForm, after(resultClass));
+	}
+
+	@Override
+	public Future<JsonObject> postMultipart(File file, HttpForm httForm) {
+		return enqueue("POST", file, httForm, after(JsonObject.class));
+	}
+
+	@Override
+	public Future<Path> download(Path target) {
+		return enqueue("GET", null, null, afterDownload(target), false);
+	}
+
+	protected <R> Future<R> enqueue(String method, Object payload, HttpForm form,
+			Function<Result<Response>, Result<R>> after) {
+		return enqueue(method, payload, form, after, form == null && ("GET".equals(method) || idempotent));
+	}
+
+	/**
+	 * 
+	 * @param hedgeable - false if the result must not be converted twice, such as
+	 *                  the downloading file
+	 */
+	protected <R> Future<R> enqueue(String method, Object payload, HttpForm form,
+			Function<Result<Response>, Result<R>> after, boolean hedgeable) {
+		Objects.requireNonNull(vertx);
+		Context context = vertx.getOrCreateContext();
+		Promise<R> promise = Promise.promise();
+		Request request;
+		try {
+			request = composeRequest(method, payload, form);
+		} catch (RuntimeException e) {
+			promise.fail(e);
+			return promise.future();
+		}
+		if (hedgePolicy != null && hedgeable)
+			return new HedgedCall<>(context, connector.newCall(request), after).start();
+		connector.newCall(request).enqueue(new Callback() {
+
+			@Override
+			public void onFailure(Call call, IOException e) {
+				complete(context, promise, HttpResult.failure(e));
+			}
+
+			@Override
+			public void onResponse(Call call, Response resp) {
+				complete(context, promise, convert(resp, after));
+			}
+		});
+		return promise.future();
+	}
+
+	private <R> Result<R> convert(Response resp, Function<Result<Response>, Result<R>> after) {
+		Result<Response> rs;
+		try {
+			checkResponse(resp);
+			rs = HttpResult.succeeful(resp);
+		} catch (Exception e) {
+			resp.close();
+			rs = HttpResult.failure(e);
+		}
+		try {
+			return after.apply(rs);
+		} catch (Throwable e) {
+			return HttpResult.failure(e);
+		}
+	}
+
+	protected Request composeRequest(String method, Object payload, HttpForm form) {
+		Request.Builder b = new Request.Builder().url(url);
+		if (payload != null)
+			b.method(method, requestBody(payload, form));
+		else if (!"GET".equals(method))
+			b.method(method, EMPTY_BODY);
+		for (String name : headerParams.keySet()) {
+			b.addHeader(name, headerParams.get(name));
+		}
+		return b.build();
+	}
+
+	private static <R> void complete(Context context, Promise<R> promise, Result<R> result) {
+		context.runOnContext(v -> {
+			if (result.succeeded())
+				promise.complete(result.result());
+			else
+				promise.fail(result.cause());
+		});
+		logger.debug("The Http call completed, succeeded: {}", result.succeeded());
+	}
+}
@@ -48,8 +48,14 @@ public abstract class BaseVerticle extends AbstractVerticle {
 	@Override
 	public void stop(Promise<Void> stopPromise) throws Exception {
 		stop();
-		tearDownServiceDiscovery().andThen(closeResources())
-				.subscribe(CompletableHelper.toObserver(stopPromise.future()));
+		Completable.defer(this::unpublishServiceRecords).andThen(Completable.defer(this::drain))
+				.onErrorComplete(e -> {
+					logger.warn("Could not unpublish the records or drain the work in progress", e);
+					return true;
+				}).andThen(Completable.defer(() -> {
+					closeServiceDiscovery();
+					return closeResources();
+				})).subscribe(CompletableHelper.toObserver(stopPromise.future()));
 	}
 
 	protected Single<JsonObject> configuration(String cfgLocation) {
@@ -73,6 +79,17 @@ public abstract class BaseVerticle extends AbstractVerticle {
 
 	}
 
+	/**
+	 * Override this method to finish the work in progress after the service
+	 * discovery records have been unpublished and before the service discovery
+	 * and the resources are closed
+	 * 
+	 * @return
+	 */
+	protected Completable drain() {
+		return Completable.complete();
+	}
+
 	protected Completable closeResources() {
 		return Completable.complete();
 	}
@@ -90,22 +107,28 @@ public abstract class BaseVerticle extends AbstractVerticle {
 	}
 
 	protected Completable tearDownServiceDiscovery() {
+		return unpublishServiceRecords().doFinally(this::closeServiceDiscovery);
+	}
+
+	/**
+	 * Unpublish the registered records, the service discovery is kept open until
+	 * the work in progress is drained
+	 * 
+	 * @return
+	 */
+	protected Completable unpublishServiceRecords() {
 		if (discovery == null)
 			return Completable.complete();
-		logger.info("Prepare to tear down the service discovery");
+		logger.info("Prepare to unpublish the service discovery records");
 		List<Completable> completables = new ArrayList<>();
 		registeredRecords.forEach(record -> {
 			String reg = record.getRegistration();
 			logger.info("Unpublish service discovery registration: {}", reg);
 			completables.add(discovery.rxUnpublish(reg));
 		});
-		if (completables.isEmpty()) {
-			closeServiceDiscovery();
+		if (completables.isEmpty())
 			return Completable.complete();
-		}
-		return Completable.mergeDelayError(completables).doFinally(() -> {
-			closeServiceDiscovery();
-		});
+		return Completable.mergeDelayError(completables);
 	}
 
 	protected Completable publishHttpEndpoint(String name, String apiName, String host, int port, String contextPath) {
@@ -15,11 +15,12 @@ import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,18 +34,20 @@ import io.roxa.IllegalParametersException;
 import io.roxa.fn.Tuple2;
 import io.roxa.http.BadRequestException;
 import io.roxa.http.ClientSideException;
+import io.roxa.http.HedgePolicy;
+import io.roxa.http.HttpClientCache;
 import io.roxa.http.HttpStatusException;
 import io.roxa.http.InternalServerErrorException;
+import io.roxa.http.OkHttpClients;
 import io.roxa.http.ServerSideException;
 import io.roxa.http.ServiceUnavailableException;
+import io.roxa.http.TooManyRequestsException;
 import io.roxa.http.UnauthorizedException;
 import io.roxa.util.Codecs;
 import io.roxa.util.Digests;
 import io.roxa.util.Strings;
-import io.roxa.util.SysInfo;
 import io.roxa.vertx.rx.BaseVerticle;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
@@ -54,12 +57,12 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.healthchecks.Status;
 import io.vertx.reactivex.CompletableHelper;
+import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.core.http.HttpServer;
 import io.vertx.reactivex.ext.healthchecks.HealthCheckHandler;
 import io.vertx.reactivex.ext.web.FileUpload;
 import io.vertx.reactivex.ext.web.Router;
 import io.vertx.reactivex.ext.web.RoutingContext;
-import io.vertx.reactivex.ext.web.handler.BodyHandler;
 import io.vertx.reactivex.ext.web.handler.CorsHandler;
 import io.vertx.reactivex.ext.web.handler.ResponseContentTypeHandler;
 import io.vertx.reactivex.ext.web.handler.SessionHandler;
@@ -87,6 +90,16 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	public static final String MEDIA_TYPE_APPLICATION_JSON_UTF8 = "application/json; charset=utf-8";
 	public static final String MEDIA_TYPE_APPLICATION_HTML_UTF8 = "text/html; charset=utf-8";
 	public static final String MEDIA_TYPE_APPLICATION_JSON = "application/json";
+	/**
+	 * The key of routing context data of the authorization result
+	 */
+	public static final String AUTHORIZED = "roxa.auth.authorized";
+	/**
+	 * The key of routing context data of the verified client_id
+	 */
+	public static final String AUTHORIZED_CLIENT_ID = "roxa.auth.client_id";
+
+	private static final String VERIFIED_BEARER = "roxa.auth.bearer";
 	protected int port = 8080;
 	protected String contextPath = "/";
 	protected String fileUploadsLocation = FILE_UPLOADS_LOCATION;
@@ -95,6 +108,24 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	private HealthCheckHandler hcHandler;
 	private List<String> procedures;
 	private JsonObject serverConfiguration;
+	private ClientRegistry clientRegistry;
+	private NonceStore nonceStore;
+	private RateLimiter rateLimiter;
+	private RequestTracker requestTracker;
+	private HttpMetrics httpMetrics;
+	private SysInfoSampler sysInfoSampler;
+	private BodyPolicyHandler bodyPolicyHandler;
+	private ResponseCache responseCache;
+	private ConcurrencyLimiter concurrencyLimiter;
+	private RequestCoalescer requestCoalescer;
+	private HotAssetCache hotAssetCache;
+	private EventStreamBridge eventStreamBridge;
+	private volatile AccessLog accessLog;
+	private BatchHandler batchHandler;
+	private EndpointDirectory endpointDirectory;
+	private HttpClientCache httpClientCache;
+	private final Map<String, HedgePolicy> hedgePolicies = new ConcurrentHashMap<>();
+	private volatile boolean draining;
 
 	public AbstractHttpVerticle() {
 		super();
@@ -156,24 +187,106 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		String serverName = getServerName();
 		String serverNameOn = hostname == null ? serverName : String.format("%s on %s", serverName, hostname);
 		logger.info("{} prepare to start Http service.", serverNameOn);
+		if (serverConfiguration != null && serverConfiguration.containsKey("client_registry"))
+			setupClientRegistry(serverConfiguration.getJsonObject("client_registry"));
+		if (serverConfiguration != null && serverConfiguration.containsKey("nonce_store"))
+			setupNonceStore(serverConfiguration.getJsonObject("nonce_store"));
+		if (serverConfiguration != null && serverConfiguration.containsKey("rate_limit"))
+			setupRateLimiter(serverConfiguration.getJsonObject("rate_limit"));
+		requestTracker = RequestTracker.create();
+		JsonObject accessLogConfig = serverConfiguration == null ? null
+				: serverConfiguration.getJsonObject("access_log");
+		if (accessLogConfig != null && accessLogConfig.getBoolean("enabled", true))
+			accessLog = AccessLog.create(requestTracker, accessLogConfig);
+		JsonObject sysInfoConfig = serverConfiguration == null ? null : serverConfiguration.getJsonObject("sysinfo");
+		long sysInfoIntervalMillis = sysInfoConfig == null ? 5000 : sysInfoConfig.getLong("interval_seconds", 5L) * 1000;
+		sysInfoSampler = SysInfoSampler.create(vertx, sysInfoIntervalMillis, info -> Buffer.buffer(
+				buildResponse(200, "OK", new JsonObject().put("Description", getServerName()).mergeIn(info)).encode()));
+		JsonObject metricsConfig = serverConfiguration == null ? null
+				: serverConfiguration.getJsonObject("metrics");
+		if (metricsConfig != null && metricsConfig.getBoolean("enabled", true))
+			httpMetrics = HttpMetrics.create(requestTracker).jvmMetrics(sysInfoSampler::getMetrics);
+		responseCache = ResponseCache.create(vertx,
+				serverConfiguration == null ? null : serverConfiguration.getJsonObject("response_cache"));
+		if (httpMetrics != null)
+			httpMetrics.register(out -> {
+				HttpMetrics.counter(out, "roxa_http_response_cache_hits_total", "The hits of response cache",
+						responseCache.getHits());
+				HttpMetrics.counter(out, "roxa_http_response_cache_misses_total", "The misses of response cache",
+						responseCache.getMisses());
+				HttpMetrics.counter(out, "roxa_http_response_not_modified_total", "The responses of 304",
+						responseCache.getNotModified());
+				HttpMetrics.gauge(out, "roxa_http_response_cache_bytes", "The bytes of cached responses",
+						responseCache.getBytes());
+			});
+		if (httpMetrics != null && accessLog != null)
+			httpMetrics.register(out -> {
+				// the access log is nulled once closed, while the metrics could still be scraped
+				AccessLog _accessLog = accessLog;
+				if (_accessLog == null)
+					return;
+				HttpMetrics.counter(out, "roxa_http_access_log_written_total", "The access log entries written",
+						_accessLog.getWritten());
+				HttpMetrics.counter(out, "roxa_http_access_log_dropped_total",
+						"The access log entries dropped as the ring buffer is full", _accessLog.getDropped());
+			});
+		requestCoalescer = RequestCoalescer.create(requestTracker, this::endResponse);
+		if (httpMetrics != null)
+			httpMetrics.register(out -> {
+				HttpMetrics.counter(out, "roxa_http_coalesce_leaders_total", "The requests that led a single flight",
+						requestCoalescer.getLeaders());
+				HttpMetrics.counter(out, "roxa_http_coalesced_total", "The requests served by a single flight",
+						requestCoalescer.getCoalesced());
+				HttpMetrics.gauge(out, "roxa_http_coalesce_waiting", "The requests waiting for a single flight",
+						requestCoalescer.getWaiting());
+			});
+		HttpCircuits circuits = HttpCircuits.shared(vertx,
+				serverConfiguration == null ? null : serverConfiguration.getJsonObject("circuits"));
+		if (httpMetrics != null)
+			httpMetrics.register(circuits::writePrometheus).register(this::writeHedgeMetrics)
+					.register(OkHttpClients.metrics()::writePrometheus);
+		if (serverConfiguration != null && serverConfiguration.containsKey("concurrency_limit"))
+			setupConcurrencyLimiter(serverConfiguration.getJsonObject("concurrency_limit"));
 		Supplier<Single<Router>> preRouter = () -> {
 			Router router = Router.router(vertx);
-			router.route().handler(BodyHandler.create().setUploadsDirectory(fileUploadsLocation));
+			router.route().handler(requestTracker);
+			if (concurrencyLimiter != null)
+				router.route().handler(concurrencyLimiter);
+			if (rateLimiter != null)
+				router.route().handler(rateLimiter);
+			bodyPolicyHandler = BodyPolicyHandler.create(vertx, fileUploadsLocation,
+					serverConfiguration == null ? null : serverConfiguration.getJsonObject("body"));
+			router.route().handler(bodyPolicyHandler);
 			router.route(pathOf("/*")).handler(ResponseContentTypeHandler.create());
 			procedures = new ArrayList<>();
 			hcHandler = HealthCheckHandler.create(vertx);
 			router.get(pathOf("/health*")).handler(hcHandler);
 			router.get(pathOf("/sysinfo")).produces(MEDIA_TYPE_APPLICATION_JSON).handler(this::sysInfoHandler);
+			if (httpMetrics != null)
+				router.get(pathOf(metricsConfig.getString("path", "/metrics"))).handler(httpMetrics);
+			JsonObject batchConfig = serverConfiguration == null ? null : serverConfiguration.getJsonObject("batch");
+			if (batchConfig != null && batchConfig.getBoolean("enabled", true)) {
+				batchHandler = BatchHandler.create(vertx, port, batchConfig);
+				router.post(pathOf(batchConfig.getString("path", "/batch"))).handler(batchHandler.handler(
+						batchConfig.getJsonObject("auth_policy"), this::authorize, this::endResponse, this::failed));
+			}
 			hcHandler.register("http", hcFut -> {
 				logger.debug("{} health checking", serverNameOn);
-				hcFut.complete(Status.OK(new JsonObject().put("name", serverNameOn)));
+				if (draining)
+					hcFut.complete(Status.KO(new JsonObject().put("name", serverNameOn).put("draining", true)));
+				else
+					hcFut.complete(Status.OK(new JsonObject().put("name", serverNameOn)));
 			});
-			StaticHandler staticHandler = StaticHandler.create("assets");
-			router.route(pathOf(staticServingLocation + "/*")).handler(staticHandler);
+			setupStaticServing(router, serverConfiguration == null ? null : serverConfiguration.getJsonObject("static"));
 			return Single.just(router);
 		};
 		setupResources().andThen(preRouter.get()).flatMap(this::setupRouter).flatMap(r -> {
-			return vertx.createHttpServer().requestHandler(r).rxListen(port).doOnSuccess(s -> {
+			return vertx.createHttpServer().connectionHandler(conn -> {
+				// stop accepting connections once the grace period of draining is over
+				if (requestTracker != null && requestTracker.isDraining())
+					conn.close();
+			}).requestHandler(r).rxListen(port).doOnSuccess(s -> {
+				httpServer = s;
 				logger.info("{} Http service started. Listen on: {}, context path: {}", serverNameOn, port,
 						contextPath);
 			}).doOnError(e -> {
@@ -188,7 +301,7 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		String clientKey = requestParam(rc, "client_key");
 		if (clientId == null || clientKey == null)
 			return Single.error(new BadRequestException("Missing parameters!"));
-		return getClientRegister(clientId).flatMap(clientInfo -> {
+		return lookupClientRegister(clientId).flatMap(clientInfo -> {
 			return WebAPIs.generateClientToken(clientInfo, clientId, clientKey, tokenPolicy);
 		});
 	}
@@ -196,7 +309,7 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	protected Single<JsonObject> issueClientToken(String clientId, String clientKey, JsonObject tokenPolicy) {
 		if (clientId == null || clientKey == null)
 			return Single.error(new BadRequestException("Missing parameters!"));
-		return getClientRegister(clientId).flatMap(clientInfo -> {
+		return lookupClientRegister(clientId).flatMap(clientInfo -> {
 			return WebAPIs.generateClientToken(clientInfo, clientId, clientKey, tokenPolicy);
 		});
 	}
@@ -206,7 +319,7 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		return WebAPIs.badClientToken(authHeader).flatMap(asJson -> {
 			JsonObject signContent = asJson.getJsonObject("content");
 			String signBase64 = asJson.getString("signature");
-			return getClientRegister(signContent.getString("client_id")).flatMap(clientRegister -> {
+			return lookupClientRegister(signContent.getString("client_id")).flatMap(clientRegister -> {
 				if (clientRegister == null || clientRegister.isEmpty())
 					return Single.error(new UnauthorizedException("JWT client illegal!"));
 				String clientKey = clientRegister.getString("client_key", null);
@@ -219,7 +332,39 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		});
 	}
 
+	/**
+	 * Authorize the request by the policy, the result is kept in the routing
+	 * context, so the request is authorized only once by the same policy, such as
+	 * by the response cache and then by the route handler
+	 * 
+	 * @param rc
+	 * @param authPolicy
+	 * @return
+	 */
 	protected Single<JsonObject> authorize(RoutingContext rc, JsonObject authPolicy) {
+		Tuple2<JsonObject, JsonObject> authorized = rc.get(AUTHORIZED);
+		if (authorized != null && Objects.equals(authorized.$0(), authPolicy))
+			return Single.just(authorized.$1());
+		return authorizeOnce(rc, authPolicy).doOnSuccess(result -> {
+			rc.put(AUTHORIZED, new Tuple2<>(authPolicy, result));
+			JsonObject content = result.getJsonObject("content");
+			if (content != null)
+				rc.put(AUTHORIZED_CLIENT_ID, content.getString("client_id"));
+		});
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return the verified client_id of request, or empty string if the request is
+	 *         not authorized by bearer
+	 */
+	protected static String authScope(RoutingContext rc) {
+		String clientId = rc.get(AUTHORIZED_CLIENT_ID);
+		return clientId == null ? "" : clientId;
+	}
+
+	private Single<JsonObject> authorizeOnce(RoutingContext rc, JsonObject authPolicy) {
 		String method = rc.request().method().name();
 		String absoluteURI = rc.request().absoluteURI();
 		String uri = rc.request().uri();
@@ -246,26 +391,66 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 			return Single.error(new UnauthorizedException("Authorization base secret code illegal!"));
 		}
 		logger.debug("Authorizing bearer: {}", authHeader);
-		if ("bearer".equals(mode))
-			return WebAPIs.badBearerAuthorization(authHeader, requestInfo).flatMap(asJson -> {
-				JsonObject signContent = asJson.getJsonObject("content");
-				String clientId = signContent.getString("client_id");
-				String signBase64 = asJson.getString("signature");
-				return getClientRegister(clientId).flatMap(clientRegister -> {
-					if (clientRegister == null || clientRegister.isEmpty())
-						return Single.error(new UnauthorizedException("Authorization client illegal!"));
-					String clientKey = clientRegister.getString("client_key", null);
-					if (clientKey == null)
-						return Single.error(new UnauthorizedException("Authorization client key illegal!"));
-					if (!Digests.digestVerifyBase64PlainKeyUrlSafe(signBase64, clientKey, signContent.encode()))
-						return Single.error(new UnauthorizedException("Authorization signature illegal!"));
-					return Single.just(asJson.copy().put("client_register", clientRegister));
-				});
+		if (!"bearer".equals(mode))
+			return Single.error(new ServiceUnavailableException("Authorization mode illegal!"));
+		// the bearer is verified once per request, its nonce is used once
+		JsonObject verified = rc.get(VERIFIED_BEARER);
+		if (verified != null)
+			return Single.just(verified);
+		RoutingContext batch = BatchHandler.batchOf(rc);
+		JsonObject batchBearer = batch == null ? null : batch.get(VERIFIED_BEARER);
+		if (batchBearer != null && authHeader != null && authHeader.equals(batch.request().getHeader("Authorization")))
+			return inheritBearer(batchBearer, method).doOnSuccess(bearer -> rc.put(VERIFIED_BEARER, bearer));
+		return WebAPIs.badBearerAuthorization(authHeader, requestInfo).flatMap(asJson -> {
+			JsonObject signContent = asJson.getJsonObject("content");
+			String clientId = signContent.getString("client_id");
+			String signBase64 = asJson.getString("signature");
+			return lookupClientRegister(clientId).flatMap(clientRegister -> {
+				if (clientRegister == null || clientRegister.isEmpty())
+					return Single.error(new UnauthorizedException("Authorization client illegal!"));
+				String clientKey = clientRegister.getString("client_key", null);
+				if (clientKey == null)
+					return Single.error(new UnauthorizedException("Authorization client key illegal!"));
+				if (!Digests.digestVerifyBase64PlainKeyUrlSafe(signBase64, clientKey, signContent.encode()))
+					return Single.error(new UnauthorizedException("Authorization signature illegal!"));
+				if (rateLimiter != null) {
+					long waitNanos = rateLimiter.tryAcquireClient(clientId, clientRegister);
+					if (waitNanos > 0)
+						return Single.error(new TooManyRequestsException(RateLimiter.retryAfterSeconds(waitNanos)));
+					rateLimiter.releaseIp(rc);
+				}
+				return WebAPIs.checkBearerNonce(asJson, nonceStore)
+						.map(bearer -> bearer.copy().put("client_register", clientRegister));
 			});
-		return Single.error(new ServiceUnavailableException("Authorization mode illegal!"));
+		}).doOnSuccess(bearer -> rc.put(VERIFIED_BEARER, bearer));
 	}
 
 	/**
+	 * Reuse the bearer verified by the batch for its sub-request, which must be
+	 * signed for the method of sub-request, and takes a permit of client
+	 * 
+	 * @param bearer - The bearer verified by the batch
+	 * @param method - The method of sub-request
+	 * @return
+	 */
+	private Single<JsonObject> inheritBearer(JsonObject bearer, String method) {
+		JsonObject content = bearer.getJsonObject("content");
+		String verb = content.getString("verb");
+		if (!method.equalsIgnoreCase(verb))
+			return Single.error(new BadRequestException(
+					"Illegal authorization http verb, expected: " + method + ", actual: " + verb));
+		if (rateLimiter != null) {
+			long waitNanos = rateLimiter.tryAcquireClient(content.getString("client_id"),
+					bearer.getJsonObject("client_register"));
+			if (waitNanos > 0)
+				return Single.error(new TooManyRequestsException(RateLimiter.retryAfterSeconds(waitNanos)));
+		}
+		return Single.just(bearer);
+	}
+
+	/**
+	 * Override this method to load the client register from the backing store.
+	 * It is the loader of ClientRegistry once the registry is setup
 	 * 
 	 * @param clientId
 	 * @return
@@ -274,6 +459,418 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		return Single.just(new JsonObject());
 	}
 
+	/**
+	 * Setup the cache of client register, the getClientRegister will be the loader
+	 * 
+	 * @param options - The options of ClientRegistry
+	 */
+	protected void setupClientRegistry(JsonObject options) {
+		if (clientRegistry != null)
+			clientRegistry.close();
+		clientRegistry = ClientRegistry.create(vertx, this::getClientRegister, options);
+		logger.info("Client registry enabled: {}", options == null ? "{}" : options.encode());
+	}
+
+	/**
+	 * Setup the replay store of bearer authorization nonce
+	 * 
+	 * @param options - The options of NonceStore
+	 */
+	protected void setupNonceStore(JsonObject options) {
+		nonceStore = NonceStore.create(vertx, options);
+		logger.info("Nonce store enabled: {}", options == null ? "{}" : options.encode());
+	}
+
+	/**
+	 * Setup the rate limiter, the requests will be limited by IP, and by client_id
+	 * instead once the bearer has been verified
+	 * 
+	 * @param options - The options of RateLimiter
+	 */
+	protected void setupRateLimiter(JsonObject options) {
+		rateLimiter = RateLimiter.create(vertx, options);
+		logger.info("Rate limiter enabled: {}", options == null ? "{}" : options.encode());
+	}
+
+	/**
+	 * Apply the body policy to the routes under the path, should be called in
+	 * setupRouter
+	 * 
+	 * @param path   - The path prefix, relative to the context path
+	 * @param policy
+	 */
+	protected void setBodyPolicy(String path, BodyPolicy policy) {
+		bodyPolicyHandler.policy(pathOf(path), policy);
+	}
+
+	/**
+	 * The route handler of response cache for the public responses, should be
+	 * installed before the handler of GET route, the response must be ended by
+	 * succeeded or endResponse. The requests with Authorization header are not
+	 * cached
+	 * 
+	 * @param ttlSeconds - The TTL of cached response, 0 means ETag only
+	 * @param tags       - The tags to invalidate the cached response
+	 * @return
+	 */
+	protected Handler<RoutingContext> responseCache(long ttlSeconds, String... tags) {
+		return responseCache.handler(ttlSeconds, tags);
+	}
+
+	/**
+	 * The route handler of response cache for the authorized responses, the
+	 * request is authorized by the policy before the cached response is served,
+	 * and the responses are cached per verified client_id
+	 * 
+	 * @param authPolicy - The auth policy of route
+	 * @param ttlSeconds - The TTL of cached response, 0 means ETag only
+	 * @param tags       - The tags to invalidate the cached response
+	 * @return
+	 */
+	protected Handler<RoutingContext> responseCache(JsonObject authPolicy, long ttlSeconds, String... tags) {
+		return responseCache.handler(rc -> authorize(rc, authPolicy).map(a -> authScope(rc)), ttlSeconds, tags);
+	}
+
+	/**
+	 * The route handler that coalesces the identical GETs in flight, should be
+	 * installed before the handler of route, the response must be ended by
+	 * succeeded or endResponse. The requests with Authorization header are not
+	 * coalesced
+	 * 
+	 * @return
+	 */
+	protected Handler<RoutingContext> coalesce() {
+		return requestCoalescer.handler();
+	}
+
+	/**
+	 * The route handler that coalesces the identical GETs in flight of the same
+	 * verified client_id, each request is authorized by the policy before joining
+	 * a flight
+	 * 
+	 * @param authPolicy - The auth policy of route
+	 * @return
+	 */
+	protected Handler<RoutingContext> coalesce(JsonObject authPolicy) {
+		return requestCoalescer.handler(rc -> authorize(rc, authPolicy).map(a -> authScope(rc)));
+	}
+
+	/**
+	 * Invalidate the cached responses of tag on all nodes, once the underlying
+	 * data has been changed
+	 * 
+	 * @param tag
+	 */
+	protected void invalidateResponseCache(String tag) {
+		ResponseCache.invalidate(vertx, tag);
+	}
+
+	/**
+	 * 
+	 * @return the tracker of requests in flight
+	 */
+	protected RequestTracker getRequestTracker() {
+		return requestTracker;
+	}
+
+	/**
+	 * 
+	 * @return the metrics of requests, null if the metrics is disabled
+	 */
+	protected HttpMetrics getHttpMetrics() {
+		return httpMetrics;
+	}
+
+	/**
+	 * The bridge of event bus to the clients by Server-Sent Events or WebSocket,
+	 * which is created by the options of "event_stream" once needed, such as:
+	 * 
+	 * <pre>
+	 * router.get(pathOf("/events/orders")).handler(eventStreams().sse("orders.changed"));
+	 * </pre>
+	 * 
+	 * @return
+	 */
+	protected EventStreamBridge eventStreams() {
+		if (eventStreamBridge == null) {
+			eventStreamBridge = EventStreamBridge.create(vertx,
+					serverConfiguration == null ? null : serverConfiguration.getJsonObject("event_stream"));
+			if (httpMetrics != null)
+				httpMetrics.register(out -> {
+					HttpMetrics.gauge(out, "roxa_http_event_stream_subscribers", "The subscribers of event streams",
+							eventStreamBridge.getSubscribers());
+					HttpMetrics.counter(out, "roxa_http_event_stream_delivered_total", "The events delivered",
+							eventStreamBridge.getDelivered());
+					HttpMetrics.counter(out, "roxa_http_event_stream_dropped_total",
+							"The events dropped as the send queue is full", eventStreamBridge.getDropped());
+					HttpMetrics.counter(out, "roxa_http_event_stream_conflated_total",
+							"The events replaced by the later ones of same action", eventStreamBridge.getConflated());
+				});
+		}
+		return eventStreamBridge;
+	}
+
+	/**
+	 * The route handler that streams the messages of address by Server-Sent Events
+	 * to the requests authorized by the policy
+	 * 
+	 * @param authPolicy - The auth policy of route
+	 * @param address    - The exposed address of event bus
+	 * @return
+	 */
+	protected Handler<RoutingContext> eventStream(JsonObject authPolicy, String address) {
+		return eventStreams().sse(address, rc -> authorize(rc, authPolicy), this::failed);
+	}
+
+	/**
+	 * The route handler that streams the messages of address by WebSocket to the
+	 * requests authorized by the policy
+	 * 
+	 * @param authPolicy - The auth policy of route
+	 * @param address    - The exposed address of event bus
+	 * @return
+	 */
+	protected Handler<RoutingContext> webSocketStream(JsonObject authPolicy, String address) {
+		return eventStreams().webSocket(address, rc -> authorize(rc, authPolicy), this::failed);
+	}
+
+	/**
+	 * The directory of discovered HTTP endpoints, which is created by the options
+	 * of "endpoint_directory" once needed, such as:
+	 * 
+	 * <pre>
+	 * HttpEndpoints.create(vertx).discovery("orders").directory(endpointDirectory())
+	 * </pre>
+	 * 
+	 * @return
+	 */
+	protected EndpointDirectory endpointDirectory() {
+		if (endpointDirectory == null) {
+			if (discovery == null)
+				discovery = ServiceDiscovery.create(vertx);
+			endpointDirectory = EndpointDirectory.create(vertx, discovery,
+					serverConfiguration == null ? null : serverConfiguration.getJsonObject("endpoint_directory"));
+			if (httpMetrics != null)
+				httpMetrics.register(out -> HttpMetrics.counter(out, "roxa_http_endpoint_ejections_total",
+						"The instances of endpoints ejected after consecutive failures",
+						endpointDirectory.getEjections()));
+		}
+		return endpointDirectory;
+	}
+
+	/**
+	 * The hedge policy of endpoint, which is created by the options of "hedge"
+	 * once needed, the hedged and winning requests are exported as metrics. The
+	 * options are:
+	 * 
+	 * <pre>
+	 * {
+	 *   "quantile": 0.95,
+	 *   "min_delay_millis": 5,
+	 *   "initial_delay_millis": 100,
+	 *   "window_samples": 1000,
+	 *   "budget_percent": 10,
+	 *   "max_tokens": 10
+	 * }
+	 * </pre>
+	 * 
+	 * @param endpoint - The endpoint name or host:port
+	 * @return
+	 */
+	protected HedgePolicy hedgePolicy(String endpoint) {
+		HedgePolicy policy = hedgePolicies.get(endpoint);
+		if (policy != null)
+			return policy;
+		JsonObject options = serverConfiguration == null ? null : serverConfiguration.getJsonObject("hedge");
+		JsonObject _options = options == null ? new JsonObject() : options;
+		return hedgePolicies.computeIfAbsent(endpoint,
+				k -> HedgePolicy.newBuilder().quantile(_options.getDouble("quantile", 0.95))
+						.minDelayMillis(_options.getLong("min_delay_millis", 5L))
+						.initialDelayMillis(_options.getLong("initial_delay_millis", 100L))
+						.windowSamples(_options.getLong("window_samples", 1000L))
+						.budgetPercent(_options.getDouble("budget_percent", 10.0))
+						.maxTokens(_options.getDouble("max_tokens", 10.0)).build());
+	}
+
+	/**
+	 * The client side cache of responses, which is created by the options of
+	 * "client_cache" once needed, and shared by the HttpEndpoints and the
+	 * HttpAgents. The options are:
+	 * 
+	 * <pre>
+	 * {
+	 *   "max_entries": 1000,
+	 *   "max_bytes": 16777216,
+	 *   "max_entry_bytes": 262144,
+	 *   "stale_while_revalidate": false,
+	 *   "directory": "/var/roxa/http-cache",
+	 *   "max_disk_bytes": 52428800
+	 * }
+	 * </pre>
+	 * 
+	 * The directory is the OkHttp disk cache of the HttpAgents only.
+	 * 
+	 * @return
+	 */
+	protected synchronized HttpClientCache httpClientCache() {
+		if (httpClientCache == null) {
+			JsonObject options = serverConfiguration == null ? null
+					: serverConfiguration.getJsonObject("client_cache");
+			JsonObject _options = options == null ? new JsonObject() : options;
+			HttpClientCache.Builder builder = HttpClientCache.newBuilder()
+					.maxEntries(_options.getInteger("max_entries", 1000))
+					.maxBytes(_options.getLong("max_bytes", 16L * 1024 * 1024))
+					.maxEntryBytes(_options.getInteger("max_entry_bytes", 256 * 1024));
+			if (_options.getBoolean("stale_while_revalidate", false))
+				builder.staleWhileRevalidate();
+			if (_options.getString("directory") != null)
+				builder.directory(new File(_options.getString("directory")),
+						_options.getLong("max_disk_bytes", 50L * 1024 * 1024));
+			httpClientCache = builder.build();
+			if (httpMetrics != null)
+				httpMetrics.register(httpClientCache::writePrometheus);
+		}
+		return httpClientCache;
+	}
+
+	private void writeHedgeMetrics(StringBuilder out) {
+		if (hedgePolicies.isEmpty())
+			return;
+		writeHedgeMetric(out, "roxa_http_client_hedge_requests_total", "The base requests of hedge policy",
+				HedgePolicy::getRequests);
+		writeHedgeMetric(out, "roxa_http_client_hedged_total", "The hedged requests sent", HedgePolicy::getHedged);
+		writeHedgeMetric(out, "roxa_http_client_hedge_wins_total", "The hedged requests responded first",
+				HedgePolicy::getWins);
+		writeHedgeMetric(out, "roxa_http_client_hedge_budget_exhausted_total",
+				"The hedged requests not sent as the retry budget exhausted", HedgePolicy::getExhausted);
+	}
+
+	private void writeHedgeMetric(StringBuilder out, String name, String help, Function<HedgePolicy, Long> value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		hedgePolicies.forEach((endpoint, policy) -> out.append(name).append("{endpoint=\"")
+				.append(HttpMetrics.escapeLabel(endpoint)).append("\"} ").append(value.apply(policy)).append('\n'));
+	}
+
+	/**
+	 * Setup the adaptive concurrency limiter, the health check, sysinfo and
+	 * metrics routes are never shed
+	 * 
+	 * @param options - The options of ConcurrencyLimiter
+	 */
+	protected void setupConcurrencyLimiter(JsonObject options) {
+		concurrencyLimiter = ConcurrencyLimiter.create(requestTracker, options);
+		concurrencyLimiter.priority(pathOf("/health"), ConcurrencyLimiter.Priority.CRITICAL);
+		concurrencyLimiter.priority(pathOf("/sysinfo"), ConcurrencyLimiter.Priority.CRITICAL);
+		JsonObject metricsConfig = serverConfiguration == null ? null : serverConfiguration.getJsonObject("metrics");
+		if (metricsConfig != null)
+			concurrencyLimiter.priority(pathOf(metricsConfig.getString("path", "/metrics")),
+					ConcurrencyLimiter.Priority.CRITICAL);
+		if (httpMetrics != null)
+			httpMetrics.register(out -> {
+				HttpMetrics.gauge(out, "roxa_http_concurrency_limit", "The adaptive concurrency limit",
+						concurrencyLimiter.getLimit());
+				HttpMetrics.gauge(out, "roxa_http_concurrency_in_flight", "The admitted requests in flight",
+						concurrencyLimiter.getInFlight());
+				out.append("# HELP roxa_http_concurrency_rejected_total The requests shed by priority\n");
+				out.append("# TYPE roxa_http_concurrency_rejected_total counter\n");
+				for (ConcurrencyLimiter.Priority p : ConcurrencyLimiter.Priority.values())
+					out.append("roxa_http_concurrency_rejected_total{priority=\"").append(p.name().toLowerCase())
+							.append("\"} ").append(concurrencyLimiter.getRejected(p)).append('\n');
+			});
+		logger.info("Concurrency limiter enabled: {}", options == null ? "{}" : options.encode());
+	}
+
+	/**
+	 * Setup the static serving under the staticServingLocation, the options are:
+	 * 
+	 * <pre>
+	 * {
+	 *   "web_root": "assets",
+	 *   "max_age_seconds": 86400,
+	 *   "caching": true,
+	 *   "ranges": true,
+	 *   "files_read_only": true,
+	 *   "fs_tuning": false,
+	 *   "hot_cache": { "max_entries": 1000, "max_file_size": 65536 }
+	 * }
+	 * </pre>
+	 * 
+	 * The files are sent by sendfile, and the small hot ones are served from
+	 * memory if the hot_cache is present
+	 * 
+	 * @param router
+	 * @param options - The options of static serving, could be null
+	 */
+	protected void setupStaticServing(Router router, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		String webRoot = _options.getString("web_root", "assets");
+		StaticHandler staticHandler = StaticHandler.create(webRoot)
+				.setMaxAgeSeconds(_options.getLong("max_age_seconds", StaticHandler.DEFAULT_MAX_AGE_SECONDS))
+				.setCachingEnabled(_options.getBoolean("caching", StaticHandler.DEFAULT_CACHING_ENABLED))
+				.setEnableRangeSupport(_options.getBoolean("ranges", StaticHandler.DEFAULT_RANGE_SUPPORT))
+				.setFilesReadOnly(_options.getBoolean("files_read_only", StaticHandler.DEFAULT_FILES_READ_ONLY))
+				.setEnableFSTuning(_options.getBoolean("fs_tuning", StaticHandler.DEFAULT_ENABLE_FS_TUNING));
+		String location = pathOf(staticServingLocation + "/*");
+		JsonObject hotCacheOptions = _options.getJsonObject("hot_cache");
+		if (hotCacheOptions != null) {
+			hotAssetCache = HotAssetCache.create(vertx, webRoot, pathOf(staticServingLocation),
+					hotCacheOptions.copy().put("max_age_seconds", _options.getLong("max_age_seconds",
+							StaticHandler.DEFAULT_MAX_AGE_SECONDS)));
+			router.get(location).handler(hotAssetCache);
+			router.head(location).handler(hotAssetCache);
+			if (httpMetrics != null)
+				httpMetrics.register(out -> {
+					HttpMetrics.counter(out, "roxa_http_hot_asset_hits_total", "The hits of hot asset cache",
+							hotAssetCache.getHits());
+					HttpMetrics.counter(out, "roxa_http_hot_asset_misses_total", "The misses of hot asset cache",
+							hotAssetCache.getMisses());
+					HttpMetrics.gauge(out, "roxa_http_hot_asset_hit_ratio", "The hit ratio of hot asset cache",
+							hotAssetCache.getHitRatio());
+				});
+			logger.info("Hot asset cache enabled: {}", hotCacheOptions.encode());
+		}
+		router.route(location).handler(staticHandler);
+	}
+
+	/**
+	 * Resolve the fingerprinted URL of static file, which is served with the
+	 * immutable caching headers
+	 * 
+	 * @param path - The path relative to the web root
+	 * @return the fingerprinted URL, or the plain one if the hot cache is disabled
+	 */
+	protected Single<String> assetUrl(String path) {
+		if (hotAssetCache == null)
+			return Single.just(pathOf(staticServingLocation + "/" + path));
+		return hotAssetCache.fingerprint(path);
+	}
+
+	/**
+	 * Set the priority of routes under the path for the concurrency limiter,
+	 * should be called in setupRouter
+	 * 
+	 * @param path     - The path prefix, relative to the context path
+	 * @param priority
+	 */
+	protected void setRoutePriority(String path, ConcurrencyLimiter.Priority priority) {
+		if (concurrencyLimiter != null)
+			concurrencyLimiter.priority(pathOf(path), priority);
+	}
+
+	/**
+	 * Retrieve the client register from ClientRegistry if it has been setup,
+	 * otherwise from getClientRegister directly
+	 * 
+	 * @param clientId
+	 * @return
+	 */
+	protected Single<JsonObject> lookupClientRegister(String clientId) {
+		if (clientRegistry != null)
+			return clientRegistry.get(clientId);
+		return getClientRegister(clientId);
+	}
+
 	/**
 	 * 
 	 * @return
@@ -282,6 +879,62 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 		return null;
 	}
 
+	/**
+	 * Drain the requests in flight before the server is closed. The health checks
+	 * fail at once, the new requests are still served within the grace period so
+	 * that the load balancers could notice it. Then the new connections are
+	 * closed once accepted, and the new requests on the open connections are
+	 * rejected by 503 with Connection: close, while the requests in flight and
+	 * the streaming responses finish up to the timeout. The event streams are
+	 * ended at the same time, so that their clients reconnect to the other nodes.
+	 * The server is closed once drained. The options of "drain" are:
+	 * 
+	 * <pre>
+	 * {
+	 *   "grace_seconds": 0,
+	 *   "timeout_seconds": 30
+	 * }
+	 * </pre>
+	 */
+	@Override
+	protected Completable drain() {
+		if (requestTracker == null || httpServer == null)
+			return Completable.complete();
+		JsonObject drainConfig = serverConfiguration == null ? null : serverConfiguration.getJsonObject("drain");
+		long graceMillis = drainConfig == null ? 0 : drainConfig.getLong("grace_seconds", 0L) * 1000;
+		long timeoutMillis = drainConfig == null ? 30000 : drainConfig.getLong("timeout_seconds", 30L) * 1000;
+		draining = true;
+		logger.info("{} Http service is draining, in flight: {}", getServerName(), requestTracker.getInFlight());
+		return Completable.create(emitter -> {
+			Handler<Long> awaiting = t -> {
+				requestTracker.drain();
+				if (eventStreamBridge != null)
+					eventStreamBridge.close();
+				long inFlight = requestTracker.getInFlight();
+				long deadline = System.currentTimeMillis() + timeoutMillis;
+				vertx.setPeriodic(50, id -> {
+					long remaining = requestTracker.getInFlight();
+					if (remaining > 0 && System.currentTimeMillis() < deadline)
+						return;
+					vertx.cancelTimer(id);
+					logger.info("{} Http service drained, drained: {}, cut off: {}, rejected: {}", getServerName(),
+							Math.max(0, inFlight - remaining), remaining, requestTracker.getRejected());
+					HttpServer _httpServer = httpServer;
+					httpServer = null;
+					_httpServer.rxClose().subscribe(() -> {
+						logger.info("{} Http service closed. port: {}, context path: {}", getServerName(), port,
+								contextPath);
+						emitter.onComplete();
+					}, emitter::onError);
+				});
+			};
+			if (graceMillis > 0)
+				vertx.setTimer(graceMillis, awaiting);
+			else
+				awaiting.handle(0L);
+		});
+	}
+
 	/**
 	 * Close the resources
 	 */
@@ -291,10 +944,34 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 			hcHandler.unregister("http");
 			procedures.stream().forEach(hcHandler::unregister);
 		}
+		if (clientRegistry != null)
+			clientRegistry.close();
+		if (rateLimiter != null)
+			rateLimiter.close();
+		if (sysInfoSampler != null)
+			sysInfoSampler.close();
+		if (responseCache != null)
+			responseCache.close();
+		if (hotAssetCache != null)
+			hotAssetCache.close();
+		if (eventStreamBridge != null)
+			eventStreamBridge.close();
+		if (batchHandler != null)
+			batchHandler.close();
+		if (endpointDirectory != null)
+			endpointDirectory.close();
 		if (httpServer != null) {
 			httpServer.close();
 			logger.info("{} Http service closed. port: {}, context path: {}", getServerName(), port, contextPath);
 		}
+		if (accessLog != null) {
+			AccessLog _accessLog = accessLog;
+			accessLog = null;
+			return vertx.rxExecuteBlocking(p -> {
+				_accessLog.close();
+				p.complete();
+			}).ignoreElement().andThen(super.closeResources());
+		}
 		return super.closeResources();
 	}
 
@@ -383,30 +1060,12 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	}
 
 	/**
-	 * Prints system information
+	 * Prints system information, which is sampled in background
 	 * 
 	 * @param rc
 	 */
 	protected void sysInfoHandler(RoutingContext rc) {
-		SysInfo sysInfo = new SysInfo().collect();
-		JsonObject info = new JsonObject();
-		JsonObject jvmItems = new JsonObject();
-		info.put("Description", getServerName());
-		sysInfo.getJvmInfo().entrySet().forEach(e -> jvmItems.put(e.getKey(), e.getValue()));
-		info.put("JVM", jvmItems);
-		JsonObject threadsItems = new JsonObject();
-		sysInfo.getThreadsInfo().entrySet().forEach(e -> threadsItems.put(e.getKey(), e.getValue()));
-		info.put("Threads", threadsItems);
-		JsonObject memoryItems = new JsonObject();
-		sysInfo.getMemoryInfo().entrySet().forEach(e -> memoryItems.put(e.getKey(), e.getValue()));
-		info.put("Memory", memoryItems);
-		JsonObject classesItems = new JsonObject();
-		sysInfo.getClassesInfo().entrySet().forEach(e -> classesItems.put(e.getKey(), e.getValue()));
-		info.put("Classes", classesItems);
-		JsonObject osItems = new JsonObject();
-		sysInfo.getOsInfo().entrySet().forEach(e -> osItems.put(e.getKey(), e.getValue()));
-		info.put("OS", osItems);
-		succeeded(rc, info);
+		rc.response().end(sysInfoSampler.getSnapshot());
 	}
 
 	/**
@@ -458,16 +1117,34 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	}
 
 	protected void succeeded(RoutingContext rc) {
-		rc.response().end(buildResponse(200, "OK").encode());
+		endResponse(rc, Buffer.buffer(buildResponse(200, "OK").encode()));
 	}
 
 	protected <T> void succeeded(RoutingContext rc, T payload) {
 		if (payload instanceof JsonArray || payload instanceof JsonObject)
-			rc.response().end(buildResponse(200, "OK", payload).encode());
+			endResponse(rc, Buffer.buffer(buildResponse(200, "OK", payload).encode()));
 		else if (payload instanceof String)
-			rc.response().end((String) payload);
+			endResponse(rc, Buffer.buffer((String) payload));
 		else
-			rc.response().end(payload.toString());
+			endResponse(rc, Buffer.buffer(payload.toString()));
+	}
+
+	/**
+	 * End the response with the encoded body, the body is shared with the
+	 * coalesced requests, and through the response cache if the route has enabled
+	 * it
+	 * 
+	 * @param rc
+	 * @param body
+	 */
+	protected void endResponse(RoutingContext rc, Buffer body) {
+		if (requestCoalescer != null)
+			requestCoalescer.complete(rc, body);
+		if (responseCache != null && responseCache.isCaching(rc)) {
+			responseCache.end(rc, body);
+			return;
+		}
+		rc.response().end(body);
 	}
 
 	protected void failed(RoutingContext rc, Throwable t) {
@@ -502,7 +1179,12 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	protected Function<RoutingContext, Void> replyFailure() {
 		return (rc) -> {
 			Tuple2<String, Integer> tupl2 = rc.get("failure.intent");
-			rc.response().setStatusCode(200).end(buildResponse(tupl2.$1(), tupl2.$0()).encode());
+			Long retryAfter = rc.get("failure.retry_after");
+			if (retryAfter != null)
+				rc.response().setStatusCode(429).putHeader("Retry-After", String.valueOf(retryAfter));
+			else
+				rc.response().setStatusCode(200);
+			endResponse(rc, Buffer.buffer(buildResponse(tupl2.$1(), tupl2.$0()).encode()));
 			return (Void) null;
 		};
 	}
@@ -568,6 +1250,9 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	}
 
 	protected static JsonObject resolveFileInfo(RoutingContext rc) {
+		JsonObject streamedFileInfo = rc.get(BodyPolicyHandler.STREAMED_FILE_INFO);
+		if (streamedFileInfo != null)
+			return streamedFileInfo;
 		FileUpload lastestOne = null;
 		for (FileUpload f : rc.fileUploads())
 			lastestOne = f;
@@ -613,6 +1298,8 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 				logger.warn(emsg);
 			}
 			rc.put("failure.intent", new Tuple2<String, Integer>(st, sc));
+			if (e instanceof TooManyRequestsException)
+				rc.put("failure.retry_after", ((TooManyRequestsException) e).getRetryAfterSeconds());
 			return rc;
 		};
 	}
@@ -639,24 +1326,34 @@ public abstract class AbstractHttpVerticle extends BaseVerticle {
 	}
 
 	protected Future<JsonObject> checkParameters(JsonObject params) {
+		try {
+			return Future.succeededFuture(requireParameters(params));
+		} catch (IllegalParametersException e) {
+			return Future.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Check the parameters synchronously in one pass, none of them could be null
+	 * or empty string
+	 * 
+	 * @param params
+	 * @return the parameters with trimmed string values
+	 * @throws IllegalParametersException
+	 */
+	protected JsonObject requireParameters(JsonObject params) throws IllegalParametersException {
 		if (params == null || params.isEmpty())
-			return Future.failedFuture(new IllegalParametersException("Missing all parameter!"));
-		return CompositeFuture.all(params.fieldNames().stream().map(k -> {
+			throw new IllegalParametersException("Missing all parameter!");
+		JsonObject checked = new JsonObject();
+		for (String k : params.fieldNames()) {
 			Object objValue = params.getValue(k, null);
+			if (objValue instanceof String)
+				objValue = Strings.emptyAsNull((String) objValue);
 			if (objValue == null)
-				return Future.failedFuture(new IllegalParametersException("Missing " + k + " parameter!"));
-			if (objValue instanceof String) {
-				String _v = Strings.emptyAsNull((String) objValue);
-				if (_v == null)
-					return Future.failedFuture(new IllegalParametersException("Missing " + k + " parameter!"));
-				return Future.succeededFuture(new Tuple2<String, Object>(k, _v));
-			}
-			return Future.succeededFuture(new Tuple2<String, Object>(k, objValue));
-		}).collect(Collectors.toList())).map(fs -> {
-			List<Tuple2<String, Object>> list = fs.list();
-			return new JsonObject(list.stream().collect(Collectors.toMap(t -> t.$0(), t -> t.$1())));
-		});
-
+				throw new IllegalParametersException("Missing " + k + " parameter!");
+			checked.put(k, objValue);
+		}
+		return checked;
 	}
 
 	protected static String resolveBaseUrl(RoutingContext rc) {
@@ -0,0 +1,308 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.net.SocketAddress;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The asynchronous access log of HTTP server.
+ * </p>
+ * The fields of each ended request are captured into the preallocated slot of
+ * a ring buffer on the event loop, and formatted and written in batches by a
+ * background thread, in the combined log format plus the microseconds elapsed.
+ * The entries are dropped and counted rather than blocking the event loop if
+ * the ring buffer is full. The file is rotated by size, such as access.log.1,
+ * access.log.2 and so on. The verticle instances of the same log file share
+ * one ring buffer. The options are:
+ * 
+ * <pre>
+ * {
+ *   "path": "logs/access.log",
+ *   "ring_size": 8192,
+ *   "max_file_size": 104857600,
+ *   "max_files": 10
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class AccessLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(AccessLog.class);
+
+	private static final Map<String, AccessLog> instances = new ConcurrentHashMap<>();
+
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter
+			.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+	private final String path;
+	private final Disruptor<Entry> disruptor;
+	private final RingBuffer<Entry> ringBuffer;
+	private final LongAdder written = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private int references;
+
+	private static class Entry {
+		long timeMillis;
+		String remoteHost;
+		String method;
+		String uri;
+		String version;
+		int statusCode;
+		long bytesWritten;
+		String referer;
+		String userAgent;
+		long elapsedMicros;
+
+		void clear() {
+			remoteHost = null;
+			method = null;
+			uri = null;
+			version = null;
+			referer = null;
+			userAgent = null;
+		}
+	}
+
+	private static class Writer implements EventHandler<Entry>, LifecycleAware {
+		final File file;
+		final long maxFileSize;
+		final int maxFiles;
+		final LongAdder written;
+		final StringBuilder line = new StringBuilder(512);
+		OutputStream out;
+		long size;
+		long lastSecond = -1;
+		String lastTimestamp;
+
+		Writer(File file, long maxFileSize, int maxFiles, LongAdder written) {
+			this.file = file;
+			this.maxFileSize = maxFileSize;
+			this.maxFiles = maxFiles;
+			this.written = written;
+		}
+
+		@Override
+		public void onStart() {
+			open();
+		}
+
+		@Override
+		public void onShutdown() {
+			close();
+		}
+
+		@Override
+		public void onEvent(Entry entry, long sequence, boolean endOfBatch) throws Exception {
+			format(entry);
+			entry.clear();
+			if (out == null)
+				return;
+			byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+			try {
+				out.write(bytes);
+				size += bytes.length;
+				written.increment();
+				if (endOfBatch)
+					out.flush();
+				if (size >= maxFileSize)
+					rotate();
+			} catch (IOException e) {
+				logger.error("Could not write access log: {}", file, e);
+			}
+		}
+
+		private void format(Entry entry) {
+			long second = entry.timeMillis / 1000;
+			if (second != lastSecond) {
+				lastSecond = second;
+				lastTimestamp = TIMESTAMP.format(Instant.ofEpochMilli(entry.timeMillis));
+			}
+			line.setLength(0);
+			line.append(entry.remoteHost == null ? "-" : entry.remoteHost).append(" - - [").append(lastTimestamp)
+					.append("] \"").append(entry.method).append(' ').append(entry.uri).append(' ')
+					.append(entry.version).append("\" ").append(entry.statusCode).append(' ')
+					.append(entry.bytesWritten).append(" \"").append(entry.referer == null ? "-" : entry.referer)
+					.append("\" \"").append(entry.userAgent == null ? "-" : entry.userAgent).append("\" ")
+					.append(entry.elapsedMicros).append('\n');
+		}
+
+		private void open() {
+			try {
+				File dir = file.getAbsoluteFile().getParentFile();
+				if (dir != null && !dir.exists())
+					dir.mkdirs();
+				out = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+				size = file.length();
+			} catch (IOException e) {
+				out = null;
+				logger.error("Could not open access log: {}", file, e);
+			}
+		}
+
+		private void close() {
+			if (out == null)
+				return;
+			try {
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Could not close access log: {}", file, e);
+			}
+			out = null;
+		}
+
+		private void rotate() {
+			close();
+			for (int i = maxFiles - 1; i > 0; i--) {
+				File from = new File(file.getPath() + "." + i);
+				if (from.exists()) {
+					File to = new File(file.getPath() + "." + (i + 1));
+					to.delete();
+					from.renameTo(to);
+				}
+			}
+			File first = new File(file.getPath() + ".1");
+			first.delete();
+			if (!file.renameTo(first))
+				logger.warn("Could not rotate access log: {}", file);
+			open();
+		}
+	}
+
+	/**
+	 * Create the access log, or reuse the one of the same file
+	 * 
+	 * @param tracker - The request tracker which notifies the end of requests
+	 * @param options
+	 * @return
+	 */
+	public static AccessLog create(RequestTracker tracker, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		String path = new File(_options.getString("path", "logs/access.log")).getAbsolutePath();
+		AccessLog inst;
+		synchronized (instances) {
+			inst = instances.computeIfAbsent(path, p -> new AccessLog(p, _options));
+			inst.references++;
+		}
+		tracker.onEnd(inst::log);
+		return inst;
+	}
+
+	private AccessLog(String path, JsonObject options) {
+		this.path = path;
+		int ringSize = Integer.highestOneBit(Math.max(64, options.getInteger("ring_size", 8192)));
+		this.disruptor = new Disruptor<>(Entry::new, ringSize, r -> {
+			Thread t = new Thread(r, "roxa-access-log");
+			t.setDaemon(true);
+			return t;
+		}, ProducerType.MULTI, new BlockingWaitStrategy());
+		disruptor.handleEventsWith(new Writer(new File(path), options.getLong("max_file_size", 100L * 1024 * 1024),
+				Math.max(1, options.getInteger("max_files", 10)), written));
+		this.ringBuffer = disruptor.start();
+		logger.info("Access log started: {}, ring size: {}", path, ringSize);
+	}
+
+	public long getWritten() {
+		return written.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Release the access log, the entries in the ring buffer are written before
+	 * the last one of same file is closed, so it should be called in blocking
+	 * way
+	 */
+	public void close() {
+		synchronized (instances) {
+			if (--references > 0)
+				return;
+			instances.remove(path, this);
+		}
+		try {
+			disruptor.shutdown(5, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			logger.warn("Access log could not be drained in time: {}", path);
+			disruptor.halt();
+		}
+		logger.info("Access log closed: {}, written: {}, dropped: {}", path, getWritten(), getDropped());
+	}
+
+	private void log(RoutingContext rc) {
+		long sequence;
+		try {
+			sequence = ringBuffer.tryNext();
+		} catch (InsufficientCapacityException e) {
+			dropped.increment();
+			return;
+		}
+		try {
+			Entry entry = ringBuffer.get(sequence);
+			entry.timeMillis = System.currentTimeMillis();
+			SocketAddress remote = rc.request().remoteAddress();
+			entry.remoteHost = remote == null ? null : remote.host();
+			entry.method = rc.request().rawMethod();
+			entry.uri = rc.request().uri();
+			entry.version = rc.request().version() == null ? "-" : versionOf(rc);
+			entry.statusCode = rc.response().getStatusCode();
+			entry.bytesWritten = rc.response().bytesWritten();
+			entry.referer = rc.request().getHeader("Referer");
+			entry.userAgent = rc.request().getHeader("User-Agent");
+			entry.elapsedMicros = RequestTracker.elapsedNanos(rc) / 1000;
+		} finally {
+			ringBuffer.publish(sequence);
+		}
+	}
+
+	private static String versionOf(RoutingContext rc) {
+		switch (rc.request().version()) {
+		case HTTP_1_0:
+			return "HTTP/1.0";
+		case HTTP_2:
+			return "HTTP/2.0";
+		default:
+			return "HTTP/1.1";
+		}
+	}
+}
@@ -0,0 +1,369 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.roxa.http.BadRequestException;
+import io.roxa.util.Codecs;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.net.SocketAddress;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import io.vertx.reactivex.ext.web.client.HttpRequest;
+import io.vertx.reactivex.ext.web.client.HttpResponse;
+import io.vertx.reactivex.ext.web.client.WebClient;
+
+/**
+ * <p>
+ * The batch route that fans out the sub-requests to the routes of the same
+ * server.
+ * </p>
+ * The request body is an array of sub-requests, such as:
+ * 
+ * <pre>
+ * [
+ *   { "id": "user", "method": "GET", "path": "/api/users/1" },
+ *   { "id": "orders", "method": "POST", "path": "/api/orders/query", "body": {...}, "depends_on": ["user"] }
+ * ]
+ * </pre>
+ * 
+ * The independent sub-requests run in parallel up to the limit, the others
+ * wait for their dependencies, and fail by 424 once any dependency failed. The
+ * response payload is the array of envelopes of sc/st/payload with the id, in
+ * the order of sub-requests. The sub-requests carry a ticket of batch, and are
+ * authorized by the policies of their routes against their own method and
+ * path. The sub-request inherits the Authorization of batch unless it has its
+ * own in headers, the bearer of batch verified once is reused if it was signed
+ * for the method of sub-request, and each sub-request takes a permit of the
+ * client quota. The sub-requests of a live ticket from the loopback address
+ * are exempt from the IP quota of {@link RateLimiter} and from the
+ * {@link ConcurrencyLimiter}, as the batch request has been charged for them
+ * and holds a slot while waiting for them. So the batch is never nested, the
+ * paths of sub-requests are compared with the batch path once normalized, and
+ * the batch route rejects the sub-requests. The options are:
+ * 
+ * <pre>
+ * {
+ *   "path": "/batch",
+ *   "max_requests": 20,
+ *   "parallelism": 4,
+ *   "pool_size": 32
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class BatchHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchHandler.class);
+
+	public static final String TICKET_HEADER = "X-Roxa-Batch-Ticket";
+
+	private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final WebClient client;
+	private final int maxRequests;
+	private final int parallelism;
+
+	private static class Session {
+		final RoutingContext rc;
+
+		Session(RoutingContext rc) {
+			this.rc = rc;
+		}
+	}
+
+	private static class SubRequest {
+		final String id;
+		final int index;
+		final HttpMethod method;
+		final String path;
+		final JsonObject headers;
+		final Object body;
+		final List<String> dependsOn = new ArrayList<>();
+
+		SubRequest(String id, int index, JsonObject spec) {
+			this.id = id;
+			this.index = index;
+			this.method = HttpMethod.valueOf(spec.getString("method", "GET").toUpperCase());
+			this.path = spec.getString("path");
+			this.headers = spec.getJsonObject("headers");
+			this.body = spec.getValue("body");
+			JsonArray _dependsOn = spec.getJsonArray("depends_on");
+			if (_dependsOn != null)
+				_dependsOn.forEach(d -> dependsOn.add(String.valueOf(d)));
+		}
+	}
+
+	/**
+	 * 
+	 * @param vertx
+	 * @param port    - The port of this server
+	 * @param options
+	 * @return
+	 */
+	public static BatchHandler create(Vertx vertx, int port, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		return new BatchHandler(vertx, port, _options);
+	}
+
+	private BatchHandler(Vertx vertx, int port, JsonObject options) {
+		this.maxRequests = options.getInteger("max_requests", 20);
+		this.parallelism = Math.max(1, options.getInteger("parallelism", 4));
+		this.client = WebClient.create(vertx, new WebClientOptions().setDefaultHost("127.0.0.1").setDefaultPort(port)
+				.setKeepAlive(true).setMaxPoolSize(options.getInteger("pool_size", 32)));
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return the batch request that the sub-request belongs to, or null if the
+	 *         request is not a sub-request
+	 */
+	public static RoutingContext batchOf(RoutingContext rc) {
+		Session session = sessionOf(rc);
+		return session == null ? null : session.rc;
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return true if the request is a sub-request of a batch in progress
+	 */
+	public static boolean isSubRequest(RoutingContext rc) {
+		return sessionOf(rc) != null;
+	}
+
+	private static Session sessionOf(RoutingContext rc) {
+		String ticket = rc.request().getHeader(TICKET_HEADER);
+		if (ticket == null)
+			return null;
+		Session session = sessions.get(ticket);
+		if (session == null || !isLoopback(rc.request().remoteAddress()))
+			return null;
+		return session;
+	}
+
+	/**
+	 * The route handler of batch
+	 * 
+	 * @param authPolicy - The policy to authorize the batch request, could be null
+	 * @param authorizer - Authorize the request by policy
+	 * @param responder  - End the response with the encoded body
+	 * @param failer     - Reply the failure
+	 * @return
+	 */
+	public Handler<RoutingContext> handler(JsonObject authPolicy,
+			BiFunction<RoutingContext, JsonObject, Single<JsonObject>> authorizer,
+			BiConsumer<RoutingContext, Buffer> responder, BiConsumer<RoutingContext, Throwable> failer) {
+		return rc -> {
+			// the sub-requests skip the limiters, so they must never nest a batch
+			if (isSubRequest(rc)) {
+				failer.accept(rc, new BadRequestException("The batch must not be nested!"));
+				return;
+			}
+			List<SubRequest> subRequests;
+			try {
+				subRequests = parse(rc);
+			} catch (RuntimeException e) {
+				failer.accept(rc, e instanceof BadRequestException ? e : new BadRequestException(e));
+				return;
+			}
+			Session session = new Session(rc);
+			String ticket = newTicket();
+			authorizer.apply(rc, authPolicy).flatMap(auth -> {
+				sessions.put(ticket, session);
+				return dispatch(ticket, rc, subRequests);
+			}).doFinally(() -> sessions.remove(ticket)).subscribe(results -> {
+				rc.response().setStatusCode(200);
+				responder.accept(rc, Buffer.buffer(AbstractHttpVerticle.buildResponse(200, "OK", results).encode()));
+			}, e -> failer.accept(rc, e));
+		};
+	}
+
+	public void close() {
+		client.close();
+	}
+
+	private Single<JsonArray> dispatch(String ticket, RoutingContext rc, List<SubRequest> subRequests) {
+		Map<String, Single<JsonObject>> outcomes = new HashMap<>();
+		List<Single<JsonObject>> ordered = new ArrayList<>();
+		for (SubRequest subRequest : subRequests) {
+			List<Single<JsonObject>> dependencies = new ArrayList<>();
+			subRequest.dependsOn.forEach(d -> dependencies.add(outcomes.get(d)));
+			Single<JsonObject> outcome = Flowable.fromIterable(dependencies).concatMapSingle(d -> d)
+					.filter(envelope -> envelope.getInteger("sc", 500) >= 400).firstElement()
+					.map(failed -> AbstractHttpVerticle.buildResponse(424, "Failed Dependency"))
+					.switchIfEmpty(Single.defer(() -> send(ticket, rc, subRequest)))
+					.map(envelope -> envelope.put("id", subRequest.id)).cache();
+			outcomes.put(subRequest.id, outcome);
+			ordered.add(outcome);
+		}
+		// the sub-requests are subscribed in the dependency order, so that the
+		// waiting ones never hold the slots their dependencies need
+		return Flowable.fromIterable(ordered).concatMapEager(o -> o.toFlowable(), parallelism, 1)
+				.collect(JsonArray::new, JsonArray::add).map(results -> reorder(results, subRequests));
+	}
+
+	private Single<JsonObject> send(String ticket, RoutingContext rc, SubRequest subRequest) {
+		HttpRequest<Buffer> request = client.request(subRequest.method, subRequest.path).putHeader(TICKET_HEADER,
+				ticket);
+		String authorization = rc.request().getHeader("Authorization");
+		if (authorization != null)
+			request.putHeader("Authorization", authorization);
+		String acceptLanguage = rc.request().getHeader("Accept-Language");
+		if (acceptLanguage != null)
+			request.putHeader("Accept-Language", acceptLanguage);
+		if (subRequest.headers != null)
+			subRequest.headers.forEach(e -> request.putHeader(e.getKey(), String.valueOf(e.getValue())));
+		Single<HttpResponse<Buffer>> response;
+		if (subRequest.body == null) {
+			response = request.rxSend();
+		} else if (subRequest.body instanceof JsonObject || subRequest.body instanceof JsonArray) {
+			response = request.rxSendJson(subRequest.body);
+		} else {
+			response = request.rxSendBuffer(Buffer.buffer(String.valueOf(subRequest.body)));
+		}
+		return response.map(BatchHandler::envelopeOf).onErrorReturn(e -> {
+			logger.warn("Could not dispatch the sub-request {} {}", subRequest.method, subRequest.path, e);
+			return AbstractHttpVerticle.buildResponse(502, "Bad Gateway");
+		});
+	}
+
+	private static JsonObject envelopeOf(HttpResponse<Buffer> response) {
+		Buffer body = response.body();
+		String contentType = response.getHeader("Content-Type");
+		Object payload = null;
+		if (body != null && body.length() > 0) {
+			payload = body.toString();
+			if (contentType != null && contentType.startsWith("application/json")) {
+				try {
+					String text = ((String) payload).trim();
+					if (text.startsWith("{")) {
+						JsonObject json = new JsonObject(text);
+						if (json.containsKey("sc") && response.statusCode() < 300)
+							return json;
+						payload = json;
+					} else if (text.startsWith("[")) {
+						payload = new JsonArray(text);
+					}
+				} catch (RuntimeException e) {
+					logger.debug("Could not decode the response of sub-request as JSON");
+				}
+			}
+		}
+		return AbstractHttpVerticle.buildResponse(response.statusCode(), response.statusMessage(), payload);
+	}
+
+	private List<SubRequest> parse(RoutingContext rc) {
+		JsonArray specs = rc.getBodyAsJsonArray();
+		if (specs == null || specs.isEmpty())
+			throw new BadRequestException("The batch must not be empty!");
+		if (specs.size() > maxRequests)
+			throw new BadRequestException(String.format("The batch must not exceed %s requests!", maxRequests));
+		String batchPath = normalize(rc.request().path());
+		Map<String, SubRequest> subRequests = new LinkedHashMap<>();
+		for (int i = 0; i < specs.size(); i++) {
+			JsonObject spec = specs.getJsonObject(i);
+			String id = spec.getValue("id") == null ? String.valueOf(i) : String.valueOf(spec.getValue("id"));
+			SubRequest subRequest = new SubRequest(id, i, spec);
+			if (subRequest.path == null || !subRequest.path.startsWith("/")
+					|| normalize(subRequest.path).startsWith(batchPath))
+				throw new BadRequestException(String.format("Illegal path of sub-request [%s]", id));
+			if (subRequests.put(id, subRequest) != null)
+				throw new BadRequestException(String.format("Duplicated id of sub-request [%s]", id));
+		}
+		for (SubRequest subRequest : subRequests.values())
+			for (String d : subRequest.dependsOn)
+				if (!subRequests.containsKey(d))
+					throw new BadRequestException(
+							String.format("Unknown dependency [%s] of sub-request [%s]", d, subRequest.id));
+		// order by dependencies, and keep the order of batch otherwise
+		List<SubRequest> ordered = new ArrayList<>(subRequests.size());
+		Map<String, Boolean> visited = new HashMap<>();
+		while (ordered.size() < subRequests.size()) {
+			int before = ordered.size();
+			for (SubRequest subRequest : subRequests.values()) {
+				if (visited.containsKey(subRequest.id))
+					continue;
+				if (subRequest.dependsOn.stream().allMatch(visited::containsKey)) {
+					visited.put(subRequest.id, Boolean.TRUE);
+					ordered.add(subRequest);
+				}
+			}
+			if (ordered.size() == before)
+				throw new BadRequestException("The dependencies of sub-requests are cyclic!");
+		}
+		return ordered;
+	}
+
+	/**
+	 * 
+	 * @param path
+	 * @return the path decoded and without dot segments, as the router matches
+	 */
+	private static String normalize(String path) {
+		try {
+			int query = path.indexOf('?');
+			String normalized = new URI(query < 0 ? path : path.substring(0, query)).normalize().getPath();
+			return normalized == null || normalized.isEmpty() ? "/" : normalized.replaceAll("/{2,}", "/");
+		} catch (URISyntaxException e) {
+			throw new BadRequestException("Illegal path of sub-request: " + path);
+		}
+	}
+
+	private static JsonArray reorder(JsonArray results, List<SubRequest> ordered) {
+		Map<String, JsonObject> byId = new HashMap<>();
+		results.forEach(r -> byId.put(((JsonObject) r).getString("id"), (JsonObject) r));
+		List<SubRequest> original = new ArrayList<>(ordered);
+		original.sort((a, b) -> Integer.compare(a.index, b.index));
+		JsonArray reordered = new JsonArray();
+		original.forEach(s -> reordered.add(byId.get(s.id)));
+		return reordered;
+	}
+
+	private static String newTicket() {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return Codecs.asHexString(bytes);
+	}
+
+	private static boolean isLoopback(SocketAddress address) {
+		if (address == null || address.host() == null)
+			return false;
+		String host = address.host();
+		return host.startsWith("127.") || "0:0:0:0:0:0:0:1".equals(host) || "::1".equals(host);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.function.Function;
+
+import io.reactivex.Single;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.streams.WriteStream;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The policy of handling request body for routes.
+ * </p>
+ * In BUFFERED mode, the body is handled by BodyHandler, and a non multipart body
+ * larger than the memory limit is rejected with 413, as it would be held in
+ * memory. In STREAMING mode, the body is piped from the request into the sink
+ * under backpressure, an AsyncFile in the uploads directory by default. The
+ * JSON form is:
+ * 
+ * <pre>
+ * {
+ *   "mode": "buffered | streaming",
+ *   "max_body_size": -1,
+ *   "memory_limit": 1048576
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class BodyPolicy {
+
+	public enum Mode {
+		BUFFERED, STREAMING
+	}
+
+	private Mode mode = Mode.BUFFERED;
+	private long maxBodySize = -1;
+	private long memoryLimit = -1;
+	private Function<RoutingContext, Single<WriteStream<Buffer>>> sink;
+
+	public static BodyPolicy buffered() {
+		return new BodyPolicy().setMode(Mode.BUFFERED);
+	}
+
+	public static BodyPolicy streaming() {
+		return new BodyPolicy().setMode(Mode.STREAMING);
+	}
+
+	public static BodyPolicy fromJson(JsonObject json) {
+		BodyPolicy inst = new BodyPolicy();
+		if (json == null)
+			return inst;
+		inst.mode = "streaming".equalsIgnoreCase(json.getString("mode")) ? Mode.STREAMING : Mode.BUFFERED;
+		inst.maxBodySize = json.getLong("max_body_size", -1L);
+		inst.memoryLimit = json.getLong("memory_limit", -1L);
+		return inst;
+	}
+
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	public BodyPolicy setMode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	public long getMaxBodySize() {
+		return this.maxBodySize;
+	}
+
+	/**
+	 * @param maxBodySize - The max bytes of body, -1 means unlimited
+	 * @return
+	 */
+	public BodyPolicy setMaxBodySize(long maxBodySize) {
+		this.maxBodySize = maxBodySize;
+		return this;
+	}
+
+	public long getMemoryLimit() {
+		return this.memoryLimit;
+	}
+
+	/**
+	 * @param memoryLimit - The max bytes of body held in memory in BUFFERED mode,
+	 *                    -1 means unlimited
+	 * @return
+	 */
+	public BodyPolicy setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+
+	public Function<RoutingContext, Single<WriteStream<Buffer>>> getSink() {
+		return this.sink;
+	}
+
+	/**
+	 * @param sink - Supply the WriteStream of body in STREAMING mode, the sink
+	 *             will be ended after the body has been piped
+	 * @return
+	 */
+	public BodyPolicy setSink(Function<RoutingContext, Single<WriteStream<Buffer>>> sink) {
+		this.sink = sink;
+		return this;
+	}
+
+	boolean isOversized(long size) {
+		return maxBodySize >= 0 && size > maxBodySize;
+	}
+
+	boolean exceedsMemory(long size) {
+		return memoryLimit >= 0 && size > memoryLimit;
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.roxa.fn.Tuple2;
+import io.roxa.util.Codecs;
+import io.roxa.util.Randoms;
+import io.vertx.core.Handler;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.http.HttpServerRequest;
+import io.vertx.reactivex.core.streams.WriteStream;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import io.vertx.reactivex.ext.web.handler.BodyHandler;
+
+/**
+ * <p>
+ * The body handler that applies the body policy by the path prefix of request.
+ * </p>
+ * The prefixes match on the path segment boundaries, the longest matched prefix
+ * wins, and the default policy applies to the other requests. In BUFFERED mode,
+ * a non multipart body over the memory limit is rejected with 413, counted by
+ * the bytes read for the chunked body. The information of streamed body is put into the context under
+ * {@link #STREAMED_FILE_INFO}, with the same fields as the uploaded file plus
+ * the SHA-256 digest. The options are:
+ * 
+ * <pre>
+ * {
+ *   "default": { "mode": "buffered", "max_body_size": -1, "memory_limit": -1 },
+ *   "routes": {
+ *     "/uploads": { "mode": "streaming", "max_body_size": 1073741824 }
+ *   }
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class BodyPolicyHandler implements Handler<RoutingContext> {
+
+	private static final Logger logger = LoggerFactory.getLogger(BodyPolicyHandler.class);
+
+	public static final String STREAMED_FILE_INFO = "roxa.body.streamed_file_info";
+
+	private final Vertx vertx;
+	private final String uploadsDirectory;
+	private final Map<Long, BodyHandler> bodyHandlers = new ConcurrentHashMap<>();
+	private volatile List<Tuple2<String, BodyPolicy>> policies = Collections.emptyList();
+	private volatile BodyPolicy defaultPolicy;
+	private volatile boolean uploadsDirectoryCreated;
+
+	/**
+	 * 
+	 * @param vertx            - The instance of Vertx
+	 * @param uploadsDirectory - The directory of uploaded and streamed files
+	 * @param options          - The options of policies, the path prefixes are
+	 *                         absolute, could be null
+	 * @return
+	 */
+	public static BodyPolicyHandler create(Vertx vertx, String uploadsDirectory, JsonObject options) {
+		BodyPolicyHandler inst = new BodyPolicyHandler(vertx, uploadsDirectory);
+		JsonObject _options = options == null ? new JsonObject() : options;
+		inst.defaultPolicy = BodyPolicy.fromJson(_options.getJsonObject("default"));
+		JsonObject routes = _options.getJsonObject("routes", new JsonObject());
+		routes.fieldNames().forEach(path -> inst.policy(path, BodyPolicy.fromJson(routes.getJsonObject(path))));
+		return inst;
+	}
+
+	private BodyPolicyHandler(Vertx vertx, String uploadsDirectory) {
+		this.vertx = vertx;
+		this.uploadsDirectory = uploadsDirectory;
+	}
+
+	/**
+	 * Apply the policy to the requests of which path is under the prefix
+	 * 
+	 * @param pathPrefix
+	 * @param policy
+	 * @return
+	 */
+	public synchronized BodyPolicyHandler policy(String pathPrefix, BodyPolicy policy) {
+		List<Tuple2<String, BodyPolicy>> _policies = new ArrayList<>(policies);
+		_policies.removeIf(t -> t.$0().equals(pathPrefix));
+		_policies.add(new Tuple2<>(pathPrefix, policy));
+		_policies.sort((a, b) -> b.$0().length() - a.$0().length());
+		policies = _policies;
+		return this;
+	}
+
+	public BodyPolicyHandler defaultPolicy(BodyPolicy policy) {
+		this.defaultPolicy = policy;
+		return this;
+	}
+
+	@Override
+	public void handle(RoutingContext rc) {
+		BodyPolicy policy = resolve(rc.request().path());
+		long contentLength = contentLength(rc.request());
+		if (policy.isOversized(contentLength)) {
+			rc.fail(413);
+			return;
+		}
+		if (policy.getMode() == BodyPolicy.Mode.STREAMING) {
+			if (contentLength > 0 || rc.request().getHeader("Transfer-Encoding") != null)
+				stream(rc, policy);
+			else
+				rc.next();
+			return;
+		}
+		String contentType = rc.request().getHeader("Content-Type");
+		long bodyLimit = policy.getMaxBodySize();
+		if (contentType == null || !contentType.toLowerCase().startsWith("multipart/")) {
+			if (policy.exceedsMemory(contentLength)) {
+				logger.debug("Body of {} exceeds memory limit {}", rc.request().path(), policy.getMemoryLimit());
+				rc.fail(413);
+				return;
+			}
+			// The BodyHandler counts the bytes read against the limit
+			if (policy.getMemoryLimit() >= 0 && (bodyLimit < 0 || policy.getMemoryLimit() < bodyLimit))
+				bodyLimit = policy.getMemoryLimit();
+		}
+		bodyHandlers.computeIfAbsent(bodyLimit, limit -> {
+			BodyHandler bodyHandler = BodyHandler.create().setUploadsDirectory(uploadsDirectory);
+			if (limit >= 0)
+				bodyHandler.setBodyLimit(limit);
+			return bodyHandler;
+		}).handle(rc);
+	}
+
+	private BodyPolicy resolve(String path) {
+		if (path != null)
+			for (Tuple2<String, BodyPolicy> t : policies)
+				if (matches(path, t.$0()))
+					return t.$1();
+		return defaultPolicy;
+	}
+
+	/**
+	 * Match the prefix on the path segment boundary, "/upload" matches
+	 * "/upload/a" but not "/uploads"
+	 */
+	private static boolean matches(String path, String pathPrefix) {
+		if (!path.startsWith(pathPrefix))
+			return false;
+		return path.length() == pathPrefix.length() || pathPrefix.endsWith("/")
+				|| path.charAt(pathPrefix.length()) == '/';
+	}
+
+	private void stream(RoutingContext rc, BodyPolicy policy) {
+		HttpServerRequest request = rc.request();
+		request.pause();
+		String uploadedFileName = policy.getSink() == null
+				? new File(uploadsDirectory, Randoms.randomBasedUUID()).getPath()
+				: null;
+		Single<WriteStream<Buffer>> sink = uploadedFileName == null ? policy.getSink().apply(rc)
+				: mkdirsUploadsDirectory().andThen(vertx.fileSystem()
+						.rxOpen(uploadedFileName, new OpenOptions().setCreateNew(true).setWrite(true))
+						.map(f -> (WriteStream<Buffer>) f));
+		sink.subscribe(ws -> new Pipe(rc, policy, ws, uploadedFileName).start(), e -> {
+			logger.error("Could not open the sink of request body", e);
+			request.resume();
+			rc.fail(e);
+		});
+	}
+
+	/**
+	 * Create the uploads directory once, as the BodyHandler does
+	 */
+	private Completable mkdirsUploadsDirectory() {
+		if (uploadsDirectoryCreated)
+			return Completable.complete();
+		return vertx.fileSystem().rxMkdirs(uploadsDirectory).doOnComplete(() -> uploadsDirectoryCreated = true);
+	}
+
+	private static long contentLength(HttpServerRequest request) {
+		String value = request.getHeader("Content-Length");
+		if (value == null)
+			return -1;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private class Pipe {
+		final RoutingContext rc;
+		final BodyPolicy policy;
+		final WriteStream<Buffer> ws;
+		final String uploadedFileName;
+		final MessageDigest digest;
+		long size;
+		boolean aborted;
+
+		Pipe(RoutingContext rc, BodyPolicy policy, WriteStream<Buffer> ws, String uploadedFileName) {
+			this.rc = rc;
+			this.policy = policy;
+			this.ws = ws;
+			this.uploadedFileName = uploadedFileName;
+			try {
+				this.digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void start() {
+			HttpServerRequest request = rc.request();
+			request.handler(this::write);
+			request.exceptionHandler(e -> abort(e, 500));
+			ws.exceptionHandler(e -> abort(e, 500));
+			request.endHandler(v -> {
+				if (aborted)
+					return;
+				ws.rxEnd().subscribe(this::completed, e -> abort(e, 500));
+			});
+			request.resume();
+		}
+
+		void write(Buffer buf) {
+			if (aborted)
+				return;
+			size += buf.length();
+			if (policy.isOversized(size)) {
+				abort(null, 413);
+				return;
+			}
+			digest.update(buf.getDelegate().getByteBuf().nioBuffer());
+			ws.write(buf);
+			if (ws.writeQueueFull()) {
+				rc.request().pause();
+				ws.drainHandler(v -> rc.request().resume());
+			}
+		}
+
+		void completed() {
+			JsonObject fileInfo = new JsonObject();
+			String contentType = rc.request().getHeader("Content-Type");
+			if (contentType != null)
+				fileInfo.put("content_type", contentType);
+			if (uploadedFileName != null)
+				fileInfo.put("uploaded_file_name", uploadedFileName);
+			fileInfo.put("size", size).put("sha256", Codecs.asHexString(digest.digest()));
+			rc.put(STREAMED_FILE_INFO, fileInfo);
+			rc.next();
+		}
+
+		void abort(Throwable e, int statusCode) {
+			if (aborted)
+				return;
+			aborted = true;
+			if (e != null)
+				logger.error("Streaming request body failed", e);
+			Completable cleanup = uploadedFileName == null ? Completable.complete()
+					: vertx.fileSystem().rxDelete(uploadedFileName);
+			ws.rxEnd().onErrorComplete().andThen(cleanup).subscribe(() -> {
+			}, x -> logger.warn("Could not clean the streamed file {}", uploadedFileName));
+			rc.request().resume();
+			if (e == null)
+				rc.fail(statusCode);
+			else
+				rc.fail(statusCode, e);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.util.Strings;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+
+/**
+ * <p>
+ * The in-memory, size bounded cache in front of a client register loader.
+ * </p>
+ * Entries are refreshed asynchronously once they are older than the refresh
+ * period, concurrent loads of the same client_id share one loader call, an
+ * empty register is cached as negative result for a short period, and any node
+ * can invalidate the entries cluster wide by publishing the client_id to
+ * {@link #INVALIDATE_ADDRESS}. The options are:
+ * 
+ * <pre>
+ * {
+ *   "max_size": 10000,
+ *   "ttl_seconds": 300,
+ *   "refresh_seconds": 240,
+ *   "negative_ttl_seconds": 10
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ * 
+ */
+public class ClientRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClientRegistry.class);
+
+	public static final String INVALIDATE_ADDRESS = "roxa.vertx::http.client-registry.invalidate";
+
+	private static final String INVALIDATE_ALL = "*";
+
+	private static final JsonObject EMPTY_JSON_OBJECT = new JsonObject();
+
+	private final Function<String, Single<JsonObject>> loader;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Single<JsonObject>> loading = new ConcurrentHashMap<>();
+	private final int maxSize;
+	private final long ttlMillis;
+	private final long refreshMillis;
+	private final long negativeTtlMillis;
+	private MessageConsumer<String> consumer;
+
+	private static class Entry {
+		final JsonObject register;
+		final long loadedAt;
+		final long expiredAt;
+		final long refreshAt;
+
+		Entry(JsonObject register, long loadedAt, long ttlMillis, long refreshMillis) {
+			this.register = register;
+			this.loadedAt = loadedAt;
+			this.expiredAt = loadedAt + ttlMillis;
+			this.refreshAt = loadedAt + refreshMillis;
+		}
+
+		boolean isNegative() {
+			return register.isEmpty();
+		}
+	}
+
+	/**
+	 * 
+	 * @param vertx   - The instance of Vertx
+	 * @param loader  - The loader of client register, an empty JSON means no
+	 *                such client
+	 * @param options - The cache options, could be null
+	 * @return
+	 */
+	public static ClientRegistry create(Vertx vertx, Function<String, Single<JsonObject>> loader,
+			JsonObject options) {
+		ClientRegistry inst = new ClientRegistry(loader, options == null ? EMPTY_JSON_OBJECT : options);
+		inst.consumer = vertx.eventBus().<String>consumer(INVALIDATE_ADDRESS, msg -> inst.invalidateLocal(msg.body()));
+		return inst;
+	}
+
+	/**
+	 * Invalidate the cached client register on all nodes
+	 * 
+	 * @param vertx
+	 * @param clientId - The client_id, or null to invalidate all
+	 */
+	public static void invalidate(Vertx vertx, String clientId) {
+		vertx.eventBus().publish(INVALIDATE_ADDRESS, clientId == null ? INVALIDATE_ALL : clientId);
+	}
+
+	private ClientRegistry(Function<String, Single<JsonObject>> loader, JsonObject options) {
+		this.loader = loader;
+		this.maxSize = options.getInteger("max_size", 10000);
+		this.ttlMillis = options.getLong("ttl_seconds", 300L) * 1000;
+		this.refreshMillis = Math.min(options.getLong("refresh_seconds", 240L) * 1000, ttlMillis);
+		this.negativeTtlMillis = options.getLong("negative_ttl_seconds", 10L) * 1000;
+	}
+
+	/**
+	 * Retrieve the client register, the cached one is preferred
+	 * 
+	 * @param clientId
+	 * @return the client register, or an empty JSON if no such client
+	 */
+	public Single<JsonObject> get(String clientId) {
+		if (Strings.emptyAsNull(clientId) == null)
+			return Single.just(EMPTY_JSON_OBJECT);
+		long now = System.currentTimeMillis();
+		Entry entry = entries.get(clientId);
+		if (entry != null && now < entry.expiredAt) {
+			if (!entry.isNegative() && now >= entry.refreshAt)
+				refresh(clientId);
+			return Single.just(entry.register);
+		}
+		return load(clientId);
+	}
+
+	/**
+	 * Invalidate the cached client register on this node only
+	 * 
+	 * @param clientId - The client_id, or null to invalidate all
+	 */
+	public void invalidateLocal(String clientId) {
+		if (clientId == null || INVALIDATE_ALL.equals(clientId)) {
+			entries.clear();
+			logger.debug("Invalidate all cached client registers");
+		} else {
+			entries.remove(clientId);
+			logger.debug("Invalidate cached client register: {}", clientId);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void close() {
+		if (consumer != null)
+			consumer.unregister();
+		entries.clear();
+		loading.clear();
+	}
+
+	private void refresh(String clientId) {
+		if (loading.containsKey(clientId))
+			return;
+		logger.debug("Refresh ahead the client register: {}", clientId);
+		load(clientId).subscribe(r -> {
+		}, e -> logger.warn("Refresh client register {} failed, keep the cached one, {}", clientId, e.getMessage()));
+	}
+
+	private Single<JsonObject> load(String clientId) {
+		return loading.computeIfAbsent(clientId, key -> loader.apply(key).map(register -> {
+			store(key, register == null ? EMPTY_JSON_OBJECT : register);
+			return register == null ? EMPTY_JSON_OBJECT : register;
+		}).doFinally(() -> loading.remove(key)).cache());
+	}
+
+	private void store(String clientId, JsonObject register) {
+		long now = System.currentTimeMillis();
+		Entry entry = register.isEmpty() ? new Entry(register, now, negativeTtlMillis, negativeTtlMillis)
+				: new Entry(register, now, ttlMillis, refreshMillis);
+		if (entries.size() >= maxSize && !entries.containsKey(clientId))
+			evict(now);
+		entries.put(clientId, entry);
+	}
+
+	private void evict(long now) {
+		String eldestKey = null;
+		long eldestLoadedAt = Long.MAX_VALUE;
+		int sampled = 0;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext() && sampled < 16) {
+			Map.Entry<String, Entry> e = it.next();
+			if (now >= e.getValue().expiredAt) {
+				it.remove();
+				return;
+			}
+			if (e.getValue().loadedAt < eldestLoadedAt) {
+				eldestLoadedAt = e.getValue().loadedAt;
+				eldestKey = e.getKey();
+			}
+			sampled++;
+		}
+		if (eldestKey != null)
+			entries.remove(eldestKey);
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.roxa.fn.Tuple2;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The adaptive concurrency limiter of HTTP server, with the priority classes of
+ * routes.
+ * </p>
+ * The limit follows the gradient of latency, that is the ratio of long term
+ * latency to the short term one. The limit shrinks as soon as the latency goes
+ * up, and grows by the square root of itself while the latency is steady and
+ * at least half of the limit is in use. Each priority class is admitted up to
+ * its share of the limit, the rest are rejected by 503 with Retry-After at
+ * once, and the CRITICAL routes such as health checks are never rejected. The
+ * latencies are summed into a window without locking, and the limit is updated
+ * by the average of each window of window_size requests. The failures of status
+ * 5xx, including the ones replied with 200 and the sc 5xx in the body, are not
+ * sampled. The options are:
+ * 
+ * <pre>
+ * {
+ *   "initial_limit": 100,
+ *   "min_limit": 10,
+ *   "max_limit": 1000,
+ *   "tolerance": 2.0,
+ *   "smoothing": 0.2,
+ *   "window_size": 16,
+ *   "retry_after_seconds": 1,
+ *   "shares": { "high": 1.0, "normal": 0.9, "low": 0.5 },
+ *   "routes": { "/api/reports": "low" }
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class ConcurrencyLimiter implements Handler<RoutingContext> {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+	private static final String ADMITTED = "roxa.concurrency_limiter.admitted";
+
+	public enum Priority {
+		CRITICAL, HIGH, NORMAL, LOW
+	}
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder[] rejected = new LongAdder[Priority.values().length];
+	private final double[] shares = new double[Priority.values().length];
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final double smoothing;
+	private final int windowSize;
+	private final LongAdder windowNanos = new LongAdder();
+	private final AtomicInteger windowSamples = new AtomicInteger();
+	private final AtomicBoolean updating = new AtomicBoolean();
+	private final String retryAfter;
+	private volatile List<Tuple2<String, Priority>> priorities = Collections.emptyList();
+	private volatile double limit;
+	private double shortRttNanos;
+	private double longRttNanos;
+
+	public static ConcurrencyLimiter create(RequestTracker tracker, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		ConcurrencyLimiter inst = new ConcurrencyLimiter(_options);
+		JsonObject routes = _options.getJsonObject("routes", new JsonObject());
+		routes.fieldNames().forEach(path -> inst.priority(path,
+				Priority.valueOf(routes.getString(path, Priority.NORMAL.name()).toUpperCase())));
+		tracker.onEnd(inst::release).onDetach(inst::release);
+		return inst;
+	}
+
+	private ConcurrencyLimiter(JsonObject options) {
+		this.minLimit = options.getInteger("min_limit", 10);
+		this.maxLimit = options.getInteger("max_limit", 1000);
+		this.limit = options.getInteger("initial_limit", 100);
+		this.tolerance = options.getDouble("tolerance", 2.0);
+		this.smoothing = options.getDouble("smoothing", 0.2);
+		this.windowSize = Math.max(1, options.getInteger("window_size", 16));
+		this.retryAfter = String.valueOf(options.getLong("retry_after_seconds", 1L));
+		JsonObject _shares = options.getJsonObject("shares", new JsonObject());
+		shares[Priority.CRITICAL.ordinal()] = Double.MAX_VALUE;
+		shares[Priority.HIGH.ordinal()] = _shares.getDouble("high", 1.0);
+		shares[Priority.NORMAL.ordinal()] = _shares.getDouble("normal", 0.9);
+		shares[Priority.LOW.ordinal()] = _shares.getDouble("low", 0.5);
+		for (int i = 0; i < rejected.length; i++)
+			rejected[i] = new LongAdder();
+	}
+
+	/**
+	 * Set the priority of requests of which path starts with the prefix, the
+	 * longest matched prefix wins, the others are NORMAL
+	 * 
+	 * @param pathPrefix
+	 * @param priority
+	 * @return
+	 */
+	public synchronized ConcurrencyLimiter priority(String pathPrefix, Priority priority) {
+		List<Tuple2<String, Priority>> _priorities = new ArrayList<>(priorities);
+		_priorities.removeIf(t -> t.$0().equals(pathPrefix));
+		_priorities.add(new Tuple2<>(pathPrefix, priority));
+		_priorities.sort((a, b) -> b.$0().length() - a.$0().length());
+		priorities = _priorities;
+		return this;
+	}
+
+	@Override
+	public void handle(RoutingContext rc) {
+		Priority priority = resolve(rc.request().path());
+		// the batch request holds a slot while its sub-requests run
+		if (priority == Priority.CRITICAL || BatchHandler.isSubRequest(rc)) {
+			rc.next();
+			return;
+		}
+		int current = inFlight.incrementAndGet();
+		if (current > limit * shares[priority.ordinal()]) {
+			inFlight.decrementAndGet();
+			rejected[priority.ordinal()].increment();
+			logger.debug("Shed {} request {}, in flight: {}, limit: {}", priority, rc.request().path(), current,
+					(int) limit);
+			rc.response().setStatusCode(503).putHeader("Retry-After", retryAfter)
+					.putHeader("Content-Type", AbstractHttpVerticle.MEDIA_TYPE_APPLICATION_JSON)
+					.end(AbstractHttpVerticle.buildResponse(503, "Service Unavailable").encode());
+			return;
+		}
+		rc.put(ADMITTED, Boolean.TRUE);
+		rc.next();
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getRejected(Priority priority) {
+		return rejected[priority.ordinal()].sum();
+	}
+
+	private void release(RoutingContext rc) {
+		if (rc.get(ADMITTED) == null)
+			return;
+		rc.remove(ADMITTED);
+		inFlight.decrementAndGet();
+		if (!RequestTracker.isDetached(rc) && statusCodeOf(rc) < 500)
+			sample(RequestTracker.elapsedNanos(rc));
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return the sc of failure if replied in the body, or the status code of
+	 *         response
+	 */
+	private static int statusCodeOf(RoutingContext rc) {
+		Tuple2<String, Integer> intent = rc.get("failure.intent");
+		if (intent != null && intent.$1() != null)
+			return intent.$1();
+		return rc.response().getStatusCode();
+	}
+
+	private void sample(long rttNanos) {
+		windowNanos.add(rttNanos);
+		if (windowSamples.incrementAndGet() < windowSize || !updating.compareAndSet(false, true))
+			return;
+		try {
+			int samples = windowSamples.getAndSet(0);
+			long sumNanos = windowNanos.sumThenReset();
+			if (samples > 0)
+				update((double) sumNanos / samples);
+		} finally {
+			updating.set(false);
+		}
+	}
+
+	/**
+	 * Only one thread updates at a time, guarded by the updating flag
+	 * 
+	 * @param rttNanos - The average latency of window
+	 */
+	private void update(double rttNanos) {
+		if (longRttNanos == 0) {
+			shortRttNanos = longRttNanos = rttNanos;
+			return;
+		}
+		shortRttNanos = shortRttNanos * 0.9 + rttNanos * 0.1;
+		longRttNanos = longRttNanos * 0.99 + rttNanos * 0.01;
+		if (longRttNanos > shortRttNanos * 2)
+			longRttNanos = longRttNanos * 0.95 + shortRttNanos * 0.05;
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+		if (gradient >= 1.0 && inFlight.get() < limit / 2)
+			return;
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+	}
+
+	private Priority resolve(String path) {
+		if (path != null)
+			for (Tuple2<String, Priority> t : priorities)
+				if (path.startsWith(t.$0()))
+					return t.$1();
+		return Priority.NORMAL;
+	}
+}
@@ -0,0 +1,426 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.GeneralFailureException;
+import io.roxa.StatusCodifiedException;
+import io.vertx.core.VertxException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.ext.web.client.WebClient;
+import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.Status;
+import io.vertx.servicediscovery.types.HttpEndpoint;
+
+/**
+ * <p>
+ * The cache of HTTP endpoints discovered by name, with the client side load
+ * balancing.
+ * </p>
+ * The records of a name are looked up once, and kept up to date by the
+ * announcements of service discovery, each record with its own pooled
+ * WebClient. The calls are spread by the {@link LoadBalancer}, and the instance
+ * is ejected for a while after the consecutive failures of connection, timeout
+ * or 5xx. If all of the instances are ejected, they are used anyway. The
+ * instance moved or removed is out of service at once, and its client is
+ * closed once its calls in flight finish. The options are:
+ * 
+ * <pre>
+ * {
+ *   "policy": "power_of_two",
+ *   "max_failures": 5,
+ *   "ejection_seconds": 30,
+ *   "announce_address": "vertx.discovery.announce",
+ *   "client": { "max_pool_size": 32, "keep_alive": true }
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class EndpointDirectory {
+
+	private static final Logger logger = LoggerFactory.getLogger(EndpointDirectory.class);
+
+	/**
+	 * The instance of endpoint
+	 */
+	public interface Instance {
+
+		Record getRecord();
+
+		WebClient getClient();
+
+		int getInFlight();
+
+		/**
+		 * 
+		 * @return the moving average of latency in nanoseconds, 0 if never called
+		 */
+		double getLatencyNanos();
+	}
+
+	/**
+	 * The policy to choose one of the healthy instances
+	 */
+	@FunctionalInterface
+	public interface LoadBalancer {
+
+		Instance choose(List<? extends Instance> instances);
+
+		static LoadBalancer roundRobin() {
+			AtomicInteger next = new AtomicInteger();
+			return instances -> instances.get(Math.floorMod(next.getAndIncrement(), instances.size()));
+		}
+
+		/**
+		 * Choose the one with less calls in flight of two random instances
+		 * 
+		 * @return
+		 */
+		static LoadBalancer powerOfTwoChoices() {
+			return instances -> {
+				int size = instances.size();
+				if (size == 1)
+					return instances.get(0);
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int i = random.nextInt(size);
+				int j = random.nextInt(size - 1);
+				if (j >= i)
+					j++;
+				Instance a = instances.get(i);
+				Instance b = instances.get(j);
+				return a.getInFlight() <= b.getInFlight() ? a : b;
+			};
+		}
+
+		/**
+		 * Choose randomly by the weight of inverse latency times the calls in
+		 * flight, the instances never called are weighted as the fastest one
+		 * 
+		 * @return
+		 */
+		static LoadBalancer latencyWeighted() {
+			return instances -> {
+				int size = instances.size();
+				if (size == 1)
+					return instances.get(0);
+				double fastest = Double.MAX_VALUE;
+				for (Instance instance : instances)
+					if (instance.getLatencyNanos() > 0 && instance.getLatencyNanos() < fastest)
+						fastest = instance.getLatencyNanos();
+				if (fastest == Double.MAX_VALUE)
+					fastest = 1;
+				double[] weights = new double[size];
+				double total = 0;
+				for (int i = 0; i < size; i++) {
+					Instance instance = instances.get(i);
+					double latency = instance.getLatencyNanos() > 0 ? instance.getLatencyNanos() : fastest;
+					weights[i] = 1.0 / (latency * (instance.getInFlight() + 1));
+					total += weights[i];
+				}
+				double r = ThreadLocalRandom.current().nextDouble(total);
+				for (int i = 0; i < size; i++) {
+					r -= weights[i];
+					if (r < 0)
+						return instances.get(i);
+				}
+				return instances.get(size - 1);
+			};
+		}
+	}
+
+	private class Endpoint implements Instance {
+		final Record record;
+		final WebClient client;
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicBoolean closed = new AtomicBoolean();
+		volatile boolean retired;
+		int consecutiveFailures;
+		long ejectedUntil;
+		double latencyNanos;
+
+		Endpoint(Record record) {
+			this.record = record;
+			JsonObject location = record.getLocation();
+			this.client = WebClient.create(vertx,
+					HttpEndpoints.pooledOptions(clientOptions).setDefaultHost(location.getString("host"))
+							.setDefaultPort(location.getInteger("port", 80))
+							.setSsl(location.getBoolean("ssl", false)));
+		}
+
+		@Override
+		public Record getRecord() {
+			return record;
+		}
+
+		@Override
+		public WebClient getClient() {
+			return client;
+		}
+
+		@Override
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		@Override
+		public synchronized double getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		synchronized boolean isEjected(long now) {
+			return ejectedUntil - now > 0;
+		}
+
+		synchronized void succeeded(long elapsedNanos) {
+			consecutiveFailures = 0;
+			latencyNanos = latencyNanos == 0 ? elapsedNanos : latencyNanos * 0.8 + elapsedNanos * 0.2;
+		}
+
+		synchronized void failed(long elapsedNanos) {
+			latencyNanos = latencyNanos == 0 ? elapsedNanos : latencyNanos * 0.8 + elapsedNanos * 0.2;
+			if (++consecutiveFailures < maxFailures)
+				return;
+			consecutiveFailures = 0;
+			ejectedUntil = System.nanoTime() + ejectionNanos;
+			ejections.increment();
+			logger.warn("Eject the instance {} of {} for {} seconds", record.getRegistration(), record.getName(),
+					ejectionNanos / 1000000000L);
+		}
+
+		/**
+		 * Take the instance out of service, its client is closed once the calls in
+		 * flight finish
+		 */
+		void retire() {
+			retired = true;
+			if (inFlight.get() == 0)
+				close();
+		}
+
+		void called() {
+			if (inFlight.decrementAndGet() == 0 && retired)
+				close();
+		}
+
+		void close() {
+			if (closed.compareAndSet(false, true))
+				client.close();
+		}
+	}
+
+	private class Service {
+		final String name;
+		final Single<Service> loading;
+		volatile List<Endpoint> endpoints = Collections.emptyList();
+
+		Service(String name) {
+			this.name = name;
+			this.loading = discovery
+					.rxGetRecords(r -> name.equals(r.getName()) && HttpEndpoint.TYPE.equals(r.getType()))
+					.map(records -> {
+						records.forEach(this::add);
+						return this;
+					}).doOnError(e -> services.remove(name, this)).cache();
+		}
+
+		synchronized void add(Record record) {
+			List<Endpoint> _endpoints = new ArrayList<>(endpoints);
+			for (Endpoint endpoint : endpoints)
+				if (endpoint.record.getRegistration().equals(record.getRegistration())) {
+					if (endpoint.record.getLocation().equals(record.getLocation()))
+						return;
+					// the instance moved, replace it with the client of new location
+					_endpoints.remove(endpoint);
+					endpoint.retire();
+					logger.info("Move the instance {} of {} to {}", record.getRegistration(), name,
+							record.getLocation().encode());
+				}
+			_endpoints.add(new Endpoint(record));
+			endpoints = _endpoints;
+			logger.info("Add the instance {} of {}, instances: {}", record.getRegistration(), name, _endpoints.size());
+		}
+
+		synchronized void remove(String registration) {
+			List<Endpoint> _endpoints = new ArrayList<>(endpoints);
+			for (Endpoint endpoint : endpoints)
+				if (endpoint.record.getRegistration().equals(registration)) {
+					_endpoints.remove(endpoint);
+					endpoint.retire();
+				}
+			if (_endpoints.size() != endpoints.size())
+				logger.info("Remove the instance {} of {}, instances: {}", registration, name, _endpoints.size());
+			endpoints = _endpoints;
+		}
+	}
+
+	private final Vertx vertx;
+	private final ServiceDiscovery discovery;
+	private final LoadBalancer loadBalancer;
+	private final int maxFailures;
+	private final long ejectionNanos;
+	private final JsonObject clientOptions;
+	private final Map<String, Service> services = new ConcurrentHashMap<>();
+	private final LongAdder ejections = new LongAdder();
+	private MessageConsumer<JsonObject> consumer;
+
+	public static EndpointDirectory create(Vertx vertx, ServiceDiscovery discovery, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		return create(vertx, discovery, _options, policyOf(_options.getString("policy", "power_of_two")));
+	}
+
+	/**
+	 * 
+	 * @param vertx
+	 * @param discovery
+	 * @param options
+	 * @param loadBalancer - The custom policy of load balancing
+	 * @return
+	 */
+	public static EndpointDirectory create(Vertx vertx, ServiceDiscovery discovery, JsonObject options,
+			LoadBalancer loadBalancer) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		EndpointDirectory inst = new EndpointDirectory(vertx, discovery, _options, loadBalancer);
+		inst.consumer = vertx.eventBus().consumer(
+				_options.getString("announce_address", ServiceDiscoveryOptions.DEFAULT_ANNOUNCE_ADDRESS),
+				msg -> inst.announced(new Record(msg.body())));
+		return inst;
+	}
+
+	private EndpointDirectory(Vertx vertx, ServiceDiscovery discovery, JsonObject options,
+			LoadBalancer loadBalancer) {
+		this.vertx = vertx;
+		this.discovery = discovery;
+		this.loadBalancer = loadBalancer;
+		this.maxFailures = Math.max(1, options.getInteger("max_failures", 5));
+		this.ejectionNanos = options.getLong("ejection_seconds", 30L) * 1000000000L;
+		this.clientOptions = options.getJsonObject("client", new JsonObject());
+	}
+
+	/**
+	 * Call one of the instances of name, and account the result to the instance
+	 * 
+	 * @param name - The name of HTTP endpoint
+	 * @param call - The call to the client of chosen instance
+	 * @return
+	 */
+	public <T> Single<T> execute(String name, Function<WebClient, Single<T>> call) {
+		return serviceOf(name).flatMap(service -> {
+			Endpoint endpoint = choose(service);
+			if (endpoint == null)
+				return Single.error(new GeneralFailureException(String.format("No http endpoint of %s found!", name)));
+			endpoint.inFlight.incrementAndGet();
+			long start = System.nanoTime();
+			return Single.defer(() -> call.apply(endpoint.client)).doOnSuccess(r -> endpoint.succeeded(elapsed(start)))
+					.doOnError(e -> {
+						if (isInstanceFailure(e))
+							endpoint.failed(elapsed(start));
+						else
+							endpoint.succeeded(elapsed(start));
+					}).doFinally(endpoint::called);
+		});
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @return the instances of name known so far
+	 */
+	public List<Instance> getInstances(String name) {
+		Service service = services.get(name);
+		if (service == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(service.endpoints);
+	}
+
+	public long getEjections() {
+		return ejections.sum();
+	}
+
+	public void close() {
+		if (consumer != null)
+			consumer.unregister();
+		services.values().forEach(service -> service.endpoints.forEach(Endpoint::close));
+		services.clear();
+	}
+
+	private Single<Service> serviceOf(String name) {
+		return services.computeIfAbsent(name, Service::new).loading;
+	}
+
+	private Endpoint choose(Service service) {
+		List<Endpoint> endpoints = service.endpoints;
+		if (endpoints.isEmpty())
+			return null;
+		long now = System.nanoTime();
+		List<Endpoint> healthy = new ArrayList<>(endpoints.size());
+		for (Endpoint endpoint : endpoints)
+			if (!endpoint.isEjected(now))
+				healthy.add(endpoint);
+		return (Endpoint) loadBalancer.choose(healthy.isEmpty() ? endpoints : healthy);
+	}
+
+	private void announced(Record record) {
+		Service service = services.get(record.getName());
+		if (service == null || !HttpEndpoint.TYPE.equals(record.getType()))
+			return;
+		// apply after the records loaded, so the announcement is not overwritten
+		service.loading.subscribe(s -> {
+			if (record.getStatus() == Status.UP)
+				service.add(record);
+			else
+				service.remove(record.getRegistration());
+		}, e -> logger.debug("The endpoints of {} were not discovered", record.getName()));
+	}
+
+	private static long elapsed(long start) {
+		return System.nanoTime() - start;
+	}
+
+	private static boolean isInstanceFailure(Throwable e) {
+		if (e instanceof ConnectException || e instanceof TimeoutException || e instanceof VertxException)
+			return true;
+		// the failure of HttpEndpoints.SC_SUCCESS
+		return e instanceof StatusCodifiedException && ((StatusCodifiedException) e).getStatusCode() >= 500;
+	}
+
+	private static LoadBalancer policyOf(String policy) {
+		switch (policy) {
+		case "round_robin":
+			return LoadBalancer.roundRobin();
+		case "latency_weighted":
+			return LoadBalancer.latencyWeighted();
+		default:
+			return LoadBalancer.powerOfTwoChoices();
+		}
+	}
+}
@@ -0,0 +1,492 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.vertx.rx.EventActionDispatcher;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.MultiMap;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.core.http.HttpServerResponse;
+import io.vertx.reactivex.core.http.ServerWebSocket;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The bridge that streams the messages of event bus addresses to the clients
+ * by Server-Sent Events or WebSocket.
+ * </p>
+ * Each exposed address is consumed once however many clients subscribe it, and
+ * each message is encoded once for all of them. The subscription is filtered by
+ * the query parameters of request, the "action" parameter matches the action
+ * header of {@link io.roxa.vertx.rx.EventActionDispatcherHelper#publish}, and
+ * the parameters prefixed by "filter." match the fields of message body, such
+ * as "?action=created&filter.status=paid", the other parameters are ignored.
+ * The request could be authorized before subscribing. The send queue of each client
+ * is bounded, once it's full the messages are dropped, or conflated to the
+ * latest one of each action. The bridge belongs to one verticle instance, so
+ * its subscriptions are confined to the event loop of that instance. The streams
+ * are detached from the {@link RequestTracker}, so they are neither in flight
+ * nor holding the slots of {@link ConcurrencyLimiter}, nor recorded by
+ * {@link HttpMetrics}, the subscribers are measured by the bridge itself. The
+ * options are:
+ * 
+ * <pre>
+ * {
+ *   "overflow": "drop",
+ *   "write_queue_max_size": 65536,
+ *   "max_conflated": 16,
+ *   "heartbeat_seconds": 15
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class EventStreamBridge {
+
+	private static final Logger logger = LoggerFactory.getLogger(EventStreamBridge.class);
+
+	private static final Buffer HEARTBEAT = Buffer.buffer(":\n\n");
+
+	private static final String FILTER_PREFIX = "filter.";
+
+	private final Vertx vertx;
+	private final boolean conflating;
+	private final int writeQueueMaxSize;
+	private final int maxConflated;
+	private final Map<String, Topic> topics = new HashMap<>();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder conflated = new LongAdder();
+	private long heartbeatTimer = -1;
+	private int subscriberCount;
+
+	private class Topic {
+		final String address;
+		final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+		final MessageConsumer<Object> consumer;
+
+		Topic(String address) {
+			this.address = address;
+			this.consumer = vertx.eventBus().consumer(address, this::dispatch);
+		}
+
+		void dispatch(Message<Object> msg) {
+			Event event = new Event(msg);
+			for (Subscriber subscriber : subscribers)
+				if (subscriber.filter.test(event))
+					subscriber.offer(event);
+		}
+	}
+
+	private static class Event {
+		final String action;
+		final Object body;
+		final String data;
+		Buffer sseFrame;
+		String wsFrame;
+
+		Event(Message<Object> msg) {
+			this.action = msg.headers().get(EventActionDispatcher.EVENT_HEADER_ACTION);
+			this.body = msg.body();
+			if (body == null)
+				this.data = "{}";
+			else if (body instanceof JsonObject)
+				this.data = ((JsonObject) body).encode();
+			else
+				this.data = String.valueOf(body);
+		}
+
+		Buffer sseFrame() {
+			if (sseFrame == null) {
+				StringBuilder frame = new StringBuilder(data.length() + 32);
+				if (action != null)
+					frame.append("event: ").append(action).append('\n');
+				for (String line : data.split("\n", -1))
+					frame.append("data: ").append(line).append('\n');
+				sseFrame = Buffer.buffer(frame.append('\n').toString());
+			}
+			return sseFrame;
+		}
+
+		String wsFrame() {
+			if (wsFrame == null) {
+				JsonObject frame = new JsonObject().put("event", action);
+				frame.put("data", body instanceof JsonObject ? body : data);
+				wsFrame = frame.encode();
+			}
+			return wsFrame;
+		}
+	}
+
+	private abstract class Subscriber {
+		final Topic topic;
+		final Predicate<Event> filter;
+		Map<String, Event> pending;
+		boolean closed;
+
+		Subscriber(Topic topic, Predicate<Event> filter) {
+			this.topic = topic;
+			this.filter = filter;
+		}
+
+		void offer(Event event) {
+			if (closed)
+				return;
+			if (!writeQueueFull() && pending == null) {
+				send(event);
+				return;
+			}
+			if (!conflating) {
+				dropped.increment();
+				return;
+			}
+			String key = event.action == null ? "" : event.action;
+			if (pending == null) {
+				pending = new LinkedHashMap<>();
+				drainHandler(v -> flush());
+			}
+			if (pending.remove(key) != null) {
+				conflated.increment();
+			} else if (pending.size() >= maxConflated) {
+				Iterator<String> eldest = pending.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+				dropped.increment();
+			}
+			pending.put(key, event);
+		}
+
+		void flush() {
+			if (closed || pending == null)
+				return;
+			Iterator<Event> it = pending.values().iterator();
+			while (it.hasNext() && !writeQueueFull()) {
+				send(it.next());
+				it.remove();
+			}
+			if (pending.isEmpty())
+				pending = null;
+		}
+
+		void send(Event event) {
+			try {
+				write(event);
+				delivered.increment();
+			} catch (IllegalStateException e) {
+				logger.debug("Could not stream event to closed client of {}", topic.address);
+				unsubscribe(this);
+			}
+		}
+
+		abstract boolean writeQueueFull();
+
+		abstract void drainHandler(Handler<Void> handler);
+
+		abstract void write(Event event);
+
+		abstract void heartbeat();
+
+		abstract void end();
+	}
+
+	private class SseSubscriber extends Subscriber {
+		final HttpServerResponse response;
+
+		SseSubscriber(Topic topic, Predicate<Event> filter, HttpServerResponse response) {
+			super(topic, filter);
+			this.response = response;
+		}
+
+		@Override
+		boolean writeQueueFull() {
+			return response.writeQueueFull();
+		}
+
+		@Override
+		void drainHandler(Handler<Void> handler) {
+			response.drainHandler(handler);
+		}
+
+		@Override
+		void write(Event event) {
+			response.write(event.sseFrame());
+		}
+
+		@Override
+		void heartbeat() {
+			if (!response.writeQueueFull())
+				response.write(HEARTBEAT);
+		}
+
+		@Override
+		void end() {
+			if (!response.ended() && !response.closed())
+				response.end();
+		}
+	}
+
+	private class WebSocketSubscriber extends Subscriber {
+		final ServerWebSocket ws;
+
+		WebSocketSubscriber(Topic topic, Predicate<Event> filter, ServerWebSocket ws) {
+			super(topic, filter);
+			this.ws = ws;
+		}
+
+		@Override
+		boolean writeQueueFull() {
+			return ws.writeQueueFull();
+		}
+
+		@Override
+		void drainHandler(Handler<Void> handler) {
+			ws.drainHandler(handler);
+		}
+
+		@Override
+		void write(Event event) {
+			ws.writeTextMessage(event.wsFrame());
+		}
+
+		@Override
+		void heartbeat() {
+			if (!ws.writeQueueFull())
+				ws.writePing(Buffer.buffer());
+		}
+
+		@Override
+		void end() {
+			try {
+				ws.close();
+			} catch (IllegalStateException e) {
+				logger.debug("The WebSocket of {} has been closed", topic.address);
+			}
+		}
+	}
+
+	public static EventStreamBridge create(Vertx vertx, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		EventStreamBridge inst = new EventStreamBridge(vertx, _options);
+		long heartbeatMillis = _options.getLong("heartbeat_seconds", 15L) * 1000;
+		if (heartbeatMillis > 0)
+			inst.heartbeatTimer = vertx.setPeriodic(heartbeatMillis, id -> inst.heartbeat());
+		return inst;
+	}
+
+	private EventStreamBridge(Vertx vertx, JsonObject options) {
+		this.vertx = vertx;
+		this.conflating = "conflate".equals(options.getString("overflow", "drop"));
+		this.writeQueueMaxSize = options.getInteger("write_queue_max_size", 64 * 1024);
+		this.maxConflated = Math.max(1, options.getInteger("max_conflated", 16));
+	}
+
+	/**
+	 * The route handler that streams the messages of address by Server-Sent
+	 * Events
+	 * 
+	 * @param address - The exposed address of event bus
+	 * @return
+	 */
+	public Handler<RoutingContext> sse(String address) {
+		return sse(address, null, null);
+	}
+
+	/**
+	 * The route handler that streams the messages of address by Server-Sent Events
+	 * to the authorized requests
+	 * 
+	 * @param address    - The exposed address of event bus
+	 * @param authorizer - Authorize the request before subscribing, could be null
+	 * @param failed     - Reply the failure of authorization
+	 * @return
+	 */
+	public Handler<RoutingContext> sse(String address, Function<RoutingContext, Single<?>> authorizer,
+			BiConsumer<RoutingContext, Throwable> failed) {
+		return authorized(authorizer, failed, rc -> {
+			RequestTracker.detach(rc);
+			HttpServerResponse response = rc.response();
+			response.setChunked(true).setWriteQueueMaxSize(writeQueueMaxSize)
+					.putHeader("Content-Type", "text/event-stream;charset=UTF-8").putHeader("Cache-Control", "no-cache")
+					.putHeader("X-Accel-Buffering", "no");
+			Topic topic = topicOf(address);
+			Subscriber subscriber = new SseSubscriber(topic, filterOf(rc.queryParams()), response);
+			response.closeHandler(v -> unsubscribe(subscriber));
+			response.write(HEARTBEAT);
+			subscribe(subscriber);
+		});
+	}
+
+	/**
+	 * The route handler that upgrades the request to WebSocket and streams the
+	 * messages of address as text frames, such as {"event": action, "data": body}
+	 * 
+	 * @param address - The exposed address of event bus
+	 * @return
+	 */
+	public Handler<RoutingContext> webSocket(String address) {
+		return webSocket(address, null, null);
+	}
+
+	/**
+	 * The route handler that upgrades the authorized request to WebSocket and
+	 * streams the messages of address as text frames
+	 * 
+	 * @param address    - The exposed address of event bus
+	 * @param authorizer - Authorize the request before upgrading, could be null
+	 * @param failed     - Reply the failure of authorization
+	 * @return
+	 */
+	public Handler<RoutingContext> webSocket(String address, Function<RoutingContext, Single<?>> authorizer,
+			BiConsumer<RoutingContext, Throwable> failed) {
+		return authorized(authorizer, failed, rc -> {
+			RequestTracker.detach(rc);
+			Predicate<Event> filter = filterOf(rc.queryParams());
+			ServerWebSocket ws = rc.request().upgrade();
+			ws.setWriteQueueMaxSize(writeQueueMaxSize);
+			Subscriber subscriber = new WebSocketSubscriber(topicOf(address), filter, ws);
+			ws.closeHandler(v -> unsubscribe(subscriber));
+			ws.exceptionHandler(e -> unsubscribe(subscriber));
+			subscribe(subscriber);
+		});
+	}
+
+	public int getSubscribers() {
+		return subscriberCount;
+	}
+
+	public long getDelivered() {
+		return delivered.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public long getConflated() {
+		return conflated.sum();
+	}
+
+	/**
+	 * End all of the streams, the clients of Server-Sent Events will reconnect by
+	 * themselves
+	 */
+	public void close() {
+		if (heartbeatTimer != -1) {
+			vertx.cancelTimer(heartbeatTimer);
+			heartbeatTimer = -1;
+		}
+		List<Topic> _topics = new ArrayList<>(topics.values());
+		for (Topic topic : _topics)
+			for (Subscriber subscriber : topic.subscribers) {
+				unsubscribe(subscriber);
+				subscriber.end();
+			}
+	}
+
+	private Topic topicOf(String address) {
+		Topic topic = topics.get(address);
+		if (topic == null) {
+			topic = new Topic(address);
+			topics.put(address, topic);
+			logger.debug("Bridge the address {} to event streams", address);
+		}
+		return topic;
+	}
+
+	private void subscribe(Subscriber subscriber) {
+		if (subscriber.topic.subscribers.add(subscriber))
+			subscriberCount++;
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		subscriber.closed = true;
+		subscriber.pending = null;
+		Topic topic = subscriber.topic;
+		if (!topic.subscribers.remove(subscriber))
+			return;
+		subscriberCount--;
+		if (topic.subscribers.isEmpty() && topics.remove(topic.address, topic)) {
+			topic.consumer.unregister();
+			logger.debug("Unbridge the address {} from event streams", topic.address);
+		}
+	}
+
+	private void heartbeat() {
+		for (Topic topic : new ArrayList<>(topics.values()))
+			for (Subscriber subscriber : topic.subscribers) {
+				try {
+					subscriber.heartbeat();
+				} catch (IllegalStateException e) {
+					unsubscribe(subscriber);
+				}
+			}
+	}
+
+	private static Handler<RoutingContext> authorized(Function<RoutingContext, Single<?>> authorizer,
+			BiConsumer<RoutingContext, Throwable> failed, Handler<RoutingContext> handler) {
+		if (authorizer == null)
+			return handler;
+		return rc -> authorizer.apply(rc).subscribe(a -> handler.handle(rc), e -> failed.accept(rc, e));
+	}
+
+	private static Predicate<Event> filterOf(MultiMap params) {
+		List<String> actions = new ArrayList<>();
+		Map<String, String> fields = new HashMap<>();
+		params.getDelegate().forEach(e -> {
+			if ("action".equals(e.getKey())) {
+				for (String action : e.getValue().split(","))
+					if (!action.trim().isEmpty())
+						actions.add(action.trim());
+			} else if (e.getKey().startsWith(FILTER_PREFIX) && e.getKey().length() > FILTER_PREFIX.length()) {
+				fields.put(e.getKey().substring(FILTER_PREFIX.length()), e.getValue());
+			}
+		});
+		if (actions.isEmpty() && fields.isEmpty())
+			return event -> true;
+		return event -> {
+			if (!actions.isEmpty() && !actions.contains(event.action))
+				return false;
+			if (fields.isEmpty())
+				return true;
+			if (!(event.body instanceof JsonObject))
+				return false;
+			JsonObject body = (JsonObject) event.body;
+			for (Map.Entry<String, String> field : fields.entrySet()) {
+				Object value = body.getValue(field.getKey());
+				if (value == null || !field.getValue().equals(String.valueOf(value)))
+					return false;
+			}
+			return true;
+		};
+	}
+}
@@ -0,0 +1,452 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.util.Codecs;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The in-memory cache of small hot static files, in front of StaticHandler.
+ * </p>
+ * The small files are held as Buffers with the precomputed ETags, the other
+ * requests, such as large files, range requests and the files not on the file
+ * system, fall through to StaticHandler, which sends the file by sendfile. The
+ * fingerprinted URL, such as /assets/app.1a2b3c4d5e.js, is served with the
+ * immutable caching headers while the fingerprint matches the content. The
+ * entries are invalidated by the file system events of WatchService rather
+ * than polling, the directory is watched before its file is read, and the file
+ * read while any file changes is served but not cached. The missing files are
+ * cached for a short time of miss_ttl_millis, as their directories may not
+ * exist to be watched. The options are:
+ * 
+ * <pre>
+ * {
+ *   "max_entries": 1000,
+ *   "max_file_size": 65536,
+ *   "max_bytes": 33554432,
+ *   "max_age_seconds": 86400,
+ *   "miss_ttl_millis": 5000
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class HotAssetCache implements Handler<RoutingContext> {
+
+	private static final Logger logger = LoggerFactory.getLogger(HotAssetCache.class);
+
+	private static final Pattern FINGERPRINTED = Pattern.compile("^(.+)\\.([0-9a-f]{10})(\\.[^./]+)$");
+
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	private static final Map<String, String> contentTypes = new HashMap<>();
+
+	static {
+		contentTypes.put("html", "text/html");
+		contentTypes.put("htm", "text/html");
+		contentTypes.put("css", "text/css");
+		contentTypes.put("js", "application/javascript");
+		contentTypes.put("mjs", "application/javascript");
+		contentTypes.put("json", "application/json");
+		contentTypes.put("map", "application/json");
+		contentTypes.put("txt", "text/plain");
+		contentTypes.put("xml", "application/xml");
+		contentTypes.put("svg", "image/svg+xml");
+		contentTypes.put("png", "image/png");
+		contentTypes.put("jpg", "image/jpeg");
+		contentTypes.put("jpeg", "image/jpeg");
+		contentTypes.put("gif", "image/gif");
+		contentTypes.put("webp", "image/webp");
+		contentTypes.put("ico", "image/x-icon");
+		contentTypes.put("woff", "font/woff");
+		contentTypes.put("woff2", "font/woff2");
+		contentTypes.put("ttf", "font/ttf");
+		contentTypes.put("wasm", "application/wasm");
+	}
+
+	private final Vertx vertx;
+	private final File webRoot;
+	private final String mountPath;
+	private final int maxEntries;
+	private final long maxFileSize;
+	private final long maxBytes;
+	private final String cacheControl;
+	private final long missTtlNanos;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong changes = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private WatchService watchService;
+	private Thread watcher;
+
+	private static class Entry {
+		final Buffer body;
+		final String etag;
+		final String fingerprint;
+		final String contentType;
+		final long expiresAt;
+		volatile long lastAccessed;
+
+		Entry(Buffer body, String etag, String fingerprint, String contentType) {
+			this(body, etag, fingerprint, contentType, 0);
+		}
+
+		/**
+		 * 
+		 * @param expiresAt - The nano time that the entry expires at, 0 if it never
+		 *                  expires but by the file system events
+		 */
+		Entry(Buffer body, String etag, String fingerprint, String contentType, long expiresAt) {
+			this.body = body;
+			this.etag = etag;
+			this.fingerprint = fingerprint;
+			this.contentType = contentType;
+			this.expiresAt = expiresAt;
+			this.lastAccessed = System.nanoTime();
+		}
+
+		boolean isPassThrough() {
+			return body == null;
+		}
+
+		boolean isExpired() {
+			return expiresAt != 0 && System.nanoTime() - expiresAt > 0;
+		}
+	}
+
+	/**
+	 * 
+	 * @param vertx     - The instance of Vertx
+	 * @param webRoot   - The web root of StaticHandler
+	 * @param mountPath - The absolute path that static files mounted on
+	 * @param options   - The options of cache, could be null
+	 * @return
+	 */
+	public static HotAssetCache create(Vertx vertx, String webRoot, String mountPath, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		HotAssetCache inst = new HotAssetCache(vertx, webRoot, mountPath, _options);
+		try {
+			inst.watchService = FileSystems.getDefault().newWatchService();
+			inst.watcher = new Thread(inst::watch, "roxa-hot-asset-watcher");
+			inst.watcher.setDaemon(true);
+			inst.watcher.start();
+		} catch (IOException e) {
+			logger.warn("Could not watch the static files, the hot asset cache is disabled", e);
+		}
+		return inst;
+	}
+
+	private HotAssetCache(Vertx vertx, String webRoot, String mountPath, JsonObject options) {
+		this.vertx = vertx;
+		this.webRoot = new File(webRoot).getAbsoluteFile();
+		this.mountPath = mountPath.endsWith("/") ? mountPath.substring(0, mountPath.length() - 1) : mountPath;
+		this.maxEntries = options.getInteger("max_entries", 1000);
+		this.maxFileSize = options.getLong("max_file_size", 64L * 1024);
+		this.maxBytes = options.getLong("max_bytes", 32L * 1024 * 1024);
+		this.cacheControl = "public, max-age=" + options.getLong("max_age_seconds", 86400L);
+		this.missTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, options.getLong("miss_ttl_millis", 5000L)));
+	}
+
+	@Override
+	public void handle(RoutingContext rc) {
+		String path = rc.normalisedPath();
+		HttpMethod method = rc.request().method();
+		if (watchService == null || method != HttpMethod.GET && method != HttpMethod.HEAD
+				|| rc.request().getHeader("Range") != null || !path.startsWith(mountPath + "/")
+				|| path.contains("/.")) {
+			rc.next();
+			return;
+		}
+		String requested = path.substring(mountPath.length() + 1);
+		Matcher m = FINGERPRINTED.matcher(requested);
+		boolean fingerprinted = m.matches();
+		String fingerprint = fingerprinted ? m.group(2) : null;
+		String relative = fingerprinted ? m.group(1) + m.group(3) : requested;
+		Entry entry = cached(relative);
+		if (entry != null) {
+			hits.increment();
+			entry.lastAccessed = System.nanoTime();
+			reply(rc, entry, fingerprint);
+			return;
+		}
+		misses.increment();
+		load(relative).subscribe(e -> reply(rc, e, fingerprint), e -> {
+			logger.debug("Could not cache the static file {}, {}", relative, e.getMessage());
+			rc.next();
+		});
+	}
+
+	/**
+	 * Resolve the fingerprinted URL of static file, the URL will be served with
+	 * the immutable caching headers
+	 * 
+	 * @param relative - The path relative to web root
+	 * @return the fingerprinted URL, or the plain URL if the file is not cacheable
+	 */
+	public Single<String> fingerprint(String relative) {
+		String plain = mountPath + "/" + relative;
+		return load(relative).map(e -> {
+			if (e.isPassThrough())
+				return plain;
+			int dot = relative.lastIndexOf('.');
+			if (dot <= relative.lastIndexOf('/'))
+				return plain;
+			return mountPath + "/" + relative.substring(0, dot) + "." + e.fingerprint + relative.substring(dot);
+		}).onErrorReturnItem(plain);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRatio() {
+		long _hits = hits.sum();
+		long total = _hits + misses.sum();
+		return total == 0 ? 0 : (double) _hits / total;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void close() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the watch service", e);
+			}
+		}
+		entries.clear();
+		bytes.set(0);
+	}
+
+	private void reply(RoutingContext rc, Entry entry, String fingerprint) {
+		if (entry.isPassThrough()) {
+			rc.next();
+			return;
+		}
+		if (fingerprint != null && !fingerprint.equals(entry.fingerprint)) {
+			// stale fingerprint, serve the current one without the immutable headers
+			rc.response().putHeader("Cache-Control", "no-cache");
+		} else {
+			rc.response().putHeader("Cache-Control", fingerprint != null ? IMMUTABLE : cacheControl);
+		}
+		rc.response().putHeader("ETag", entry.etag);
+		if (matches(rc.request().getHeader("If-None-Match"), entry.etag)) {
+			rc.response().setStatusCode(304).end();
+			return;
+		}
+		rc.response().putHeader("Content-Type", entry.contentType);
+		if ("HEAD".equals(rc.request().rawMethod())) {
+			rc.response().putHeader("Content-Length", String.valueOf(entry.body.length())).end();
+			return;
+		}
+		rc.response().end(entry.body);
+	}
+
+	/**
+	 * 
+	 * @param ifNoneMatch - The list of entity tags, or *
+	 * @param etag
+	 * @return true if any of the tags matches the etag by the weak comparison
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null)
+			return false;
+		for (String tag : ifNoneMatch.split(",")) {
+			String _tag = tag.trim();
+			if ("*".equals(_tag))
+				return true;
+			if (_tag.startsWith("W/"))
+				_tag = _tag.substring(2);
+			if (_tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+
+	private Entry cached(String relative) {
+		Entry entry = entries.get(relative);
+		if (entry == null || !entry.isExpired())
+			return entry;
+		if (entries.remove(relative, entry) && !entry.isPassThrough())
+			bytes.addAndGet(-entry.body.length());
+		return null;
+	}
+
+	private Single<Entry> load(String relative) {
+		Entry cached = cached(relative);
+		if (cached != null)
+			return Single.just(cached);
+		File file = new File(webRoot, relative);
+		String absolutePath = file.getPath();
+		boolean watched = watch(file.getParentFile().toPath());
+		long seen = changes.get();
+		return vertx.fileSystem().rxProps(absolutePath).flatMap(props -> {
+			if (!props.isRegularFile() || props.size() > maxFileSize)
+				return Single.just(new Entry(null, null, null, null));
+			return vertx.fileSystem().rxReadFile(absolutePath).map(body -> {
+				String hash = Codecs.asHexString(sha256(body));
+				return new Entry(body, "\"" + hash.substring(0, 32) + "\"", hash.substring(0, 10),
+						contentTypeOf(relative));
+			});
+		}).onErrorReturn(e -> {
+			logger.debug("Could not read the static file {}, {}", relative, e.getMessage());
+			return new Entry(null, null, null, null, System.nanoTime() + missTtlNanos);
+		}).doOnSuccess(e -> {
+			// the file may have changed while it was read, cache it next time
+			if (e.expiresAt != 0 || watched && changes.get() == seen)
+				store(relative, e);
+		});
+	}
+
+	/**
+	 * Watch the directory before its files are read, so no change is missed
+	 * 
+	 * @param dir
+	 * @return true if the directory is watched
+	 */
+	private boolean watch(Path dir) {
+		if (watchedDirs.contains(dir))
+			return true;
+		if (!Files.isDirectory(dir))
+			return false;
+		try {
+			dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			watchedDirs.add(dir);
+			return true;
+		} catch (IOException | ClosedWatchServiceException e) {
+			logger.debug("Could not watch the directory {}, do not cache its files", dir);
+			return false;
+		}
+	}
+
+	private void store(String relative, Entry entry) {
+		long size = entry.isPassThrough() ? 0 : entry.body.length();
+		while (!entries.isEmpty() && (entries.size() >= maxEntries || bytes.get() + size > maxBytes))
+			evict();
+		Entry replaced = entries.put(relative, entry);
+		bytes.addAndGet(size - (replaced == null || replaced.isPassThrough() ? 0 : replaced.body.length()));
+	}
+
+	private void remove(String relative) {
+		Entry entry = entries.remove(relative);
+		if (entry != null && !entry.isPassThrough())
+			bytes.addAndGet(-entry.body.length());
+	}
+
+	private void evict() {
+		String eldestKey = null;
+		long eldestAccessed = Long.MAX_VALUE;
+		int sampled = 0;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext() && sampled < 16) {
+			Map.Entry<String, Entry> e = it.next();
+			if (e.getValue().lastAccessed - eldestAccessed < 0 || eldestKey == null) {
+				eldestAccessed = e.getValue().lastAccessed;
+				eldestKey = e.getKey();
+			}
+			sampled++;
+		}
+		if (eldestKey != null)
+			remove(eldestKey);
+	}
+
+	private void watch() {
+		try {
+			for (;;) {
+				WatchKey key = watchService.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changes.incrementAndGet();
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						logger.debug("Static file events overflowed, invalidate all");
+						entries.keySet().forEach(this::remove);
+						continue;
+					}
+					Path changed = dir.resolve((Path) event.context());
+					String relative = webRoot.toPath().relativize(changed).toString().replace(File.separatorChar, '/');
+					logger.debug("Static file changed: {}, {}", relative, event.kind().name());
+					remove(relative);
+				}
+				if (!key.reset())
+					watchedDirs.remove(dir);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.debug("Static file watcher stopped");
+		}
+	}
+
+	private static byte[] sha256(Buffer body) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(body.getDelegate().getByteBuf().nioBuffer());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String contentTypeOf(String relative) {
+		int dot = relative.lastIndexOf('.');
+		String contentType = dot < 0 ? null : contentTypes.get(relative.substring(dot + 1).toLowerCase());
+		if (contentType == null)
+			contentType = URLConnection.guessContentTypeFromName(relative);
+		if (contentType == null)
+			return "application/octet-stream";
+		if (contentType.startsWith("text/"))
+			return contentType + ";charset=UTF-8";
+		return contentType;
+	}
+}
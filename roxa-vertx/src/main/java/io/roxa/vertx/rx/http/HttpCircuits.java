@@ -0,0 +1,325 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.GeneralFailureException;
+import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.reactivex.core.Context;
+import io.vertx.reactivex.core.Vertx;
+
+/**
+ * <p>
+ * The registry of circuit breakers and bulkheads of HTTP endpoints, keyed by
+ * the endpoint name or host:port, so that each downstream has its own failure
+ * budget and concurrency cap.
+ * </p>
+ * The call is admitted by the bulkhead of key first, then executed by the
+ * breaker of key. When the bulkhead is full, or the breaker is open, the call
+ * fails fast with 503 without any retry. The slot of bulkhead is held until the
+ * call completes actually, even if the breaker has timed it out, and the queued
+ * call runs on the context it was executed on. The options are:
+ * 
+ * <pre>
+ * {
+ *   "timeout_millis": 2000,
+ *   "reset_timeout_millis": 5000,
+ *   "max_failures": 3,
+ *   "max_retries": 1,
+ *   "max_concurrent": 64,
+ *   "max_queued": 128,
+ *   "endpoints": {
+ *     "orders": { "max_concurrent": 16, "max_queued": 0 }
+ *   }
+ * }
+ * </pre>
+ * 
+ * The "max_queued" of 0 rejects the call as soon as the calls in flight reach
+ * "max_concurrent".
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class HttpCircuits implements Shareable {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpCircuits.class);
+
+	private static final String SHARED_MAP = "roxa.vertx::HttpCircuits";
+
+	private final class Circuit {
+		final String key;
+		final CircuitBreaker breaker;
+		final int maxConcurrent;
+		final int maxQueued;
+		final Deque<Runnable> queue = new ArrayDeque<>();
+		final LongAdder rejected = new LongAdder();
+		final LongAdder shortCircuited = new LongAdder();
+		final LongAdder opened = new LongAdder();
+		int active;
+
+		Circuit(String key, JsonObject options) {
+			this.key = key;
+			this.maxConcurrent = Math.max(1, options.getInteger("max_concurrent", 64));
+			this.maxQueued = Math.max(0, options.getInteger("max_queued", 128));
+			this.breaker = CircuitBreaker.create("roxa.vertx::HttpEndpoint.CircuitBreaker." + key, vertx.getDelegate(),
+					new CircuitBreakerOptions().setMaxFailures(options.getInteger("max_failures", 3))
+							.setMaxRetries(options.getInteger("max_retries", 1))
+							.setTimeout(options.getLong("timeout_millis", 2000L))
+							.setResetTimeout(options.getLong("reset_timeout_millis", 5000L)))
+					.openHandler(v -> {
+						opened.increment();
+						logger.warn("The circuit of HTTP endpoint {} on open state!", key);
+					}).halfOpenHandler(v -> logger.info("The circuit of HTTP endpoint {} on half open state", key))
+					.closeHandler(v -> logger.info("The circuit of HTTP endpoint {} on closed state", key));
+		}
+
+		/**
+		 * 
+		 * @param task
+		 * @return 1 if run now, 0 if queued, -1 if rejected
+		 */
+		synchronized int admit(Runnable task) {
+			if (active < maxConcurrent) {
+				active++;
+				return 1;
+			}
+			if (queue.size() < maxQueued) {
+				queue.offer(task);
+				return 0;
+			}
+			return -1;
+		}
+
+		synchronized void cancel(Runnable task) {
+			queue.remove(task);
+		}
+
+		/**
+		 * Release the slot, or pass it to the next queued call which runs on its
+		 * own context
+		 */
+		void release() {
+			Runnable next;
+			synchronized (this) {
+				next = queue.poll();
+				if (next == null)
+					active--;
+			}
+			if (next != null)
+				next.run();
+		}
+
+		synchronized int getActive() {
+			return active;
+		}
+
+		synchronized int getQueued() {
+			return queue.size();
+		}
+
+		int stateOf() {
+			CircuitBreakerState state = breaker.state();
+			return state == CircuitBreakerState.OPEN ? 2 : state == CircuitBreakerState.HALF_OPEN ? 1 : 0;
+		}
+	}
+
+	private final Vertx vertx;
+	private volatile JsonObject options;
+	private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+	/**
+	 * 
+	 * @param vertx
+	 * @return the registry shared by the Vert.x instance, with the default options
+	 */
+	public static HttpCircuits shared(Vertx vertx) {
+		LocalMap<String, HttpCircuits> sharedMap = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+		HttpCircuits inst = sharedMap.get("default");
+		if (inst != null)
+			return inst;
+		HttpCircuits created = new HttpCircuits(vertx, null);
+		inst = sharedMap.putIfAbsent("default", created);
+		return inst == null ? created : inst;
+	}
+
+	/**
+	 * 
+	 * @param vertx
+	 * @param options - The options of registry, such as max_concurrent,
+	 *                max_queued and endpoints, which take effect on the circuits
+	 *                created later, could be null. The options of each caller are
+	 *                merged into the registry, per endpoint for the endpoints
+	 * @return the registry shared by the Vert.x instance
+	 * @throws IllegalStateException if an option conflicts with the one merged
+	 *                               by another caller
+	 */
+	public static HttpCircuits shared(Vertx vertx, JsonObject options) {
+		HttpCircuits inst = shared(vertx);
+		if (options != null)
+			inst.merge(options);
+		return inst;
+	}
+
+	public static HttpCircuits create(Vertx vertx, JsonObject options) {
+		return new HttpCircuits(vertx, options);
+	}
+
+	private HttpCircuits(Vertx vertx, JsonObject options) {
+		this.vertx = vertx;
+		this.options = options == null ? new JsonObject() : options;
+	}
+
+	public <T> Single<T> execute(String key, Supplier<Single<T>> call) {
+		return execute(key, null, call);
+	}
+
+	/**
+	 * Execute the call by the bulkhead and breaker of key
+	 * 
+	 * @param key       - The endpoint name or host:port
+	 * @param overrides - The options of key which take effect when the circuit of
+	 *                  key is created, null to use the options of registry
+	 * @param call
+	 * @return
+	 */
+	public <T> Single<T> execute(String key, JsonObject overrides, Supplier<Single<T>> call) {
+		Circuit circuit = circuitOf(key, overrides);
+		return Single.create(emitter -> {
+			if (circuit.stateOf() == 2) {
+				circuit.shortCircuited.increment();
+				emitter.onError(new GeneralFailureException(503, String.format("The circuit of %s is open", key)));
+				return;
+			}
+			Runnable task = () -> {
+				if (emitter.isDisposed()) {
+					circuit.release();
+					return;
+				}
+				// the slot is held by the breaker and by each attempt, the breaker may
+				// time out or retry while the former attempt is still in flight
+				AtomicInteger holds = new AtomicInteger(1);
+				Runnable unhold = () -> {
+					if (holds.decrementAndGet() == 0)
+						circuit.release();
+				};
+				circuit.breaker.<T>execute(promise -> {
+					holds.incrementAndGet();
+					try {
+						call.get().doFinally(unhold::run).subscribe(promise::tryComplete, promise::tryFail);
+					} catch (Throwable e) {
+						unhold.run();
+						promise.tryFail(e);
+					}
+				}).onComplete(ar -> {
+					unhold.run();
+					if (ar.succeeded())
+						emitter.onSuccess(ar.result());
+					else
+						emitter.tryOnError(ar.cause());
+				});
+			};
+			Context context = Vertx.currentContext();
+			Runnable queued = context == null ? task : () -> context.runOnContext(v -> task.run());
+			int admitted = circuit.admit(queued);
+			if (admitted < 0) {
+				circuit.rejected.increment();
+				emitter.onError(new GeneralFailureException(503, String.format("The bulkhead of %s is full", key)));
+				return;
+			}
+			emitter.setCancellable(() -> circuit.cancel(queued));
+			if (admitted > 0)
+				task.run();
+		});
+	}
+
+	/**
+	 * Append the metrics of breakers and bulkheads in Prometheus text format
+	 * 
+	 * @param out
+	 */
+	public void writePrometheus(StringBuilder out) {
+		if (circuits.isEmpty())
+			return;
+		write(out, "roxa_http_client_circuit_state", "gauge",
+				"The state of circuit, 0 closed, 1 half open and 2 open", Circuit::stateOf);
+		write(out, "roxa_http_client_circuit_opened_total", "counter", "The times of circuit opened",
+				c -> c.opened.sum());
+		write(out, "roxa_http_client_circuit_short_circuited_total", "counter",
+				"The calls rejected as the circuit is open", c -> c.shortCircuited.sum());
+		write(out, "roxa_http_client_bulkhead_active", "gauge", "The calls in flight", Circuit::getActive);
+		write(out, "roxa_http_client_bulkhead_queued", "gauge", "The calls waiting for the bulkhead",
+				Circuit::getQueued);
+		write(out, "roxa_http_client_bulkhead_rejected_total", "counter", "The calls rejected as the bulkhead is full",
+				c -> c.rejected.sum());
+	}
+
+	private void write(StringBuilder out, String name, String type, String help, Function<Circuit, Number> value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		circuits.forEach((key, c) -> out.append(name).append("{endpoint=\"").append(HttpMetrics.escapeLabel(key))
+				.append("\"} ").append(value.apply(c)).append('\n'));
+	}
+
+	private synchronized void merge(JsonObject options) {
+		JsonObject merged = this.options.copy();
+		mergeIn(merged, options, "");
+		this.options = merged;
+	}
+
+	private static void mergeIn(JsonObject target, JsonObject source, String path) {
+		source.forEach(e -> {
+			Object current = target.getValue(e.getKey());
+			Object value = e.getValue();
+			if (current == null) {
+				target.put(e.getKey(), value instanceof JsonObject ? ((JsonObject) value).copy() : value);
+			} else if (current instanceof JsonObject && value instanceof JsonObject) {
+				mergeIn((JsonObject) current, (JsonObject) value, path + e.getKey() + ".");
+			} else if (!current.equals(value) && !(current instanceof Number && value instanceof Number
+					&& ((Number) current).doubleValue() == ((Number) value).doubleValue())) {
+				throw new IllegalStateException(String.format("The option %s%s of circuits conflicts: %s, %s", path,
+						e.getKey(), current, value));
+			}
+		});
+	}
+
+	private Circuit circuitOf(String key, JsonObject overrides) {
+		Circuit circuit = circuits.get(key);
+		if (circuit != null)
+			return circuit;
+		return circuits.computeIfAbsent(key, k -> {
+			JsonObject _options = options.copy();
+			_options.remove("endpoints");
+			if (overrides != null)
+				_options.mergeIn(overrides);
+			JsonObject endpoints = options.getJsonObject("endpoints");
+			if (endpoints != null && endpoints.getJsonObject(k) != null)
+				_options.mergeIn(endpoints.getJsonObject(k));
+			return new Circuit(k, _options);
+		});
+	}
+}
@@ -10,36 +10,55 @@
  */
 package io.roxa.vertx.rx.http;
 
+import java.net.ConnectException;
 import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.reactivex.Flowable;
 import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.SerialDisposable;
 import io.roxa.GeneralFailureException;
 import io.roxa.fn.Tuple2;
+import io.roxa.http.HedgePolicy;
+import io.roxa.http.HttpClientCache;
 import io.roxa.util.Strings;
-import io.vertx.circuitbreaker.CircuitBreaker;
-import io.vertx.circuitbreaker.CircuitBreakerOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClientOptions;
-import io.vertx.reactivex.SingleHelper;
+import io.vertx.reactivex.FlowableHelper;
+import io.vertx.reactivex.core.RxHelper;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.streams.WriteStream;
 import io.vertx.reactivex.ext.web.client.HttpRequest;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.client.WebClient;
+import io.vertx.reactivex.ext.web.client.predicate.ErrorConverter;
 import io.vertx.reactivex.ext.web.client.predicate.ResponsePredicate;
+import io.vertx.reactivex.ext.web.client.predicate.ResponsePredicateResult;
 import io.vertx.reactivex.ext.web.codec.BodyCodec;
 import io.vertx.reactivex.servicediscovery.ServiceDiscovery;
 import io.vertx.reactivex.servicediscovery.types.HttpEndpoint;
 
 /**
+ * <p>
+ * The client of HTTP endpoint, which holds a long-lived pooled WebClient.
+ * </p>
+ * The requests sent by {@link #send(HttpRequestSpec)} keep their parameters in
+ * the immutable spec, so one instance could be shared by the concurrent
+ * requests. The parameters set by {@link #pathParams(JsonObject)},
+ * {@link #queryParams(JsonObject)} and {@link #headers(JsonObject)} are taken
+ * by the next request only, so that way could not be shared.
+ * 
  * @author Steven Chen
  *
  */
@@ -51,13 +70,35 @@ public final class HttpEndpoints {
 
 	private static final JsonObject EMPTY_JSON_OBJECT = new JsonObject();
 
+	/**
+	 * The status codes of success, the others fail by GeneralFailureException
+	 * with the status code
+	 */
+	static final ResponsePredicate SC_SUCCESS = ResponsePredicate.create(response -> {
+		int sc = response.statusCode();
+		if (sc >= 200 && sc < 300)
+			return ResponsePredicateResult.success();
+		return ResponsePredicateResult.failure(String.format("Response status code %d is not between 200 and 300", sc));
+	}, ErrorConverter.create(result -> new GeneralFailureException(result.response().statusCode(), result.message())));
+
 	private Vertx vertx;
 	private ServiceDiscovery discovery;
-	private CircuitBreaker circuitBreaker;
+	private HttpCircuits circuits;
+	private JsonObject circuitOptions;
 
 	private JsonObject options;
 
-	private WebClient webClient;
+	private JsonObject clientOptions = new JsonObject();
+
+	private volatile WebClient webClient;
+
+	private volatile WebClient discoveredClient;
+
+	private EndpointDirectory directory;
+
+	private HedgePolicy hedgePolicy;
+
+	private HttpClientCache cache;
 
 	public static HttpEndpoints create(io.vertx.core.Vertx vertx) {
 		return new HttpEndpoints(vertx);
@@ -80,6 +121,7 @@ public final class HttpEndpoints {
 	public HttpEndpoints discovery(String endpointName) {
 		options.put("endpointName", endpointName);
 		options.remove("endpoint_info");
+		releaseClients();
 		return this;
 	}
 
@@ -91,6 +133,70 @@ public final class HttpEndpoints {
 		JsonObject endpointInfo = new JsonObject().put("host", host).put("port", port).put("tls", tls);
 		options.put("endpoint_info", endpointInfo);
 		options.remove("endpointName");
+		releaseClients();
+		return this;
+	}
+
+	/**
+	 * Spread the requests of discovered endpoint over its instances by the
+	 * directory, rather than the single WebClient discovered by the first request
+	 * 
+	 * @param directory - The directory shared by the endpoints
+	 * @return
+	 */
+	public HttpEndpoints directory(EndpointDirectory directory) {
+		this.directory = directory;
+		return this;
+	}
+
+	/**
+	 * Hedge the idempotent requests by the policy, which should be shared by the
+	 * requests to the same endpoint. Each of the hedged requests takes its own
+	 * slot of the bulkhead if the circuit is setup. The WebClient of Vert.x 3.9
+	 * could not abort the request in flight, so the losing request is not reset
+	 * once the other one succeeded, it runs to the end with its response
+	 * discarded, and holds its slot of bulkhead until then.
+	 * 
+	 * @param hedgePolicy
+	 * @return
+	 */
+	public HttpEndpoints hedge(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		return this;
+	}
+
+	/**
+	 * Cache the GET responses of JSON honoring Cache-Control, the stale ones are
+	 * revalidated by If-None-Match or If-Modified-Since
+	 * 
+	 * @param cache - The cache shared by the endpoints
+	 * @return
+	 */
+	public HttpEndpoints cache(HttpClientCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Tune the pooled WebClient of endpoint, the options are:
+	 * 
+	 * <pre>
+	 * {
+	 *   "max_pool_size": 32,
+	 *   "keep_alive": true,
+	 *   "pipelining": false,
+	 *   "pipelining_limit": 10,
+	 *   "idle_timeout_seconds": 60,
+	 *   "connect_timeout_millis": 5000
+	 * }
+	 * </pre>
+	 * 
+	 * @param clientOptions
+	 * @return
+	 */
+	public HttpEndpoints clientOptions(JsonObject clientOptions) {
+		this.clientOptions = clientOptions == null ? new JsonObject() : clientOptions.copy();
+		releaseClients();
 		return this;
 	}
 
@@ -118,18 +224,35 @@ public final class HttpEndpoints {
 		return circuit(2000, 5000, 3, 1);
 	}
 
+	/**
+	 * Setup the circuit breaker and bulkhead of this endpoint in the shared
+	 * registry, keyed by the endpoint name or host:port. The options take effect
+	 * when the circuit of endpoint is created first.
+	 * 
+	 * @param timeout
+	 * @param resetTimeout
+	 * @param maxFailures
+	 * @param maxRetries
+	 * @return
+	 */
 	public HttpEndpoints circuit(long timeout, long resetTimeout, int maxFailures, int maxRetries) {
 		Objects.requireNonNull(vertx);
-		logger.info("Setup the roxa.vertx::HttpEndpoint.CircuitBreaker");
-		if (circuitBreaker == null)
-			circuitBreaker = CircuitBreaker.create("roxa.vertx::HttpEndpoint.CircuitBreaker", vertx.getDelegate(),
-					new CircuitBreakerOptions().setMaxFailures(maxFailures).setMaxRetries(maxRetries)
-							.setTimeout(timeout).setResetTimeout(resetTimeout))
-					.openHandler(v -> {
-						logger.warn("roxa.vertx::HttpEndpoint.CircuitBreaker on open state!");
-					}).fallback(v -> {
-						return new JsonObject().put("sc", "500").put("st", "ciruit opened");
-					});
+		this.circuits = HttpCircuits.shared(vertx);
+		this.circuitOptions = new JsonObject().put("timeout_millis", timeout).put("reset_timeout_millis", resetTimeout)
+				.put("max_failures", maxFailures).put("max_retries", maxRetries);
+		return this;
+	}
+
+	/**
+	 * Execute the requests by the circuit breaker and bulkhead of this endpoint in
+	 * the registry, with the options of registry
+	 * 
+	 * @param circuits
+	 * @return
+	 */
+	public HttpEndpoints circuits(HttpCircuits circuits) {
+		this.circuits = circuits;
+		this.circuitOptions = null;
 		return this;
 	}
 
@@ -247,87 +370,307 @@ public final class HttpEndpoints {
 		return promise.future();
 	}
 
-	private Single<JsonObject> request(String httpMethod, JsonObject payload, boolean... plainBody) {
-		String uri = composeUriWithPathParams();
-		JsonObject queryParams = getQueryParams();
-		JsonObject headers = getHeaders();
+	/**
+	 * Send the request of spec, the endpoint holds no state of request so that
+	 * it could be shared by the concurrent requests
+	 * 
+	 * @param spec
+	 * @return
+	 */
+	public Single<JsonObject> send(HttpRequestSpec spec) {
 		String endpointName = getEndpointName();
 		JsonObject endpointInfo = getEndpointInfo();
-		logger.debug("Prepare to {} HTTP Endpoint[{}] with url: {}, queryParams: {}, headers: {}, payload: {}",
-				httpMethod.toUpperCase(), endpointName == null ? endpointInfo.encode() : endpointName, uri,
-				queryParams == null ? "NIL" : queryParams.encode(), headers == null ? "NIL" : headers.encode(),
-				payload == null ? "NIL" : payload.encode());
-		if (circuitBreaker != null)
-			return SingleHelper.toSingle(handler -> {
-				circuitBreaker.execute(future -> {
-					logger.info("{} running with CiruitBreaker", httpMethod.toUpperCase());
-					request(queryParams, headers, uri, httpMethod, payload, plainBody)
-							.subscribe(SingleHelper.toObserver(future));
-				}, handler);
+		logger.debug("Prepare to request HTTP Endpoint[{}] with {}",
+				endpointName == null ? (endpointInfo == null ? "NIL" : endpointInfo.encode()) : endpointName, spec);
+		return hedge(spec);
+	}
+
+	/**
+	 * Stream the objects of the array in "payload" of response, such as
+	 * {"sc":200,"payload":[...]}
+	 * 
+	 * @param spec
+	 * @return
+	 */
+	public Flowable<JsonObject> streamPayload(HttpRequestSpec spec) {
+		return stream(spec, "payload");
+	}
+
+	/**
+	 * Stream the objects of the array in response as they are parsed, rather than
+	 * buffering the whole body. The socket is paused while the subscriber does not
+	 * request more, the rest of body is discarded once the subscriber cancelled.
+	 * 
+	 * @param spec
+	 * @param field - The field of root object which holds the array, null if the
+	 *              root is the array
+	 * @return
+	 */
+	public Flowable<JsonObject> stream(HttpRequestSpec spec, String field) {
+		return Flowable.defer(() -> {
+			JsonArrayStream elements = new JsonArrayStream(field);
+			SerialDisposable sending = new SerialDisposable();
+			Single<HttpResponse<Void>> response = call(client -> {
+				HttpRequest<Void> request = prepare(client, spec).as(
+						BodyCodec.pipe(WriteStream.newInstance(elements.sink(), Buffer.__TYPE_ARG)));
+				JsonObject payload = spec.payload();
+				if (payload != null && !payload.isEmpty())
+					return request.rxSendJsonObject(payload);
+				return request.rxSend();
+			});
+			// send on the first request, once the stream is subscribed, so the failure is not dropped
+			AtomicBoolean sent = new AtomicBoolean();
+			return FlowableHelper.toFlowable(elements).doOnRequest(n -> {
+				if (sent.compareAndSet(false, true))
+					sending.set(response.subscribe(
+							r -> logger.debug("Streamed the response of HTTP Endpoint with {}", spec), elements::fail));
+			}).doOnCancel(() -> {
+				elements.close();
+				sending.dispose();
 			});
-		return request(queryParams, headers, uri, httpMethod, payload, plainBody);
-	}
-
-	private Single<JsonObject> request(JsonObject queryParams, JsonObject headers, String uri, String httpMethod,
-			JsonObject payload, boolean... plainBody) {
-
-		return getEndpoint().flatMap(client -> {
-			boolean isPlainBody = (plainBody != null && plainBody.length != 0);
-			HttpRequest<Buffer> request = switchHttpMethod(client, httpMethod, uri);
-			bindQueryParam(queryParams, request);
-			bindHeader(headers, request);
-			request.expect(ResponsePredicate.SC_SUCCESS);
-			if (isPlainBody) {
-				Single<HttpResponse<String>> requestObr = null;
-				if (payload != null && !payload.isEmpty()) {
-					requestObr = request.as(BodyCodec.string()).rxSendJsonObject(payload);
-				} else {
-					requestObr = request.as(BodyCodec.string()).rxSend();
-				}
-				return requestObr.map(response -> new JsonObject().put("plain", response.body())).doOnError(e -> {
-					logger.error("Could not complete HTTPEndpoint request!", e);
-				}).doFinally(() -> {
-					if (discovery != null && client != null) {
-						ServiceDiscovery.releaseServiceObject(discovery, client);
-					}
-					logger.debug("Release the HTTPEndpoint service object");
-					clear();
-				});
+		});
+	}
+
+	/**
+	 * Close the pooled WebClient of endpoint
+	 */
+	public void close() {
+		releaseClients();
+	}
+
+	private Single<JsonObject> request(String httpMethod, JsonObject payload, boolean... plainBody) {
+		HttpRequestSpec.Builder builder = HttpRequestSpec.newBuilder(httpMethod, options.getString("uri"))
+				.pathParams(options.getJsonObject("pathParams")).queryParams(getQueryParams()).headers(getHeaders())
+				.payload(payload);
+		if (plainBody != null && plainBody.length != 0)
+			builder.plainBody();
+		HttpRequestSpec spec = builder.build();
+		clear();
+		return send(spec);
+	}
+
+	private Single<JsonObject> hedge(HttpRequestSpec spec) {
+		HedgePolicy policy = hedgePolicy;
+		if (policy == null || !spec.isIdempotent())
+			return guarded(spec);
+		return Single.create(emitter -> new HedgedRequest(spec, policy, emitter).start());
+	}
+
+	/**
+	 * The primary request and its hedge, the first success wins, and the failure
+	 * is emitted once no request is left in flight, as the enqueue agent does. The
+	 * latency is measured from the start of primary request
+	 */
+	private final class HedgedRequest {
+		final HttpRequestSpec spec;
+		final HedgePolicy policy;
+		final SingleEmitter<JsonObject> emitter;
+		final CompositeDisposable calls = new CompositeDisposable();
+		final long start = System.nanoTime();
+		int inFlight = 1;
+		boolean done;
+
+		HedgedRequest(HttpRequestSpec spec, HedgePolicy policy, SingleEmitter<JsonObject> emitter) {
+			this.spec = spec;
+			this.policy = policy;
+			this.emitter = emitter;
+		}
+
+		void start() {
+			emitter.setDisposable(calls);
+			policy.requested();
+			calls.add(Single.timer(policy.delayMillis(), TimeUnit.MILLISECONDS, RxHelper.scheduler(vertx))
+					.subscribe(t -> sendHedge()));
+			send(false);
+		}
+
+		void sendHedge() {
+			synchronized (this) {
+				if (done || !policy.tryHedge())
+					return;
+				inFlight++;
+			}
+			logger.debug("Hedge the request of HTTP Endpoint with {}", spec);
+			send(true);
+		}
+
+		void send(boolean isHedge) {
+			calls.add(guarded(spec).subscribe(r -> won(r, isHedge), this::failed));
+		}
+
+		void won(JsonObject result, boolean isHedge) {
+			synchronized (this) {
+				if (done)
+					return;
+				done = true;
+			}
+			policy.completed(System.nanoTime() - start, isHedge);
+			emitter.onSuccess(result);
+		}
+
+		void failed(Throwable e) {
+			synchronized (this) {
+				// wait for the other request in flight
+				if (done || --inFlight > 0)
+					return;
+				done = true;
+			}
+			emitter.tryOnError(e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param spec
+	 * @return the request by the circuit of endpoint if setup
+	 */
+	private Single<JsonObject> guarded(HttpRequestSpec spec) {
+		if (circuits != null)
+			return circuits.execute(circuitKey(), circuitOptions, () -> request(spec));
+		return request(spec);
+	}
+
+	private Single<JsonObject> request(HttpRequestSpec spec) {
+		HttpClientCache _cache = cache;
+		JsonObject headers = spec.headers();
+		// the conditional request of caller is answered by the endpoint
+		if (_cache == null || !"get".equals(spec.getMethod()) || spec.isPlainBody()
+				|| headerOf(headers, "If-None-Match") != null || headerOf(headers, "If-Modified-Since") != null)
+			return call(client -> request(client, spec));
+		String host = circuitKey();
+		JsonObject queryParams = spec.queryParams();
+		String baseKey = HttpClientCache.keyOf(
+				host + spec.getUri() + (queryParams == null ? "" : "?" + queryParams.encode()),
+				headerOf(headers, "Authorization"));
+		return Single.defer(() -> {
+			String key = _cache.variantOf(baseKey, name -> headerOf(headers, name));
+			HttpClientCache.Entry entry = _cache.get(key);
+			if (entry != null && entry.isFresh()) {
+				_cache.hit(host);
+				return Single.just(decode(entry));
+			}
+			if (entry != null && _cache.isStaleWhileRevalidate() && entry.isUsableStale()) {
+				_cache.stale(host);
+				if (entry.tryRevalidate())
+					call(client -> revalidate(client, spec, _cache, baseKey, host, entry)).subscribe(r -> {
+					}, e -> {
+						entry.cancelRevalidate();
+						logger.debug("Could not revalidate the cached response of {}", spec, e);
+					});
+				return Single.just(decode(entry));
+			}
+			return call(client -> revalidate(client, spec, _cache, baseKey, host, entry));
+		});
+	}
+
+	private static Single<JsonObject> revalidate(WebClient client, HttpRequestSpec spec, HttpClientCache cache,
+			String baseKey, String host, HttpClientCache.Entry entry) {
+		HttpRequest<Buffer> request = switchHttpMethod(client, spec.getMethod(), spec.getUri());
+		bindQueryParam(spec.queryParams(), request);
+		bindHeader(spec.headers(), request);
+		if (entry != null && entry.getEtag() != null)
+			request.putHeader("If-None-Match", entry.getEtag());
+		if (entry != null && entry.getLastModified() != null)
+			request.putHeader("If-Modified-Since", entry.getLastModified());
+		return request.rxSend().map(response -> {
+			int sc = response.statusCode();
+			if (entry != null)
+				entry.cancelRevalidate();
+			if (sc == 304 && entry != null) {
+				cache.notModified(host);
+				cache.revalidated(entry, response.getHeader("Cache-Control"));
+				return decode(entry);
+			}
+			cache.miss(host);
+			if (sc < 200 || sc >= 300)
+				throw new GeneralFailureException(sc,
+						String.format("Response status code %d is not between 200 and 300", sc));
+			Buffer body = response.body();
+			if (body == null)
+				return new JsonObject();
+			JsonObject headers = spec.headers();
+			HttpClientCache.Entry stored = null;
+			if (sc == 200 && cache.vary(baseKey, response.getHeader("Vary")))
+				stored = cache.store(cache.variantOf(baseKey, name -> headerOf(headers, name)),
+						response.getHeader("Cache-Control"), response.getHeader("ETag"),
+						response.getHeader("Last-Modified"), response.getHeader("Content-Type"), body.getBytes());
+			// drop the stale one which is no longer cacheable
+			if (stored == null && entry != null)
+				cache.remove(cache.variantOf(baseKey, name -> headerOf(headers, name)));
+			return new JsonObject(body.getDelegate());
+		});
+	}
+
+	/**
+	 * 
+	 * @param headers
+	 * @param name
+	 * @return the value of header by name case-insensitively, or null if absent
+	 */
+	private static String headerOf(JsonObject headers, String name) {
+		if (headers == null)
+			return null;
+		for (String key : headers.fieldNames()) {
+			if (key.equalsIgnoreCase(name)) {
+				Object value = headers.getValue(key);
+				return value == null ? null : value.toString();
 			}
-			Single<HttpResponse<JsonObject>> requestObr = null;
+		}
+		return null;
+	}
+
+	private static JsonObject decode(HttpClientCache.Entry entry) {
+		return new JsonObject(Buffer.buffer(entry.getBody()).getDelegate());
+	}
+
+	private <T> Single<T> call(Function<WebClient, Single<T>> call) {
+		String endpointName = getEndpointName();
+		if (endpointName != null && directory != null)
+			return directory.execute(endpointName, call)
+					.doOnError(e -> logger.error("Could not complete HTTPEndpoint request!", e));
+		return getEndpoint().flatMap(client -> call.apply(client).doOnError(e -> failed(client, e)));
+	}
+
+	private static HttpRequest<Buffer> prepare(WebClient client, HttpRequestSpec spec) {
+		HttpRequest<Buffer> request = switchHttpMethod(client, spec.getMethod(), spec.getUri());
+		bindQueryParam(spec.queryParams(), request);
+		bindHeader(spec.headers(), request);
+		return request.expect(SC_SUCCESS);
+	}
+
+	private static Single<JsonObject> request(WebClient client, HttpRequestSpec spec) {
+		HttpRequest<Buffer> request = prepare(client, spec);
+		JsonObject payload = spec.payload();
+		if (spec.isPlainBody()) {
+			Single<HttpResponse<String>> requestObr = null;
 			if (payload != null && !payload.isEmpty()) {
-				requestObr = request.as(BodyCodec.jsonObject()).rxSendJsonObject(payload);
+				requestObr = request.as(BodyCodec.string()).rxSendJsonObject(payload);
 			} else {
-				requestObr = request.as(BodyCodec.jsonObject()).rxSend();
+				requestObr = request.as(BodyCodec.string()).rxSend();
 			}
-			return requestObr.map(response -> response.body()).doOnError(e -> {
-				logger.error("Could not complete HTTPEndpoint request!", e);
-			}).doFinally(() -> {
-				if (discovery != null && client != null) {
-					ServiceDiscovery.releaseServiceObject(discovery, client);
-				}
-				logger.debug("Release the HTTPEndpoint service object");
-				clear();
-			});
-		});
+			return requestObr.map(response -> new JsonObject().put("plain", response.body()));
+		}
+		Single<HttpResponse<JsonObject>> requestObr = null;
+		if (payload != null && !payload.isEmpty()) {
+			requestObr = request.as(BodyCodec.jsonObject()).rxSendJsonObject(payload);
+		} else {
+			requestObr = request.as(BodyCodec.jsonObject()).rxSend();
+		}
+		return requestObr.map(response -> response.body());
 	}
 
-	private JsonObject getHeaders() {
-		return options.getJsonObject("headers");
+	private void failed(WebClient client, Throwable e) {
+		logger.error("Could not complete HTTPEndpoint request!", e);
+		if (e instanceof ConnectException && client == discoveredClient) {
+			// the endpoint may have moved, discover it again by the next request
+			discoveredClient = null;
+			ServiceDiscovery.releaseServiceObject(discovery, client);
+			logger.debug("Release the HTTPEndpoint service object");
+		}
 	}
 
-	private String composeUriWithPathParams() {
-		String uriPattern = options.getString("uri");
-		JsonObject pathParams = options.getJsonObject("pathParams");
-		if (pathParams == null || pathParams.isEmpty())
-			return uriPattern;
-		String[] pathPart = uriPattern.split("/");
-		return Stream.of(pathPart).map(p -> {
-			if (!p.startsWith(":"))
-				return p;
-			String key = p.substring(1, p.length());
-			return pathParams.getString(key, "null");
-		}).collect(Collectors.joining("/"));
+	private JsonObject getHeaders() {
+		return options.getJsonObject("headers");
 	}
 
 	private String getEndpointName() {
@@ -338,26 +681,83 @@ public final class HttpEndpoints {
 		return options.getJsonObject("endpoint_info");
 	}
 
+	private String circuitKey() {
+		String endpointName = getEndpointName();
+		if (endpointName != null)
+			return endpointName;
+		JsonObject endpointInfo = getEndpointInfo();
+		if (endpointInfo == null)
+			return "default";
+		return endpointInfo.getString("host") + ":" + endpointInfo.getInteger("port");
+	}
+
 	private JsonObject getQueryParams() {
 		return options.getJsonObject("queryParams");
 	}
 
 	private Single<WebClient> getEndpoint() {
 		String endpointName = getEndpointName();
-		if (endpointName != null)
+		if (endpointName != null) {
+			WebClient client = discoveredClient;
+			if (client != null)
+				return Single.just(client);
 			return getServiceDiscovery().flatMap(d -> {
 				logger.debug("Discovery the HTTPEndpoint client name: {}", endpointName);
-				return HttpEndpoint.rxGetWebClient(discovery, new JsonObject().put("name", endpointName));
-			});
+				return HttpEndpoint.rxGetWebClient(discovery, new JsonObject().put("name", endpointName),
+						webClientOptions(null).toJson());
+			}).map(this::keepDiscoveredClient);
+		}
 		JsonObject endpointInfo = getEndpointInfo();
 		if (endpointInfo == null || endpointInfo.isEmpty())
 			return Single.error(new GeneralFailureException("No http endpoint info found!"));
-		if (webClient == null) {
-			webClient = WebClient.create(vertx, new WebClientOptions().setDefaultHost(endpointInfo.getString("host"))
-					.setDefaultPort(endpointInfo.getInteger("port")).setSsl(endpointInfo.getBoolean("tls")));
+		WebClient client = webClient;
+		if (client == null) {
+			synchronized (this) {
+				if (webClient == null)
+					webClient = WebClient.create(vertx, webClientOptions(endpointInfo));
+				client = webClient;
+			}
+		}
+		return Single.just(client);
+	}
+
+	private synchronized WebClient keepDiscoveredClient(WebClient client) {
+		if (discoveredClient == null) {
+			discoveredClient = client;
+			return client;
 		}
-		return Single.just(webClient);
+		// discovered concurrently, keep the first one
+		ServiceDiscovery.releaseServiceObject(discovery, client);
+		return discoveredClient;
+	}
+
+	private WebClientOptions webClientOptions(JsonObject endpointInfo) {
+		WebClientOptions webClientOptions = pooledOptions(clientOptions);
+		if (endpointInfo != null)
+			webClientOptions.setDefaultHost(endpointInfo.getString("host"))
+					.setDefaultPort(endpointInfo.getInteger("port")).setSsl(endpointInfo.getBoolean("tls", false));
+		return webClientOptions;
+	}
 
+	static WebClientOptions pooledOptions(JsonObject clientOptions) {
+		return new WebClientOptions()
+				.setMaxPoolSize(clientOptions.getInteger("max_pool_size", 32))
+				.setKeepAlive(clientOptions.getBoolean("keep_alive", true))
+				.setPipelining(clientOptions.getBoolean("pipelining", false))
+				.setPipeliningLimit(clientOptions.getInteger("pipelining_limit", 10))
+				.setIdleTimeout(clientOptions.getInteger("idle_timeout_seconds", 60))
+				.setConnectTimeout(clientOptions.getInteger("connect_timeout_millis", 5000)).setTcpNoDelay(true);
+	}
+
+	private synchronized void releaseClients() {
+		if (webClient != null) {
+			webClient.close();
+			webClient = null;
+		}
+		if (discoveredClient != null) {
+			ServiceDiscovery.releaseServiceObject(discovery, discoveredClient);
+			discoveredClient = null;
+		}
 	}
 
 	/**
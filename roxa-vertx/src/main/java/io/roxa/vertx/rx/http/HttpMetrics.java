@@ -0,0 +1,227 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import io.roxa.util.Histogram;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.reactivex.ext.web.Route;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The request metrics of HTTP server, exposed in Prometheus text format.
+ * </p>
+ * The requests are recorded by the route template rather than the raw path, so
+ * the cardinality is bounded by the routes of router. Recording a request after
+ * the first one of the same route and method only touches the counters, no
+ * object is allocated. The other features could contribute their metrics by
+ * registering a collector.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class HttpMetrics implements Handler<RoutingContext> {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String OTHER_ROUTE = "other";
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+
+	private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+	private final List<Consumer<StringBuilder>> collectors = new CopyOnWriteArrayList<>();
+	private final RequestTracker tracker;
+	private Supplier<Map<String, Number>> jvmMetrics;
+
+	private static class RouteMetrics {
+		final AtomicReferenceArray<MethodMetrics> methods = new AtomicReferenceArray<>(METHODS.length);
+
+		MethodMetrics of(HttpMethod method) {
+			int i = method.ordinal();
+			MethodMetrics m = methods.get(i);
+			if (m == null) {
+				methods.compareAndSet(i, null, new MethodMetrics());
+				m = methods.get(i);
+			}
+			return m;
+		}
+	}
+
+	private static class MethodMetrics {
+		final LongAdder[] statusClasses = { new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(),
+				new LongAdder(), new LongAdder() };
+		final LongAdder bytesIn = new LongAdder();
+		final LongAdder bytesOut = new LongAdder();
+		final Histogram latency = new Histogram();
+	}
+
+	/**
+	 * 
+	 * @param tracker - The request tracker which notifies the end of request
+	 * @return
+	 */
+	public static HttpMetrics create(RequestTracker tracker) {
+		HttpMetrics inst = new HttpMetrics(tracker);
+		tracker.onEnd(inst::record);
+		return inst;
+	}
+
+	private HttpMetrics(RequestTracker tracker) {
+		this.tracker = tracker;
+	}
+
+	/**
+	 * Set the supplier of JVM metrics, such as SysInfo
+	 * 
+	 * @param jvmMetrics
+	 * @return
+	 */
+	public HttpMetrics jvmMetrics(Supplier<Map<String, Number>> jvmMetrics) {
+		this.jvmMetrics = jvmMetrics;
+		return this;
+	}
+
+	/**
+	 * Register a collector that appends the samples in Prometheus text format
+	 * 
+	 * @param collector
+	 * @return
+	 */
+	public HttpMetrics register(Consumer<StringBuilder> collector) {
+		collectors.add(collector);
+		return this;
+	}
+
+	/**
+	 * Serves the metrics
+	 */
+	@Override
+	public void handle(RoutingContext rc) {
+		rc.response().putHeader("Content-Type", CONTENT_TYPE).end(scrape());
+	}
+
+	/**
+	 * Record the request once the response ended, the detached requests such as
+	 * event streams are not recorded
+	 * 
+	 * @param rc
+	 */
+	public void record(RoutingContext rc) {
+		if (RequestTracker.isDetached(rc))
+			return;
+		long elapsedNanos = RequestTracker.elapsedNanos(rc);
+		Route route = rc.currentRoute();
+		String template = route == null ? null : route.getPath();
+		RouteMetrics rm = routes.get(template == null ? OTHER_ROUTE : template);
+		if (rm == null)
+			rm = routes.computeIfAbsent(template == null ? OTHER_ROUTE : template, k -> new RouteMetrics());
+		MethodMetrics mm = rm.of(rc.request().method());
+		int statusClass = rc.response().getStatusCode() / 100;
+		mm.statusClasses[statusClass > 0 && statusClass < 6 ? statusClass - 1 : 5].increment();
+		mm.bytesIn.add(rc.request().bytesRead());
+		mm.bytesOut.add(rc.response().bytesWritten());
+		mm.latency.record(elapsedNanos);
+	}
+
+	/**
+	 * 
+	 * @return all of the metrics in Prometheus text format
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder(4096);
+		gauge(out, "roxa_http_requests_in_flight", "The requests in flight", tracker.getInFlight());
+		out.append("# HELP roxa_http_requests_total The requests by route, method and status class\n");
+		out.append("# TYPE roxa_http_requests_total counter\n");
+		forEach((labels, mm) -> {
+			for (int i = 0; i < mm.statusClasses.length; i++) {
+				long count = mm.statusClasses[i].sum();
+				if (count > 0)
+					out.append("roxa_http_requests_total{").append(labels).append(",status=\"")
+							.append(i < 5 ? (i + 1) + "xx" : "other").append("\"} ").append(count).append('\n');
+			}
+		});
+		out.append("# HELP roxa_http_request_bytes_total The bytes read from requests\n");
+		out.append("# TYPE roxa_http_request_bytes_total counter\n");
+		forEach((labels, mm) -> out.append("roxa_http_request_bytes_total{").append(labels).append("} ")
+				.append(mm.bytesIn.sum()).append('\n'));
+		out.append("# HELP roxa_http_response_bytes_total The bytes written to responses\n");
+		out.append("# TYPE roxa_http_response_bytes_total counter\n");
+		forEach((labels, mm) -> out.append("roxa_http_response_bytes_total{").append(labels).append("} ")
+				.append(mm.bytesOut.sum()).append('\n'));
+		out.append("# HELP roxa_http_request_duration_seconds The latency of requests\n");
+		out.append("# TYPE roxa_http_request_duration_seconds histogram\n");
+		forEach((labels, mm) -> mm.latency.writePrometheus(out, "roxa_http_request_duration_seconds", labels));
+		for (Consumer<StringBuilder> collector : collectors)
+			collector.accept(out);
+		if (jvmMetrics != null)
+			jvmMetrics.get().forEach((k, v) -> out.append(k).append(' ').append(v).append('\n'));
+		return out.toString();
+	}
+
+	/**
+	 * Append a gauge sample
+	 * 
+	 * @param out
+	 * @param name
+	 * @param help
+	 * @param value
+	 */
+	public static void gauge(StringBuilder out, String name, String help, Number value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" gauge\n");
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Append a counter sample
+	 * 
+	 * @param out
+	 * @param name
+	 * @param help
+	 * @param value
+	 */
+	public static void counter(StringBuilder out, String name, String help, Number value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * 
+	 * @param value
+	 * @return the escaped value of label
+	 */
+	public static String escapeLabel(String value) {
+		return Histogram.escapeLabel(value);
+	}
+
+	private void forEach(BiConsumer<String, MethodMetrics> consumer) {
+		routes.forEach((template, rm) -> {
+			for (int i = 0; i < METHODS.length; i++) {
+				MethodMetrics mm = rm.methods.get(i);
+				if (mm != null)
+					consumer.accept("route=\"" + escapeLabel(template) + "\",method=\"" + METHODS[i].name() + "\"",
+							mm);
+			}
+		});
+	}
+}
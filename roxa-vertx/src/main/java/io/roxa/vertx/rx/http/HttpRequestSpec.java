@@ -0,0 +1,195 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The immutable parameters of one call to {@link HttpEndpoints}.
+ * </p>
+ * <code>
+ * HttpRequestSpec.newBuilder("get", "/api/users/:id").pathParam("id", userId)
+ *  .queryParam("fields", "name")
+ *  .build()
+ * </code>
+ * 
+ * @author Steven Chen
+ *
+ */
+public final class HttpRequestSpec {
+
+	private final String method;
+	private final UriTemplate uriTemplate;
+	private final JsonObject pathParams;
+	private final JsonObject queryParams;
+	private final JsonObject headers;
+	private final JsonObject payload;
+	private final boolean plainBody;
+	private final boolean idempotent;
+
+	public static class Builder {
+		private final String method;
+		private final String uri;
+		private JsonObject pathParams;
+		private JsonObject queryParams;
+		private JsonObject headers;
+		private JsonObject payload;
+		private boolean plainBody;
+		private boolean idempotent;
+
+		private Builder(String method, String uri) {
+			this.method = method.toLowerCase();
+			this.uri = uri;
+		}
+
+		public Builder pathParam(String name, Object value) {
+			if (pathParams == null)
+				pathParams = new JsonObject();
+			pathParams.put(name, value);
+			return this;
+		}
+
+		public Builder pathParams(JsonObject pathParams) {
+			if (pathParams != null)
+				pathParams.forEach(e -> pathParam(e.getKey(), e.getValue()));
+			return this;
+		}
+
+		public Builder queryParam(String name, Object value) {
+			if (queryParams == null)
+				queryParams = new JsonObject();
+			queryParams.put(name, value);
+			return this;
+		}
+
+		public Builder queryParams(JsonObject queryParams) {
+			if (queryParams != null)
+				queryParams.forEach(e -> queryParam(e.getKey(), e.getValue()));
+			return this;
+		}
+
+		public Builder header(String name, String value) {
+			if (headers == null)
+				headers = new JsonObject();
+			headers.put(name, value);
+			return this;
+		}
+
+		public Builder headers(JsonObject headers) {
+			if (headers != null)
+				headers.forEach(e -> header(e.getKey(), e.getValue() == null ? null : String.valueOf(e.getValue())));
+			return this;
+		}
+
+		public Builder payload(JsonObject payload) {
+			this.payload = payload;
+			return this;
+		}
+
+		/**
+		 * Response the body as plain text, such as {"plain": body}
+		 * 
+		 * @return
+		 */
+		public Builder plainBody() {
+			this.plainBody = true;
+			return this;
+		}
+
+		/**
+		 * Mark the request idempotent, so that it could be hedged, the GET request is
+		 * always idempotent
+		 * 
+		 * @return
+		 */
+		public Builder idempotent() {
+			this.idempotent = true;
+			return this;
+		}
+
+		public HttpRequestSpec build() {
+			return new HttpRequestSpec(this);
+		}
+	}
+
+	/**
+	 * 
+	 * @param method - get, post, put, delete or patch
+	 * @param uri    - The URI template, such as /api/users/:id
+	 * @return
+	 */
+	public static Builder newBuilder(String method, String uri) {
+		return new Builder(method, uri);
+	}
+
+	private HttpRequestSpec(Builder builder) {
+		this.method = builder.method;
+		this.uriTemplate = UriTemplate.compile(builder.uri);
+		this.pathParams = builder.pathParams == null ? null : builder.pathParams.copy();
+		this.queryParams = builder.queryParams == null ? null : builder.queryParams.copy();
+		this.headers = builder.headers == null ? null : builder.headers.copy();
+		this.payload = builder.payload == null ? null : builder.payload.copy();
+		this.plainBody = builder.plainBody;
+		this.idempotent = builder.idempotent || "get".equals(builder.method);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * 
+	 * @return the URI with the values of path parameters
+	 */
+	public String getUri() {
+		return uriTemplate.expand(pathParams);
+	}
+
+	public JsonObject getQueryParams() {
+		return queryParams == null ? null : queryParams.copy();
+	}
+
+	public JsonObject getHeaders() {
+		return headers == null ? null : headers.copy();
+	}
+
+	public JsonObject getPayload() {
+		return payload == null ? null : payload.copy();
+	}
+
+	public boolean isPlainBody() {
+		return plainBody;
+	}
+
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	JsonObject queryParams() {
+		return queryParams;
+	}
+
+	JsonObject headers() {
+		return headers;
+	}
+
+	JsonObject payload() {
+		return payload;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s, queryParams: %s, headers: %s, payload: %s", method.toUpperCase(), getUri(),
+				queryParams == null ? "NIL" : queryParams.encode(), headers == null ? "NIL" : headers.encode(),
+				payload == null ? "NIL" : payload.encode());
+	}
+}
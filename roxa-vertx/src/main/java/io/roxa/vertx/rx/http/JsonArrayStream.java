@@ -0,0 +1,351 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import io.roxa.GeneralFailureException;
+import io.roxa.util.Jsons;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * <p>
+ * The stream of the JSON objects in an array of the response body, which are
+ * parsed incrementally as the body arrives.
+ * </p>
+ * The body is written to the {@link #sink()}, such as by the BodyCodec.pipe of
+ * WebClient, and the elements are read from this stream. The sink reports the
+ * write queue full when the elements are not consumed, so the pipe pauses the
+ * socket. The array is the root of body if the field is null, or the value of
+ * field of the root object. The stream fails if the field is absent, or by
+ * GeneralFailureException if the "sc" of root object is not 2xx, such as the
+ * envelope {"sc":500,"st":"..."} of HTTP 200.
+ * 
+ * @author Steven Chen
+ *
+ */
+final class JsonArrayStream implements ReadStream<JsonObject> {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final String field;
+	private final JsonParser parser;
+	private final ByteArrayFeeder feeder;
+	private final Deque<JsonObject> pending = new ArrayDeque<>();
+	private final Sink sink = new Sink();
+	private int maxPending = 64;
+	private long demand;
+	private int depth;
+	private int arrayDepth = -1;
+	private boolean fieldMatched;
+	private String rootField;
+	private int sc = 200;
+	private String st;
+	private boolean arrayDone;
+	private TokenBuffer element;
+	private boolean ended;
+	private boolean closed;
+	private Handler<JsonObject> handler;
+	private Handler<Void> endHandler;
+	private Handler<Throwable> exceptionHandler;
+	private Handler<Void> drainHandler;
+
+	private final class Sink implements WriteStream<Buffer> {
+
+		@Override
+		public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+			return this;
+		}
+
+		@Override
+		public WriteStream<Buffer> write(Buffer data) {
+			return write(data, null);
+		}
+
+		@Override
+		public WriteStream<Buffer> write(Buffer data, Handler<AsyncResult<Void>> handler) {
+			if (!closed) {
+				try {
+					byte[] bytes = data.getBytes();
+					feeder.feedInput(bytes, 0, bytes.length);
+					parse();
+					checkStatus();
+				} catch (IOException | RuntimeException | GeneralFailureException e) {
+					fail(e);
+				}
+				emit();
+			}
+			if (handler != null)
+				handler.handle(Future.succeededFuture());
+			return this;
+		}
+
+		@Override
+		public void end(Handler<AsyncResult<Void>> handler) {
+			if (!closed) {
+				feeder.endOfInput();
+				try {
+					parse();
+					checkStatus();
+					if (depth != 0)
+						throw new DecodeException("The JSON body is incomplete");
+					if (arrayDepth < 0)
+						throw new DecodeException(field == null ? "The JSON body is not an array"
+								: "The JSON body has no array of field " + field);
+				} catch (IOException | RuntimeException | GeneralFailureException e) {
+					fail(e);
+				}
+				ended = true;
+				emit();
+			}
+			if (handler != null)
+				handler.handle(Future.succeededFuture());
+		}
+
+		@Override
+		public WriteStream<Buffer> setWriteQueueMaxSize(int maxSize) {
+			maxPending = Math.max(1, maxSize);
+			return this;
+		}
+
+		@Override
+		public boolean writeQueueFull() {
+			synchronized (JsonArrayStream.this) {
+				return !closed && pending.size() >= maxPending;
+			}
+		}
+
+		@Override
+		public WriteStream<Buffer> drainHandler(Handler<Void> handler) {
+			synchronized (JsonArrayStream.this) {
+				drainHandler = handler;
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * 
+	 * @param field - The field of root object which holds the array, null if the
+	 *              root is the array
+	 */
+	JsonArrayStream(String field) {
+		this.field = field;
+		try {
+			this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+	}
+
+	/**
+	 * 
+	 * @return the stream to write the body
+	 */
+	WriteStream<Buffer> sink() {
+		return sink;
+	}
+
+	/**
+	 * Fail the stream, such as the request failed
+	 * 
+	 * @param e
+	 */
+	void fail(Throwable e) {
+		Handler<Throwable> _exceptionHandler;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			pending.clear();
+			_exceptionHandler = exceptionHandler;
+		}
+		if (_exceptionHandler != null)
+			_exceptionHandler.handle(e);
+	}
+
+	/**
+	 * Discard the rest of body, such as the subscriber cancelled
+	 */
+	synchronized void close() {
+		closed = true;
+		pending.clear();
+	}
+
+	@Override
+	public synchronized ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+		this.exceptionHandler = handler;
+		return this;
+	}
+
+	@Override
+	public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+		synchronized (this) {
+			this.handler = handler;
+			if (handler == null)
+				closed = true;
+		}
+		emit();
+		return this;
+	}
+
+	@Override
+	public ReadStream<JsonObject> pause() {
+		synchronized (this) {
+			demand = 0;
+		}
+		return this;
+	}
+
+	@Override
+	public ReadStream<JsonObject> resume() {
+		return fetch(Long.MAX_VALUE);
+	}
+
+	@Override
+	public ReadStream<JsonObject> fetch(long amount) {
+		synchronized (this) {
+			demand += amount;
+			if (demand < 0)
+				demand = Long.MAX_VALUE;
+		}
+		emit();
+		return this;
+	}
+
+	@Override
+	public synchronized ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+		this.endHandler = endHandler;
+		return this;
+	}
+
+	private void emit() {
+		while (true) {
+			JsonObject next;
+			Handler<JsonObject> _handler;
+			synchronized (this) {
+				_handler = handler;
+				if (closed || _handler == null || demand == 0 || pending.isEmpty())
+					break;
+				next = pending.poll();
+				if (demand != Long.MAX_VALUE)
+					demand--;
+			}
+			_handler.handle(next);
+		}
+		Handler<Void> _drainHandler = null;
+		Handler<Void> _endHandler = null;
+		synchronized (this) {
+			if (!closed && pending.size() <= maxPending / 2 && drainHandler != null) {
+				_drainHandler = drainHandler;
+				drainHandler = null;
+			}
+			if (!closed && ended && pending.isEmpty() && endHandler != null) {
+				_endHandler = endHandler;
+				closed = true;
+			}
+		}
+		if (_drainHandler != null)
+			_drainHandler.handle(null);
+		if (_endHandler != null)
+			_endHandler.handle(null);
+	}
+
+	private void parse() throws IOException {
+		JsonToken token;
+		while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+			if (element != null) {
+				element.copyCurrentEvent(parser);
+				track(token);
+				if (depth == arrayDepth)
+					complete();
+				continue;
+			}
+			track(token);
+			if (field != null && depth == 1)
+				envelope(token);
+			if (arrayDone)
+				continue;
+			if (arrayDepth < 0) {
+				if (field == null && token == JsonToken.START_ARRAY && depth == 1)
+					arrayDepth = 1;
+				else if (fieldMatched && token == JsonToken.START_ARRAY && depth == 2)
+					arrayDepth = 2;
+				else if (field != null)
+					fieldMatched = token == JsonToken.FIELD_NAME && depth == 1
+							&& field.equals(parser.getCurrentName());
+				else
+					throw new DecodeException("The JSON body is not an array");
+				continue;
+			}
+			if (token == JsonToken.END_ARRAY && depth == arrayDepth - 1) {
+				arrayDone = true;
+				continue;
+			}
+			if (token != JsonToken.START_OBJECT)
+				throw new DecodeException("The element of JSON array is not an object: " + token);
+			element = new TokenBuffer(parser);
+			element.copyCurrentEvent(parser);
+		}
+	}
+
+	private void envelope(JsonToken token) throws IOException {
+		if (token == JsonToken.FIELD_NAME)
+			rootField = parser.getCurrentName();
+		else if ("sc".equals(rootField) && token == JsonToken.VALUE_NUMBER_INT)
+			sc = parser.getIntValue();
+		else if ("st".equals(rootField) && token == JsonToken.VALUE_STRING)
+			st = parser.getText();
+	}
+
+	private void checkStatus() throws GeneralFailureException {
+		if (sc < 200 || sc >= 300)
+			throw new GeneralFailureException(sc,
+					st == null ? String.format("Response status code %d is not between 200 and 300", sc) : st);
+	}
+
+	private void track(JsonToken token) {
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+			depth++;
+		else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY)
+			depth--;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void complete() throws IOException {
+		TokenBuffer _element = element;
+		element = null;
+		try (JsonParser elementParser = _element.asParser(Jsons.getMapper())) {
+			JsonObject value = new JsonObject(Jsons.getMapper().readValue(elementParser, Map.class));
+			synchronized (this) {
+				if (!closed)
+					pending.offer(value);
+			}
+		}
+	}
+}
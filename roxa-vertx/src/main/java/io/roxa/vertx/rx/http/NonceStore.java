@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.util.Strings;
+import io.roxa.vertx.rx.redis.RedisAgent;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+
+/**
+ * <p>
+ * The replay store of the bearer authorization nonce.
+ * </p>
+ * The nonces are kept in time buckets by the signed timestamp of request, each
+ * bucket is a set of striped concurrent sets, and a whole bucket is dropped at
+ * once when its time slot is reused. Since the timestamp is signed and checked
+ * against authTimeMillisOffset, a nonce only ever lands in one bucket, so the
+ * check is O(1) without any lock. The options are:
+ * 
+ * <pre>
+ * {
+ *   "bucket_seconds": 30,
+ *   "stripes": 16,
+ *   "max_entries_per_bucket": 1000000,
+ *   "redis": "resource name of redis, enables the cluster mode"
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ * 
+ */
+public class NonceStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(NonceStore.class);
+
+	private static final String REDIS_KEY_PREFIX = "roxa.vertx::http.nonce:";
+
+	private static final long OVERFLOW_WARN_INTERVAL_MILLIS = 10000;
+
+	private final long bucketMillis;
+	private final long windowMillis;
+	private final int stripes;
+	private final int maxEntriesPerBucket;
+	private final AtomicReferenceArray<Bucket> buckets;
+	private final LongAdder replayed = new LongAdder();
+	private final LongAdder overflowed = new LongAdder();
+	private final AtomicLong overflowWarnedAt = new AtomicLong();
+	private RedisAgent redisAgent;
+
+	private static class Bucket {
+		final long epoch;
+		final Set<String>[] stripes;
+		final AtomicInteger size = new AtomicInteger();
+
+		@SuppressWarnings("unchecked")
+		Bucket(long epoch, int stripeCount) {
+			this.epoch = epoch;
+			this.stripes = new Set[stripeCount];
+			for (int i = 0; i < stripeCount; i++)
+				stripes[i] = ConcurrentHashMap.newKeySet();
+		}
+	}
+
+	public static NonceStore create(Vertx vertx, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		NonceStore inst = new NonceStore(_options.getLong("bucket_seconds", 30L) * 1000,
+				_options.getInteger("stripes", 16), _options.getInteger("max_entries_per_bucket", 1000000));
+		String redisResourceName = Strings.emptyAsNull(_options.getString("redis"));
+		if (redisResourceName != null) {
+			inst.redisAgent = RedisAgent.create(vertx, redisResourceName);
+			logger.info("Nonce store cluster mode enabled with redis: {}", redisResourceName);
+		}
+		return inst;
+	}
+
+	public static NonceStore create(Vertx vertx) {
+		return create(vertx, null);
+	}
+
+	private NonceStore(long bucketMillis, int stripes, int maxEntriesPerBucket) {
+		this.bucketMillis = bucketMillis;
+		this.windowMillis = 2 * WebAPIs.authTimeMillisOffset;
+		this.stripes = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.maxEntriesPerBucket = maxEntriesPerBucket;
+		this.buckets = new AtomicReferenceArray<>((int) (windowMillis / bucketMillis) + 2);
+	}
+
+	/**
+	 * Record the nonce of client locally
+	 * 
+	 * @param clientId
+	 * @param nonce
+	 * @param timestamp - The signed timestamp of request in millisecond
+	 * @return false if the nonce has been seen or the store is full
+	 */
+	public boolean tryRecord(String clientId, String nonce, long timestamp) {
+		long epoch = Math.floorDiv(timestamp, bucketMillis);
+		int index = (int) Math.floorMod(epoch, (long) buckets.length());
+		Bucket bucket = buckets.get(index);
+		while (bucket == null || bucket.epoch < epoch) {
+			Bucket fresh = new Bucket(epoch, stripes);
+			if (buckets.compareAndSet(index, bucket, fresh)) {
+				bucket = fresh;
+				break;
+			}
+			bucket = buckets.get(index);
+		}
+		if (bucket.epoch != epoch) {
+			replayed.increment();
+			return false;
+		}
+		if (bucket.size.get() >= maxEntriesPerBucket) {
+			overflowed.increment();
+			long now = System.currentTimeMillis();
+			long warnedAt = overflowWarnedAt.get();
+			if (now - warnedAt >= OVERFLOW_WARN_INTERVAL_MILLIS && overflowWarnedAt.compareAndSet(warnedAt, now))
+				logger.warn("Nonce store bucket is full, max entries: {}, overflowed: {}", maxEntriesPerBucket,
+						overflowed.sum());
+			return false;
+		}
+		String key = clientId + ":" + nonce;
+		if (!bucket.stripes[key.hashCode() & (stripes - 1)].add(key)) {
+			replayed.increment();
+			return false;
+		}
+		bucket.size.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Verify the nonce of client, the redis will be consulted in cluster mode
+	 * after the local store accepted it. The nonce should be verified only after
+	 * the signature of request
+	 * 
+	 * @param clientId
+	 * @param nonce
+	 * @param timestamp - The signed timestamp of request in millisecond
+	 * @return
+	 */
+	public Single<Boolean> verify(String clientId, String nonce, long timestamp) {
+		if (!tryRecord(clientId, nonce, timestamp))
+			return Single.just(false);
+		if (redisAgent == null)
+			return Single.just(true);
+		long ttlMillis = Math.max(timestamp + windowMillis / 2 - System.currentTimeMillis(), 0) + bucketMillis;
+		return redisAgent.setnx(REDIS_KEY_PREFIX + clientId + ":" + nonce, "1", ttlMillis).map(r -> {
+			if ("OK".equals(r))
+				return true;
+			replayed.increment();
+			return false;
+		});
+	}
+
+	public long getReplayed() {
+		return replayed.sum();
+	}
+
+	public long getOverflowed() {
+		return overflowed.sum();
+	}
+
+}
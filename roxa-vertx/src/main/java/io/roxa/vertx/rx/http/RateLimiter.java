@@ -0,0 +1,289 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.roxa.util.Randoms;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The token bucket rate limiter keyed by client_id or IP.
+ * </p>
+ * Each bucket is a single theoretical arrival time updated by CAS (GCRA), which
+ * is equivalent to a token bucket of rate and burst without any lock, and the
+ * buckets are striped by a ConcurrentHashMap. In cluster mode, the permits
+ * granted locally are published to the other nodes every sync period instead
+ * of on every request. The options are:
+ * 
+ * <pre>
+ * {
+ *   "client_quota": { "rate": 100, "burst": 200 },
+ *   "ip_quota": { "rate": 20, "burst": 40 },
+ *   "max_keys": 100000,
+ *   "cluster_sync_millis": 1000
+ * }
+ * </pre>
+ * 
+ * The quota of client could be overridden by the "rate_limit" of client
+ * register. Every request takes a permit of its IP, which is given back once
+ * the client of request has been verified and limited by client_id. Once the
+ * keys reach max_keys, the least recently used of a bounded sample is evicted
+ * for the new one, and the idle keys are swept every minute on a worker thread.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class RateLimiter implements Handler<RoutingContext> {
+
+	private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+	public static final String SYNC_ADDRESS = "roxa.vertx::http.rate-limiter.sync";
+
+	private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+	private static final int EVICTION_SAMPLES = 16;
+
+	private static final String IP_PERMIT = "roxa.rate_limiter.ip_permit";
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final LongAdder rejected = new LongAdder();
+	private final String nodeId = Randoms.randomString(16);
+	private final JsonObject clientQuota;
+	private final JsonObject ipQuota;
+	private final int maxKeys;
+	private Vertx vertx;
+	private long sweepTimerId = -1;
+	private long syncTimerId = -1;
+	private MessageConsumer<JsonObject> consumer;
+
+	private static final class Bucket {
+		final AtomicLong tat;
+		final long intervalNanos;
+		final long toleranceNanos;
+		final LongAdder granted = new LongAdder();
+
+		Bucket(long intervalNanos, long toleranceNanos) {
+			this.intervalNanos = intervalNanos;
+			this.toleranceNanos = toleranceNanos;
+			this.tat = new AtomicLong(System.nanoTime());
+		}
+
+		long tryAcquire(long now) {
+			for (;;) {
+				long tat = this.tat.get();
+				long start = Math.max(tat, now);
+				long waitNanos = start - now - toleranceNanos;
+				if (waitNanos > 0)
+					return waitNanos;
+				if (this.tat.compareAndSet(tat, start + intervalNanos)) {
+					granted.increment();
+					return 0;
+				}
+			}
+		}
+
+		void consume(long permits, long now) {
+			long delta = permits * intervalNanos;
+			this.tat.accumulateAndGet(now, (tat, n) -> Math.max(tat, n) + delta);
+		}
+
+		void release() {
+			granted.decrement();
+			this.tat.addAndGet(-intervalNanos);
+		}
+	}
+
+	public static RateLimiter create(Vertx vertx, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		RateLimiter inst = new RateLimiter(_options);
+		inst.vertx = vertx;
+		inst.sweepTimerId = vertx.setPeriodic(60000, id -> vertx.<Void>executeBlocking(p -> {
+			inst.sweep();
+			p.complete();
+		}, false, ar -> {
+		}));
+		long syncMillis = _options.getLong("cluster_sync_millis", 0L);
+		if (syncMillis > 0) {
+			inst.consumer = vertx.eventBus().<JsonObject>consumer(SYNC_ADDRESS, msg -> inst.merge(msg.body()));
+			inst.syncTimerId = vertx.setPeriodic(syncMillis, id -> inst.publish());
+			logger.info("Rate limiter cluster mode enabled, sync period: {}ms", syncMillis);
+		}
+		return inst;
+	}
+
+	private RateLimiter(JsonObject options) {
+		this.clientQuota = options.getJsonObject("client_quota", new JsonObject().put("rate", 100).put("burst", 200));
+		this.ipQuota = options.getJsonObject("ip_quota");
+		this.maxKeys = options.getInteger("max_keys", 100000);
+	}
+
+	/**
+	 * Limit the request by IP, the permit is given back by
+	 * {@link #releaseIp(RoutingContext)} once the request is limited by client_id
+	 * while authorizing
+	 */
+	@Override
+	public void handle(RoutingContext rc) {
+		if (ipQuota == null || BatchHandler.isSubRequest(rc)) {
+			rc.next();
+			return;
+		}
+		String key = "ip:" + rc.request().remoteAddress().host();
+		long waitNanos = tryAcquire(key, ipQuota);
+		if (waitNanos == 0) {
+			rc.put(IP_PERMIT, key);
+			rc.next();
+			return;
+		}
+		rc.response().setStatusCode(429).putHeader("Retry-After", String.valueOf(retryAfterSeconds(waitNanos)))
+				.putHeader("Content-Type", AbstractHttpVerticle.MEDIA_TYPE_APPLICATION_JSON)
+				.end(AbstractHttpVerticle.buildResponse(429, "Too Many Requests").encode());
+	}
+
+	/**
+	 * Acquire a permit of client
+	 * 
+	 * @param clientId
+	 * @param clientRegister - The "rate_limit" of which overrides the default
+	 *                       client quota
+	 * @return 0 if the permit is granted, otherwise the nanoseconds to wait
+	 */
+	public long tryAcquireClient(String clientId, JsonObject clientRegister) {
+		JsonObject quota = clientRegister == null ? null : clientRegister.getJsonObject("rate_limit");
+		return tryAcquire("client:" + clientId, quota == null ? clientQuota : quota);
+	}
+
+	/**
+	 * Give back the permit of IP taken by the request, once its client has been
+	 * verified and limited by client_id
+	 * 
+	 * @param rc
+	 */
+	public void releaseIp(RoutingContext rc) {
+		String key = rc.remove(IP_PERMIT);
+		if (key == null)
+			return;
+		Bucket bucket = buckets.get(key);
+		if (bucket != null)
+			bucket.release();
+	}
+
+	/**
+	 * Acquire a permit of key
+	 * 
+	 * @param key
+	 * @param quota - The rate per second and burst
+	 * @return 0 if the permit is granted, otherwise the nanoseconds to wait
+	 */
+	public long tryAcquire(String key, JsonObject quota) {
+		double rate = quota.getDouble("rate", 100d);
+		int burst = quota.getInteger("burst", (int) Math.ceil(rate));
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			if (buckets.size() >= maxKeys)
+				evict();
+			bucket = buckets.computeIfAbsent(key, k -> new Bucket(intervalNanos, toleranceNanos));
+		}
+		if (bucket.intervalNanos != intervalNanos || bucket.toleranceNanos != toleranceNanos) {
+			Bucket fresh = new Bucket(intervalNanos, toleranceNanos);
+			bucket = buckets.replace(key, bucket, fresh) ? fresh : buckets.getOrDefault(key, fresh);
+		}
+		long waitNanos = bucket.tryAcquire(System.nanoTime());
+		if (waitNanos > 0)
+			rejected.increment();
+		return waitNanos;
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	public int size() {
+		return buckets.size();
+	}
+
+	public void close() {
+		if (vertx != null) {
+			vertx.cancelTimer(sweepTimerId);
+			vertx.cancelTimer(syncTimerId);
+		}
+		if (consumer != null)
+			consumer.unregister();
+		buckets.clear();
+	}
+
+	public static long retryAfterSeconds(long waitNanos) {
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	/**
+	 * Evict the least recently used of a bounded sample, the idle ones are swept
+	 * on a worker thread
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Bucket>> it = buckets.entrySet().iterator();
+		String victim = null;
+		long oldest = Long.MAX_VALUE;
+		for (int i = 0; i < EVICTION_SAMPLES && it.hasNext(); i++) {
+			Map.Entry<String, Bucket> e = it.next();
+			long tat = e.getValue().tat.get();
+			if (tat < oldest) {
+				oldest = tat;
+				victim = e.getKey();
+			}
+		}
+		if (victim != null)
+			buckets.remove(victim);
+	}
+
+	private void sweep() {
+		long idleBefore = System.nanoTime() - IDLE_NANOS;
+		buckets.entrySet().removeIf(e -> e.getValue().tat.get() < idleBefore);
+	}
+
+	private void publish() {
+		JsonObject consumed = new JsonObject();
+		buckets.forEach((key, bucket) -> {
+			long granted = bucket.granted.sumThenReset();
+			if (granted > 0)
+				consumed.put(key, granted);
+		});
+		if (!consumed.isEmpty())
+			vertx.eventBus().publish(SYNC_ADDRESS, new JsonObject().put("node", nodeId).put("consumed", consumed));
+	}
+
+	private void merge(JsonObject sync) {
+		if (nodeId.equals(sync.getString("node")))
+			return;
+		long now = System.nanoTime();
+		sync.getJsonObject("consumed").forEach(e -> {
+			Bucket bucket = buckets.get(e.getKey());
+			if (bucket != null)
+				bucket.consume(((Number) e.getValue()).longValue(), now);
+		});
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.reactivex.core.MultiMap;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The single flight of identical requests in flight.
+ * </p>
+ * It's opt-in per route by installing {@link #handler(Function)} before the
+ * route handler. The first request of a key goes on as the leader, the later
+ * identical ones wait for it, and the encoded body of leader is shared with all
+ * of them once the leader is ended by {@link #complete(RoutingContext, Buffer)}.
+ * If the leader fails or is ended by other ways, the waiting requests go on by
+ * themselves. The key is made of method, path, sorted query parameters and the
+ * auth scope. Only GET and HEAD are coalesced, the requests of the other
+ * methods, whose bodies are not part of the key, always go on by themselves.
+ * The requests with Authorization header are not coalesced by
+ * {@link #handler()}, the routes of authorized requests opt in by
+ * {@link #handler(Function)}, which authorizes each request before it joins a
+ * flight and scopes the flight by the verified client_id, so a request never
+ * gets the response of another client.
+ * The coalescer belongs to one verticle instance, so its flights are confined
+ * to the event loop of that instance.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class RequestCoalescer {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+
+	private static final String FLIGHT = "roxa.request_coalescer.flight";
+
+	private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+	private final BiConsumer<RoutingContext, Buffer> responder;
+	private final LongAdder leaders = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final AtomicLong waiting = new AtomicLong();
+
+	private static class Flight {
+		final String key;
+		final List<RoutingContext> waiters = new ArrayList<>();
+		boolean done;
+
+		Flight(String key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * 
+	 * @param tracker   - The request tracker which notifies the end of leader
+	 * @param responder - End the response of waiting request with the shared
+	 *                  body
+	 * @return
+	 */
+	public static RequestCoalescer create(RequestTracker tracker, BiConsumer<RoutingContext, Buffer> responder) {
+		RequestCoalescer inst = new RequestCoalescer(responder);
+		tracker.onEnd(inst::abandon);
+		return inst;
+	}
+
+	private RequestCoalescer(BiConsumer<RoutingContext, Buffer> responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * The route handler of the public requests, the requests with Authorization
+	 * header go on without coalescing
+	 * 
+	 * @return
+	 */
+	public Handler<RoutingContext> handler() {
+		return rc -> {
+			if (!isCoalescible(rc) || rc.request().getHeader("Authorization") != null) {
+				rc.next();
+				return;
+			}
+			join(rc, keyOf(rc, ""));
+		};
+	}
+
+	/**
+	 * The route handler of the authorized requests. The request failed to be
+	 * authorized goes on without coalescing, so it fails in the route handler as
+	 * usual
+	 * 
+	 * @param scope - Authorize the request and resolve its scope, such as the
+	 *              verified client_id
+	 * @return
+	 */
+	public Handler<RoutingContext> handler(Function<RoutingContext, Single<String>> scope) {
+		return rc -> {
+			if (!isCoalescible(rc)) {
+				rc.next();
+				return;
+			}
+			scope.apply(rc).subscribe(_scope -> join(rc, keyOf(rc, _scope)), e -> rc.next());
+		};
+	}
+
+	private static boolean isCoalescible(RoutingContext rc) {
+		HttpMethod method = rc.request().method();
+		return method == HttpMethod.GET || method == HttpMethod.HEAD;
+	}
+
+	private void join(RoutingContext rc, String key) {
+		Flight flight = flights.get(key);
+		if (flight != null && !flight.done) {
+			flight.waiters.add(rc);
+			waiting.incrementAndGet();
+			return;
+		}
+		flight = new Flight(key);
+		flights.put(key, flight);
+		leaders.increment();
+		rc.put(FLIGHT, flight);
+		rc.next();
+	}
+
+	/**
+	 * Share the encoded body of leader with the waiting requests, nothing happens
+	 * if the request is not a leader
+	 * 
+	 * @param rc
+	 * @param body
+	 */
+	public void complete(RoutingContext rc, Buffer body) {
+		Flight flight = land(rc);
+		if (flight == null)
+			return;
+		if (rc.get("failure.intent") != null) {
+			release(flight);
+			return;
+		}
+		int sc = rc.response().getStatusCode();
+		String contentType = rc.response().headers().get("Content-Type");
+		for (RoutingContext waiter : flight.waiters) {
+			waiting.decrementAndGet();
+			coalesced.increment();
+			waiter.response().setStatusCode(sc);
+			if (contentType != null)
+				waiter.response().putHeader("Content-Type", contentType);
+			try {
+				responder.accept(waiter, body);
+			} catch (Throwable e) {
+				logger.warn("Could not reply the coalesced request", e);
+			}
+		}
+	}
+
+	public long getLeaders() {
+		return leaders.sum();
+	}
+
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	public long getWaiting() {
+		return waiting.get();
+	}
+
+	private void abandon(RoutingContext rc) {
+		Flight flight = land(rc);
+		if (flight != null)
+			release(flight);
+	}
+
+	private Flight land(RoutingContext rc) {
+		Flight flight = rc.get(FLIGHT);
+		if (flight == null || flight.done)
+			return null;
+		flight.done = true;
+		flights.remove(flight.key, flight);
+		return flight;
+	}
+
+	private void release(Flight flight) {
+		for (RoutingContext waiter : flight.waiters) {
+			waiting.decrementAndGet();
+			waiter.next();
+		}
+	}
+
+	private static String keyOf(RoutingContext rc, String scope) {
+		StringBuilder key = new StringBuilder(128).append(rc.request().method().name()).append(' ')
+				.append(rc.request().path());
+		MultiMap params = rc.queryParams();
+		if (!params.isEmpty()) {
+			List<String> pairs = new ArrayList<>(params.size());
+			params.getDelegate().forEach(e -> pairs.add(e.getKey() + "=" + e.getValue()));
+			pairs.sort(null);
+			key.append('?').append(String.join("&", pairs));
+		}
+		return key.append(' ').append(scope).toString();
+	}
+}
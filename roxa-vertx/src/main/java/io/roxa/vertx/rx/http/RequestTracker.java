@@ -0,0 +1,184 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Handler;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The first handler of router, which tracks the requests in flight.
+ * </p>
+ * It stamps the start time of request into the context, and notifies the
+ * listeners once the response has been ended or the connection has been
+ * closed, so the handlers should not replace the end handler of response.
+ * Once draining, it rejects the new requests so that the requests in flight
+ * could finish before the server is closed. The long-lived requests, such as
+ * the event streams, are detached by {@link #detach(RoutingContext)} once they
+ * start streaming, so they are neither in flight nor measured as requests.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class RequestTracker implements Handler<RoutingContext> {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestTracker.class);
+
+	public static final String START_NANOS = "roxa.request.start_nanos";
+
+	public static final String DETACHED = "roxa.request.detached";
+
+	private static final String TRACKER = "roxa.request.tracker";
+
+	private final AtomicLong inFlight = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private volatile boolean draining;
+	private final List<Handler<RoutingContext>> startListeners = new CopyOnWriteArrayList<>();
+	private final List<Handler<RoutingContext>> endListeners = new CopyOnWriteArrayList<>();
+	private final List<Handler<RoutingContext>> detachListeners = new CopyOnWriteArrayList<>();
+
+	public static RequestTracker create() {
+		return new RequestTracker();
+	}
+
+	private RequestTracker() {
+	}
+
+	@Override
+	public void handle(RoutingContext rc) {
+		if (draining) {
+			rejected.incrementAndGet();
+			rc.response().setStatusCode(503).putHeader("Connection", "close").end();
+			return;
+		}
+		rc.put(START_NANOS, System.nanoTime());
+		rc.put(TRACKER, this);
+		inFlight.incrementAndGet();
+		rc.response().endHandler(v -> {
+			if (!isDetached(rc))
+				inFlight.decrementAndGet();
+			for (Handler<RoutingContext> listener : endListeners)
+				notify(listener, rc);
+		});
+		for (Handler<RoutingContext> listener : startListeners)
+			notify(listener, rc);
+		rc.next();
+	}
+
+	/**
+	 * Add a listener to be notified as soon as the request arrived
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public RequestTracker onStart(Handler<RoutingContext> listener) {
+		startListeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Add a listener to be notified after the response ended
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public RequestTracker onEnd(Handler<RoutingContext> listener) {
+		endListeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Add a listener to be notified once the request is detached, such as to
+	 * release the resources held by the request
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public RequestTracker onDetach(Handler<RoutingContext> listener) {
+		detachListeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Detach the long-lived request, such as the event stream, from tracking. It
+	 * is no longer in flight, so draining does not wait for it, and the end
+	 * listeners may skip it by {@link #isDetached(RoutingContext)}
+	 * 
+	 * @param rc
+	 */
+	public static void detach(RoutingContext rc) {
+		RequestTracker tracker = rc.get(TRACKER);
+		if (tracker == null || isDetached(rc))
+			return;
+		rc.put(DETACHED, Boolean.TRUE);
+		tracker.inFlight.decrementAndGet();
+		for (Handler<RoutingContext> listener : tracker.detachListeners)
+			tracker.notify(listener, rc);
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return true if the request has been detached from tracking
+	 */
+	public static boolean isDetached(RoutingContext rc) {
+		return rc.get(DETACHED) != null;
+	}
+
+	/**
+	 * Stop accepting the requests, the later ones are rejected by 503 and their
+	 * connections are closed, while the requests in flight go on
+	 */
+	public void drain() {
+		draining = true;
+	}
+
+	public boolean isDraining() {
+		return draining;
+	}
+
+	public long getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * 
+	 * @return the requests rejected while draining
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return the nanoseconds elapsed since the request arrived
+	 */
+	public static long elapsedNanos(RoutingContext rc) {
+		Long start = rc.get(START_NANOS);
+		return start == null ? 0 : System.nanoTime() - start;
+	}
+
+	private void notify(Handler<RoutingContext> listener, RoutingContext rc) {
+		try {
+			listener.handle(rc);
+		} catch (Throwable e) {
+			logger.warn("Request listener failed", e);
+		}
+	}
+}
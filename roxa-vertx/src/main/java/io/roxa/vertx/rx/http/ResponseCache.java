@@ -0,0 +1,352 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.roxa.util.Codecs;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.MultiMap;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * <p>
+ * The server side cache of encoded responses with the strong ETag.
+ * </p>
+ * It's opt-in per route by installing {@link #handler(long, String...)} before
+ * the route handler. The ETag is the digest of encoded body, so the
+ * If-None-Match is answered with 304 whether or not the response is cached. The
+ * entries are keyed by path plus the sorted query parameters, and could be
+ * invalidated by tag on all nodes. The requests with Authorization header are
+ * not cached unless the route opts in by
+ * {@link #handler(Function, long, String...)}, which authorizes the request
+ * before serving the cached response and keys the entries by the scope, such as
+ * the verified client_id. The options are:
+ * 
+ * <pre>
+ * {
+ *   "max_entries": 10000,
+ *   "max_bytes": 67108864
+ * }
+ * </pre>
+ * 
+ * @author Steven Chen
+ *
+ */
+public class ResponseCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+	public static final String INVALIDATE_ADDRESS = "roxa.vertx::http.response-cache.invalidate";
+
+	private static final String CACHE_POLICY = "roxa.response_cache.policy";
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> tagIndex = new ConcurrentHashMap<>();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder notModified = new LongAdder();
+	private final int maxEntries;
+	private final long maxBytes;
+	private MessageConsumer<String> consumer;
+
+	private static class Entry {
+		final Buffer body;
+		final String etag;
+		final String contentType;
+		final String[] tags;
+		final long expiredAt;
+
+		Entry(Buffer body, String etag, String contentType, String[] tags, long expiredAt) {
+			this.body = body;
+			this.etag = etag;
+			this.contentType = contentType;
+			this.tags = tags;
+			this.expiredAt = expiredAt;
+		}
+	}
+
+	private static class Policy {
+		final String key;
+		final long ttlMillis;
+		final String[] tags;
+		final long generation;
+
+		Policy(String key, long ttlMillis, String[] tags, long generation) {
+			this.key = key;
+			this.ttlMillis = ttlMillis;
+			this.tags = tags;
+			this.generation = generation;
+		}
+	}
+
+	public static ResponseCache create(Vertx vertx, JsonObject options) {
+		JsonObject _options = options == null ? new JsonObject() : options;
+		ResponseCache inst = new ResponseCache(_options.getInteger("max_entries", 10000),
+				_options.getLong("max_bytes", 64L * 1024 * 1024));
+		inst.consumer = vertx.eventBus().<String>consumer(INVALIDATE_ADDRESS, msg -> inst.invalidateLocal(msg.body()));
+		return inst;
+	}
+
+	/**
+	 * Invalidate the cached responses of tag on all nodes
+	 * 
+	 * @param vertx
+	 * @param tag
+	 */
+	public static void invalidate(Vertx vertx, String tag) {
+		vertx.eventBus().publish(INVALIDATE_ADDRESS, tag);
+	}
+
+	private ResponseCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * The route handler that serves the cached response, or marks the request to
+	 * be cached once the response is ended by {@link #end(RoutingContext, Buffer)}
+	 * 
+	 * @param ttlSeconds - The TTL of cached response, 0 means ETag only
+	 * @param tags       - The tags to invalidate the cached response
+	 * @return
+	 */
+	public Handler<RoutingContext> handler(long ttlSeconds, String... tags) {
+		long ttlMillis = ttlSeconds * 1000;
+		return rc -> {
+			if (rc.request().getHeader("Authorization") != null) {
+				rc.next();
+				return;
+			}
+			lookup(rc, keyOf(rc), ttlMillis, tags);
+		};
+	}
+
+	/**
+	 * The route handler of the responses authorized per request, the cached
+	 * response is served only after the request is authorized by the scope, and
+	 * the responses are kept per scope. The request failed to be authorized is
+	 * passed to the route handler without caching, so it fails there as usual
+	 * 
+	 * @param scope      - Authorize the request and resolve its scope, such as the
+	 *                   verified client_id
+	 * @param ttlSeconds - The TTL of cached response, 0 means ETag only
+	 * @param tags       - The tags to invalidate the cached response
+	 * @return
+	 */
+	public Handler<RoutingContext> handler(Function<RoutingContext, Single<String>> scope, long ttlSeconds,
+			String... tags) {
+		long ttlMillis = ttlSeconds * 1000;
+		return rc -> scope.apply(rc).subscribe(_scope -> lookup(rc, _scope + "|" + keyOf(rc), ttlMillis, tags),
+				e -> rc.next());
+	}
+
+	private void lookup(RoutingContext rc, String key, long ttlMillis, String[] tags) {
+		if (ttlMillis > 0) {
+			Entry entry = entries.get(key);
+			if (entry != null && System.currentTimeMillis() < entry.expiredAt) {
+				hits.increment();
+				reply(rc, entry.body, entry.etag, entry.contentType);
+				return;
+			}
+			misses.increment();
+		}
+		rc.put(CACHE_POLICY, new Policy(key, ttlMillis, tags, generation.get()));
+		rc.next();
+	}
+
+	/**
+	 * 
+	 * @param rc
+	 * @return true if the response of request should be ended by this cache
+	 */
+	public boolean isCaching(RoutingContext rc) {
+		return rc.get(CACHE_POLICY) != null && rc.get("failure.intent") == null;
+	}
+
+	/**
+	 * End the response with the ETag, and keep the body if the TTL of route is
+	 * positive, unless any tag was invalidated since the request missed the cache
+	 * 
+	 * @param rc
+	 * @param body - The encoded body
+	 */
+	public void end(RoutingContext rc, Buffer body) {
+		Policy policy = rc.get(CACHE_POLICY);
+		String etag = etagOf(body);
+		String contentType = rc.response().headers().get("Content-Type");
+		int sc = rc.response().getStatusCode();
+		if (policy.ttlMillis > 0 && sc == 200 && generation.get() == policy.generation) {
+			store(policy,
+					new Entry(body, etag, contentType, policy.tags, System.currentTimeMillis() + policy.ttlMillis));
+			// invalidated while storing
+			if (generation.get() != policy.generation)
+				remove(policy.key);
+		}
+		reply(rc, body, etag, contentType);
+	}
+
+	/**
+	 * Invalidate the cached responses of tag on this node only
+	 * 
+	 * @param tag
+	 */
+	public void invalidateLocal(String tag) {
+		generation.incrementAndGet();
+		Set<String> keys = tagIndex.remove(tag);
+		if (keys == null)
+			return;
+		keys.forEach(this::remove);
+		logger.debug("Invalidate {} cached responses of tag: {}", keys.size(), tag);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getNotModified() {
+		return notModified.sum();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public void close() {
+		if (consumer != null)
+			consumer.unregister();
+		entries.clear();
+		tagIndex.clear();
+		bytes.set(0);
+	}
+
+	/**
+	 * 
+	 * @param body
+	 * @return the strong ETag of body
+	 */
+	public static String etagOf(Buffer body) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(body.getDelegate().getByteBuf().nioBuffer());
+			return "\"" + Codecs.asBase64URLSafeString(digest.digest()).substring(0, 22) + "\"";
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void reply(RoutingContext rc, Buffer body, String etag, String contentType) {
+		rc.response().putHeader("ETag", etag);
+		if (contentType != null && !rc.response().headers().contains("Content-Type"))
+			rc.response().putHeader("Content-Type", contentType);
+		if (matches(rc.request().getHeader("If-None-Match"), etag)) {
+			notModified.increment();
+			rc.response().setStatusCode(304).end();
+			return;
+		}
+		rc.response().end(body);
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null)
+			return false;
+		for (String candidate : ifNoneMatch.split(",")) {
+			String _candidate = candidate.trim();
+			if ("*".equals(_candidate) || etag.equals(_candidate))
+				return true;
+		}
+		return false;
+	}
+
+	private static String keyOf(RoutingContext rc) {
+		MultiMap params = rc.queryParams();
+		if (params.isEmpty())
+			return rc.request().path();
+		List<String> pairs = new ArrayList<>(params.size());
+		params.getDelegate().forEach(e -> pairs.add(e.getKey() + "=" + e.getValue()));
+		pairs.sort(null);
+		return rc.request().path() + "?" + String.join("&", pairs);
+	}
+
+	private void store(Policy policy, Entry entry) {
+		long size = entry.body.length();
+		if (size > maxBytes)
+			return;
+		while (!entries.isEmpty() && (entries.size() >= maxEntries || bytes.get() + size > maxBytes))
+			evict();
+		Entry replaced = entries.put(policy.key, entry);
+		bytes.addAndGet(size - (replaced == null ? 0 : replaced.body.length()));
+		for (String tag : policy.tags)
+			tagIndex.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(policy.key);
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null)
+			return;
+		bytes.addAndGet(-entry.body.length());
+		for (String tag : entry.tags) {
+			Set<String> keys = tagIndex.get(tag);
+			if (keys != null)
+				keys.remove(key);
+		}
+	}
+
+	private void evict() {
+		long now = System.currentTimeMillis();
+		String eldestKey = null;
+		long eldestExpiredAt = Long.MAX_VALUE;
+		int sampled = 0;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext() && sampled < 16) {
+			Map.Entry<String, Entry> e = it.next();
+			if (now >= e.getValue().expiredAt) {
+				remove(e.getKey());
+				return;
+			}
+			if (e.getValue().expiredAt < eldestExpiredAt) {
+				eldestExpiredAt = e.getValue().expiredAt;
+				eldestKey = e.getKey();
+			}
+			sampled++;
+		}
+		if (eldestKey != null)
+			remove(eldestKey);
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.roxa.util.SysInfo;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+
+/**
+ * <p>
+ * The background sampler of system information.
+ * </p>
+ * The JMX beans are walked on a worker thread at a fixed interval, and the
+ * snapshot is encoded once per sample, so the readers get the same buffer
+ * without collecting or encoding anything.
+ * 
+ * @author Steven Chen
+ *
+ */
+public class SysInfoSampler {
+
+	private static final Logger logger = LoggerFactory.getLogger(SysInfoSampler.class);
+
+	private final Vertx vertx;
+	private final Function<JsonObject, Buffer> encoder;
+	private volatile SysInfo latest;
+	private volatile Buffer snapshot;
+	private long timerId = -1;
+
+	/**
+	 * 
+	 * @param vertx          - The instance of Vertx
+	 * @param intervalMillis - The interval of sampling
+	 * @param encoder        - Encode the system information to the response
+	 * @return
+	 */
+	public static SysInfoSampler create(Vertx vertx, long intervalMillis, Function<JsonObject, Buffer> encoder) {
+		SysInfoSampler inst = new SysInfoSampler(vertx, encoder);
+		inst.update(new SysInfo().collect());
+		inst.timerId = vertx.setPeriodic(intervalMillis, id -> inst.sample());
+		return inst;
+	}
+
+	private SysInfoSampler(Vertx vertx, Function<JsonObject, Buffer> encoder) {
+		this.vertx = vertx;
+		this.encoder = encoder;
+	}
+
+	/**
+	 * 
+	 * @return the encoded snapshot of latest sample
+	 */
+	public Buffer getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * 
+	 * @return the numeric values of latest sample
+	 */
+	public Map<String, Number> getMetrics() {
+		SysInfo sysInfo = latest;
+		return sysInfo == null ? Collections.emptyMap() : sysInfo.getMetrics();
+	}
+
+	public void close() {
+		vertx.cancelTimer(timerId);
+	}
+
+	private void sample() {
+		SysInfo previous = latest;
+		vertx.<SysInfo>rxExecuteBlocking(p -> p.complete(new SysInfo().collect(previous)), false)
+				.subscribe(this::update, e -> logger.warn("Sampling system information failed", e));
+	}
+
+	private void update(SysInfo sysInfo) {
+		JsonObject info = new JsonObject();
+		info.put("JVM", new JsonObject(Collections.unmodifiableMap(sysInfo.getJvmInfo())));
+		info.put("Threads", new JsonObject(Collections.unmodifiableMap(sysInfo.getThreadsInfo())));
+		info.put("Memory", new JsonObject(Collections.unmodifiableMap(sysInfo.getMemoryInfo())));
+		info.put("Classes", new JsonObject(Collections.unmodifiableMap(sysInfo.getClassesInfo())));
+		info.put("OS", new JsonObject(Collections.unmodifiableMap(sysInfo.getOsInfo())));
+		snapshot = encoder.apply(info);
+		latest = sysInfo;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * The MIT License
+ * 
+ * Copyright (c) 2019-2022 Shell Technologies PTY LTD
+ *
+ * You may obtain a copy of the License at
+ * 
+ *       http://mit-license.org/
+ *       
+ */
+package io.roxa.vertx.rx.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * The URI template with path parameters, such as /api/users/:id/orders.
+ * </p>
+ * The template is split into segments once, and the compiled templates are
+ * cached by the template text.
+ * 
+ * @author Steven Chen
+ *
+ */
+final class UriTemplate {
+
+	private static final int MAX_CACHED = 1024;
+
+	private static final Map<String, UriTemplate> cache = new ConcurrentHashMap<>();
+
+	private final String template;
+	private final String[] segments;
+	private final boolean[] params;
+	private final boolean parameterized;
+
+	static UriTemplate compile(String template) {
+		UriTemplate compiled = cache.get(template);
+		if (compiled != null)
+			return compiled;
+		if (cache.size() >= MAX_CACHED)
+			cache.clear();
+		return cache.computeIfAbsent(template, UriTemplate::new);
+	}
+
+	private UriTemplate(String template) {
+		this.template = template;
+		this.segments = template.split("/");
+		this.params = new boolean[segments.length];
+		boolean _parameterized = false;
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].startsWith(":")) {
+				params[i] = true;
+				segments[i] = segments[i].substring(1);
+				_parameterized = true;
+			}
+		}
+		this.parameterized = _parameterized;
+	}
+
+	/**
+	 * 
+	 * @param pathParams
+	 * @return the URI with the values of path parameters
+	 */
+	String expand(JsonObject pathParams) {
+		if (!parameterized || pathParams == null || pathParams.isEmpty())
+			return template;
+		StringBuilder uri = new StringBuilder(template.length() + 32);
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0)
+				uri.append('/');
+			uri.append(params[i] ? String.valueOf(pathParams.getValue(segments[i])) : segments[i]);
+		}
+		return uri.toString();
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+}
@@ -142,6 +142,14 @@ public abstract class WebAPIs {
 		}
 	}
 
+	/**
+	 * Parse and check the fields of bearer authorization, the signature and the
+	 * nonce are not verified here
+	 * 
+	 * @param authorization
+	 * @param requestInfo
+	 * @return
+	 */
 	public static Single<JsonObject> badBearerAuthorization(String authorization, JsonObject requestInfo) {
 		try {
 			String authHeader = Strings.emptyAsNull(authorization);
@@ -185,4 +193,27 @@ public abstract class WebAPIs {
 		}
 	}
 
+	/**
+	 * Check the nonce of bearer against the NonceStore. It must be called after
+	 * the signature has been verified, so that the forged bearers never record
+	 * their nonces
+	 * 
+	 * @param bearer     - The bearer of badBearerAuthorization
+	 * @param nonceStore - The replay store of nonce, could be null
+	 * @return
+	 */
+	public static Single<JsonObject> checkBearerNonce(JsonObject bearer, NonceStore nonceStore) {
+		if (nonceStore == null)
+			return Single.just(bearer);
+		JsonObject content = bearer.getJsonObject("content");
+		String clientId = content.getString("client_id");
+		String nonce = content.getString("nonce");
+		return nonceStore.verify(clientId, nonce, content.getLong("timestamp")).flatMap(accepted -> {
+			if (accepted)
+				return Single.just(bearer);
+			logger.warn("Authorization nonce replayed, client: {}, nonce: {}", clientId, nonce);
+			return Single.error(new BadRequestException("Illegal authorization nonce"));
+		});
+	}
+
 }
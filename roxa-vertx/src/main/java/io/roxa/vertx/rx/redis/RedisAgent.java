@@ -73,6 +73,19 @@ public class RedisAgent {
 		return EventActionEndpoint.create(vertx).urn(urn).action("set").<String>request(msg);
 	}
 
+	/**
+	 * Set the value with expiration only if the key does not exist
+	 * 
+	 * @param key
+	 * @param value
+	 * @param ttlMillis
+	 * @return OK if the value has been set, otherwise NIL
+	 */
+	public Single<String> setnx(String key, String value, long ttlMillis) {
+		JsonObject msg = new JsonObject().put("key", key).put("value", value).put("ttl_millis", ttlMillis);
+		return EventActionEndpoint.create(vertx).urn(urn).action("setnx").<String>request(msg);
+	}
+
 	/**
 	 * @param key
 	 * @param field
@@ -114,6 +114,21 @@ public class RedisExecutor {
 		return redisAPI.rxSet(Arrays.asList(key, value)).map(r -> value).toSingle();
 	}
 
+	/**
+	 * Set the value with expiration only if the key does not exist
+	 * 
+	 * @param key
+	 * @param value
+	 * @param ttlMillis
+	 * @return OK if the value has been set, otherwise NIL
+	 */
+	public Single<String> setnx(String key, String value, long ttlMillis) {
+		return redisAPI.rxSet(Arrays.asList(key, value, "PX", String.valueOf(ttlMillis), "NX")).toSingle(NIL_RESP)
+				.map(resp -> {
+					return resp.toString();
+				});
+	}
+
 	/**
 	 * @param key
 	 * @param field
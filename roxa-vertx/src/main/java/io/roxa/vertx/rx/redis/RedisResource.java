@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import io.reactivex.Single;
+import io.roxa.IllegalParametersException;
 import io.roxa.vertx.rx.EventActionDispatcher;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -54,6 +55,15 @@ public class RedisResource extends EventActionDispatcher {
 		return redisExecutor.set(key, value);
 	}
 
+	public Single<String> setnx(JsonObject msg) {
+		String key = msg.getString("key");
+		String value = msg.getString("value");
+		Long ttlMillis = msg.getLong("ttl_millis");
+		if (ttlMillis == null || ttlMillis <= 0)
+			return Single.error(new IllegalParametersException("Missing ttl_millis parameter!"));
+		return redisExecutor.setnx(key, value, ttlMillis);
+	}
+
 	public Single<String> hset(JsonObject msg) {
 		String key = msg.getString("key");
 		String field = msg.getString("field");